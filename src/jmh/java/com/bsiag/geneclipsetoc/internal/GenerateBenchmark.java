@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Files;
+
+/**
+ * End-to-end benchmark of {@link GenerateEclipseTocUtility#generate} over a synthetic documentation tree
+ * (pages x headers per page x depth).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GenerateBenchmark {
+
+  @Param({"100", "1000"})
+  public int pages;
+
+  @Param({"20"})
+  public int headersPerPage;
+
+  @Param({"3"})
+  public int depth;
+
+  @Param({"5"})
+  public int paragraphsPerHeader;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  @Param({"JSOUP", "STREAMING"})
+  public HeaderExtractor headerExtractor;
+
+  private File folder;
+  private List<String> pageNames;
+  private File outTocFile;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    folder = Files.createTempDir();
+    pageNames = SyntheticDocs.createPages(new File(folder, "docs"), pages, headersPerPage, depth, paragraphsPerHeader);
+    outTocFile = new File(folder, "out/toc.xml");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    SyntheticDocs.delete(folder);
+  }
+
+  @Benchmark
+  public File generate() throws IOException {
+    GenerateOptions options = new GenerateOptions();
+    options.setThreads(threads);
+    options.setHeaderExtractor(headerExtractor);
+    GenerateEclipseTocUtility.generate(new File(folder, "docs"), pageNames, "doc", outTocFile, null, null, options);
+    return outTocFile;
+  }
+}
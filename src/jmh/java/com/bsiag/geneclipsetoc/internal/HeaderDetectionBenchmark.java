@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the header detection and the title normalization with the previous implementation (regular expressions).
+ * Run with <code>-prof gc</code> to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderDetectionBenchmark {
+
+  private static final String CHAR_QUOTE = "\"";
+  private static final String CHAR_8220 = Character.toString((char) 8220);
+  private static final String CHAR_8221 = Character.toString((char) 8221);
+  private static final String CHAR_8222 = Character.toString((char) 8222);
+
+  @Param({"100", "1000"})
+  public int headersPerPage;
+
+  @Param({"20"})
+  public int paragraphsPerHeader;
+
+  private Elements elements;
+  private String[] titles;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    String html = SyntheticDocs.createPage(0, headersPerPage, 3, paragraphsPerHeader);
+    elements = Jsoup.parse(html).getAllElements();
+    titles = new String[] {"Plain title without quotes", "Title with \u201Cquotes\u201D"};
+  }
+
+  @Benchmark
+  public int headerLevelRegex() {
+    int sum = 0;
+    for (Element element : elements) {
+      if (element.nodeName().matches("h[1-6]")) {
+        sum += Integer.parseInt(element.nodeName().substring(1));
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int headerLevel() {
+    int sum = 0;
+    for (Element element : elements) {
+      sum += GenerateEclipseTocUtility.headerLevel(element);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int sanitizeRegex() {
+    int length = 0;
+    for (String title : titles) {
+      String result = title;
+      result = result.replaceAll(CHAR_8220, CHAR_QUOTE);
+      result = result.replaceAll(CHAR_8221, CHAR_QUOTE);
+      result = result.replaceAll(CHAR_8222, CHAR_QUOTE);
+      length += result.length();
+    }
+    return length;
+  }
+
+  @Benchmark
+  public int sanitize() {
+    int length = 0;
+    for (String title : titles) {
+      length += GenerateEclipseTocUtility.sanitize(title).length();
+    }
+    return length;
+  }
+}
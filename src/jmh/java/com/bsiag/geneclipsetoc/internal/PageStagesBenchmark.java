@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Benchmarks of the stages applied to each page: read, parse, header extraction and outline building.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageStagesBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int headersPerPage;
+
+  @Param({"3"})
+  public int depth;
+
+  @Param({"5"})
+  public int paragraphsPerHeader;
+
+  private File folder;
+  private File pageFile;
+  private String html;
+  private Document doc;
+  private List<PageHeader> headers;
+  private Element headerElement;
+  private Element anchorHeaderElement;
+  private String title;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    folder = Files.createTempDir();
+    pageFile = new File(folder, "page.html");
+    html = SyntheticDocs.createPage(0, headersPerPage, depth, paragraphsPerHeader);
+    Files.write(html, pageFile, Charsets.UTF_8);
+    doc = Jsoup.parse(html);
+    headers = GenerateEclipseTocUtility.computeHeaders(doc);
+    headerElement = doc.select("h1").first();
+    anchorHeaderElement = Jsoup.parse("<h2>Some <em>header</em> <a name=\"x\"></a><a id=\"my-id\">text</a></h2>").select("h2").first();
+    title = headerElement.text();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    SyntheticDocs.delete(folder);
+  }
+
+  @Benchmark
+  public String readPage() throws IOException {
+    return Files.toString(pageFile, Charsets.UTF_8);
+  }
+
+  @Benchmark
+  public Document parse() {
+    return Jsoup.parse(html);
+  }
+
+  @Benchmark
+  public List<PageHeader> computeHeaders() {
+    return GenerateEclipseTocUtility.computeHeaders(doc);
+  }
+
+  @Benchmark
+  public List<PageHeader> streamingScan() throws IOException {
+    return HeaderExtractor.STREAMING.readHeaders(pageFile.toPath(), new GenerationMetrics(0), new PageCollector(PageCollector.Options.NONE));
+  }
+
+  @Benchmark
+  public CompactOutline computeOutlineNodes() {
+    CompactOutline outline = new CompactOutline();
+    outline.add(CompactOutline.NO_NODE, 0, "id", "root", "index.html");
+    GenerateEclipseTocUtility.computeOutlineNodes(outline, headers, "page.html");
+    return outline;
+  }
+
+  @Benchmark
+  public String findId() {
+    return GenerateEclipseTocUtility.findId(headerElement);
+  }
+
+  @Benchmark
+  public String findIdNestedAnchor() {
+    return GenerateEclipseTocUtility.findId(anchorHeaderElement);
+  }
+
+  @Benchmark
+  public String sanitize() {
+    return GenerateEclipseTocUtility.sanitize(title);
+  }
+}
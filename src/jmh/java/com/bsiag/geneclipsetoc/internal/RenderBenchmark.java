@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bsiag.geneclipsetoc.internal.contexts.Context;
+import com.bsiag.geneclipsetoc.internal.contexts.ContextUtility;
+import com.bsiag.geneclipsetoc.internal.contexts.Topic;
+
+/**
+ * Benchmarks of the rendering of the toc file and of the contexts file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+  @Param({"100", "1000"})
+  public int pages;
+
+  @Param({"20"})
+  public int headersPerPage;
+
+  @Param({"3"})
+  public int depth;
+
+  private OutlineItemEx root;
+  private List<Context> contexts;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    CompactOutline outline = new CompactOutline();
+    for (int i = 0; i < pages; i++) {
+      String html = SyntheticDocs.createPage(i, headersPerPage, depth, 0);
+      List<PageHeader> headers = GenerateEclipseTocUtility.computeHeaders(Jsoup.parse(html));
+      GenerateEclipseTocUtility.computeOutlineNodes(outline, headers, "page" + i + ".html");
+    }
+    root = outline.toOutlineItem();
+
+    contexts = new ArrayList<Context>();
+    for (int i = 0; i < pages * 10; i++) {
+      Topic topic = new Topic();
+      topic.setHref("doc/page" + (i / 10) + ".html");
+      topic.setLabel("Page " + (i / 10));
+      Context context = new Context();
+      context.setId("context_" + i);
+      context.setTitle("Context <" + i + ">");
+      context.setDescription("Description of the context " + i + "\nSecond line with \"quotes\"");
+      context.setTopics(Collections.singletonList(topic));
+      contexts.add(context);
+    }
+  }
+
+  @Benchmark
+  public String createToc() {
+    return GenerateEclipseTocUtility.createToc(root, "doc");
+  }
+
+  @Benchmark
+  public StringWriter writeToc() throws IOException {
+    StringWriter out = new StringWriter();
+    EclipseTocWriter.write(root, "doc", out);
+    return out;
+  }
+
+  @Benchmark
+  public String contextsToXml() {
+    return ContextUtility.toXml(contexts);
+  }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Generates synthetic documentation trees for the benchmarks.
+ */
+public class SyntheticDocs {
+
+  private static final String PARAGRAPH = "<p>Lorem ipsum dolor sit amet, <b>consectetur</b> adipiscing elit, sed do <a href=\"#top\">eiusmod</a> tempor incididunt ut labore et dolore magna aliqua.</p>\n";
+
+  private SyntheticDocs() {
+  }
+
+  /**
+   * Create the content of a page.
+   *
+   * @param pageIndex
+   *          index of the page (used in the ids)
+   * @param headersPerPage
+   *          number of headers in the page
+   * @param depth
+   *          maximum header level (1 to 6)
+   * @param paragraphsPerHeader
+   *          number of paragraphs after each header
+   * @return html content
+   */
+  public static String createPage(int pageIndex, int headersPerPage, int depth, int paragraphsPerHeader) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<!DOCTYPE html>\n<html>\n<head>\n<title>Page ").append(pageIndex).append("</title>\n</head>\n<body>\n");
+    for (int i = 0; i < headersPerPage; i++) {
+      int level = 1 + (i % Math.max(1, Math.min(depth, 6)));
+      sb.append("<h").append(level).append(" id=\"p").append(pageIndex).append("_").append(i).append("\">");
+      sb.append("Header ").append(i).append(" of \u201Cpage\u201D ").append(pageIndex);
+      sb.append("</h").append(level).append(">\n");
+      for (int j = 0; j < paragraphsPerHeader; j++) {
+        sb.append(PARAGRAPH);
+      }
+    }
+    sb.append("</body>\n</html>\n");
+    return sb.toString();
+  }
+
+  /**
+   * Write a documentation tree in a folder.
+   *
+   * @return the page names (relative to the folder)
+   */
+  public static List<String> createPages(File folder, int pages, int headersPerPage, int depth, int paragraphsPerHeader) throws IOException {
+    List<String> result = new ArrayList<String>();
+    for (int i = 0; i < pages; i++) {
+      String name = "section" + (i / 100) + "/page" + i + ".html";
+      File file = new File(folder, name);
+      Files.createParentDirs(file);
+      Files.write(createPage(i, headersPerPage, depth, paragraphsPerHeader), file, Charsets.UTF_8);
+      result.add(name);
+    }
+    return result;
+  }
+
+  /**
+   * Delete a folder and its content.
+   */
+  public static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact representation of the outline (struct of arrays): a node is an index, the tree is stored in int arrays and
+ * the file paths are stored once per page. Node 0 is the root. A parent always has a smaller index than its children,
+ * the nodes are in the order of the toc.
+ * <p>
+ * The level stack (last known node for each level) is a fixed array: an entry is replaced but never removed, a node can
+ * have the last node of a deeper level as parent (for example a h4 following h3, h2).
+ */
+public class CompactOutline {
+
+  public static final int NO_NODE = -1;
+
+  private static final int MAX_LEVEL = 6;
+  private static final int DEFAULT_CAPACITY = 256;
+
+  private int size = 0;
+  private int[] levels;
+  private int[] parents;
+  private int[] firstChildren;
+  private int[] lastChildren;
+  private int[] nextSiblings;
+  private int[] filePathIndexes;
+  private String[] ids;
+  private String[] labels;
+
+  private final List<String> filePaths = new ArrayList<String>();
+  private final Map<String, Integer> filePathIndexMap = new HashMap<String, Integer>();
+  private final int[] levelStack = new int[MAX_LEVEL + 1];
+
+  public CompactOutline() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param initialCapacity
+   *          expected number of nodes
+   */
+  public CompactOutline(int initialCapacity) {
+    int capacity = Math.max(1, initialCapacity);
+    levels = new int[capacity];
+    parents = new int[capacity];
+    firstChildren = new int[capacity];
+    lastChildren = new int[capacity];
+    nextSiblings = new int[capacity];
+    filePathIndexes = new int[capacity];
+    ids = new String[capacity];
+    labels = new String[capacity];
+    Arrays.fill(levelStack, NO_NODE);
+  }
+
+  /**
+   * Add a node as last child of its parent and register it as last known node for its level.
+   *
+   * @param parent
+   *          the parent or {@link #NO_NODE} for the root
+   * @param level
+   *          the level (0 for the root, 1 for h1, 2 for h2 ...)
+   * @return the new node
+   */
+  public int add(int parent, int level, String id, String label, String filePath) {
+    if (level < 0 || level > MAX_LEVEL) {
+      throw new IllegalArgumentException("level should be between 0 and " + MAX_LEVEL + ", but was " + level);
+    }
+    if (parent == NO_NODE && size > 0) {
+      throw new IllegalStateException("The outline has already a root node");
+    }
+    ensureCapacity(size + 1);
+    int node = size;
+    size++;
+    levels[node] = level;
+    parents[node] = parent;
+    firstChildren[node] = NO_NODE;
+    lastChildren[node] = NO_NODE;
+    nextSiblings[node] = NO_NODE;
+    filePathIndexes[node] = filePathIndex(filePath);
+    ids[node] = id;
+    labels[node] = label;
+    if (parent != NO_NODE) {
+      if (firstChildren[parent] == NO_NODE) {
+        firstChildren[parent] = node;
+      }
+      else {
+        nextSiblings[lastChildren[parent]] = node;
+      }
+      lastChildren[parent] = node;
+    }
+    levelStack[level] = node;
+    return node;
+  }
+
+  /**
+   * Find the parent node given a specific level (the last known node of the closest lower level).
+   *
+   * @param level
+   *          the level of the current node
+   * @return the parent or {@link #NO_NODE} if there is no root yet
+   */
+  public int findParent(int level) {
+    int i = Math.min(level, MAX_LEVEL + 1) - 1;
+    while (i > 0 && levelStack[i] == NO_NODE) {
+      i = i - 1;
+    }
+    return i < 0 ? NO_NODE : levelStack[i];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the root node or {@link #NO_NODE} if the outline is empty
+   */
+  public int getRoot() {
+    return size == 0 ? NO_NODE : 0;
+  }
+
+  public int getLevel(int node) {
+    return levels[node];
+  }
+
+  public int getParent(int node) {
+    return parents[node];
+  }
+
+  public int getFirstChild(int node) {
+    return firstChildren[node];
+  }
+
+  public int getNextSibling(int node) {
+    return nextSiblings[node];
+  }
+
+  public String getId(int node) {
+    return ids[node];
+  }
+
+  public String getLabel(int node) {
+    return labels[node];
+  }
+
+  public String getFilePath(int node) {
+    return filePaths.get(filePathIndexes[node]);
+  }
+
+  /**
+   * @return true if both nodes have the same file path (compared by index, without string comparison)
+   */
+  public boolean isSameFile(int node, int otherNode) {
+    return filePathIndexes[node] == filePathIndexes[otherNode];
+  }
+
+  /**
+   * Convert to the Mylyn outline model (needed by {@link GenerateEclipseTocUtility#createToc(OutlineItemEx, String)}).
+   *
+   * @return the root item or null if the outline is empty
+   */
+  public OutlineItemEx toOutlineItem() {
+    OutlineItemEx[] items = new OutlineItemEx[size];
+    for (int node = 0; node < size; node++) {
+      OutlineItemEx parent = parents[node] == NO_NODE ? null : items[parents[node]];
+      items[node] = new OutlineItemEx(parent, levels[node], ids[node], 0, 0, labels[node]);
+      items[node].setFilePath(getFilePath(node));
+    }
+    return size == 0 ? null : items[0];
+  }
+
+  private int filePathIndex(String filePath) {
+    Integer index = filePathIndexMap.get(filePath);
+    if (index == null) {
+      index = filePaths.size();
+      filePaths.add(filePath);
+      filePathIndexMap.put(filePath, index);
+    }
+    return index;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= levels.length) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, levels.length * 2);
+    levels = Arrays.copyOf(levels, newCapacity);
+    parents = Arrays.copyOf(parents, newCapacity);
+    firstChildren = Arrays.copyOf(firstChildren, newCapacity);
+    lastChildren = Arrays.copyOf(lastChildren, newCapacity);
+    nextSiblings = Arrays.copyOf(nextSiblings, newCapacity);
+    filePathIndexes = Arrays.copyOf(filePathIndexes, newCapacity);
+    ids = Arrays.copyOf(ids, newCapacity);
+    labels = Arrays.copyOf(labels, newCapacity);
+  }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches folders (recursively) and single files with a {@link WatchService}, and reports the modified files.
+ */
+public class DirectoryWatcher implements Closeable {
+
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> folders = new HashMap<WatchKey, Path>();
+  private final Set<WatchKey> recursiveKeys = new HashSet<WatchKey>();
+  private final Set<Path> files = new HashSet<Path>();
+
+  public DirectoryWatcher() throws IOException {
+    watchService = FileSystems.getDefault().newWatchService();
+  }
+
+  /**
+   * Watch a folder and all its sub-folders (including the folders created later).
+   */
+  public void registerFolder(File folder) throws IOException {
+    Files.walkFileTree(folder.toPath(), new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        recursiveKeys.add(register(dir));
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Watch a single file (its parent folder is watched, only the changes of the file are reported).
+   */
+  public void registerFile(File file) throws IOException {
+    Path path = file.getAbsoluteFile().toPath();
+    files.add(path);
+    register(path.getParent());
+  }
+
+  private WatchKey register(Path dir) throws IOException {
+    WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+    folders.put(key, dir);
+    return key;
+  }
+
+  /**
+   * Wait for changes. When a first change is detected, the changes are collected until nothing happens during
+   * <code>quietMillis</code> (an editor saving a file often produces several events).
+   *
+   * @param quietMillis
+   *          delay without change before the changes are returned
+   * @return the modified, created or deleted files. A folder is returned when its content is unknown (a folder was
+   *         created or events were lost).
+   */
+  public Set<File> awaitChanges(long quietMillis) throws InterruptedException, IOException {
+    Set<File> changes = new LinkedHashSet<File>();
+    WatchKey key = watchService.take();
+    while (key != null) {
+      collect(key, changes);
+      key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+    }
+    return changes;
+  }
+
+  private void collect(WatchKey key, Set<File> changes) throws IOException {
+    Path dir = folders.get(key);
+    boolean recursive = recursiveKeys.contains(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (dir == null) {
+        continue;
+      }
+      if (event.kind() == OVERFLOW) {
+        changes.add(dir.toFile());
+        continue;
+      }
+      Path child = dir.resolve((Path) event.context());
+      if (recursive) {
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+          registerFolder(child.toFile());
+        }
+        changes.add(child.toFile());
+      }
+      else if (files.contains(child)) {
+        changes.add(child.toFile());
+      }
+    }
+    if (!key.reset()) {
+      //the folder is not accessible anymore
+      folders.remove(key);
+      recursiveKeys.remove(key);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+}
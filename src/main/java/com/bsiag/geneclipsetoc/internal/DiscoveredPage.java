@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.nio.file.Path;
+
+/**
+ * A page found by {@link PageDiscovery}, with the attributes read during the walk.
+ */
+public class DiscoveredPage {
+
+  private final String name;
+  private final Path path;
+  private final long length;
+  private final long lastModified;
+
+  /**
+   * @param name
+   *          path of the page relative to the root folder (with '/' as separator)
+   * @param path
+   *          the html file
+   * @param length
+   *          length of the file
+   * @param lastModified
+   *          modification time of the file (in milliseconds)
+   */
+  public DiscoveredPage(String name, Path path, long length, long lastModified) {
+    this.name = name;
+    this.path = path;
+    this.length = length;
+    this.lastModified = lastModified;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+}
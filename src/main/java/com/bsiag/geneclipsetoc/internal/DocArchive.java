@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.io.Files;
+
+/**
+ * Archive of the pages (<code>doc.zip</code>) written while the pages are read for the header extraction, so that each
+ * page is read only once. The entries have the same path as the href written in the toc file (see
+ * {@link GenerateEclipseTocUtility#calculateFilePath(String, String)}): Eclipse Help resolves them in the archive.
+ * Only the pages are archived (not the images or the style sheets they reference).
+ * <p>
+ * The pages can be added by several threads. The archive is written in a temporary file that replaces the target
+ * file when the archive is closed with {@link #commit()}.
+ */
+public class DocArchive implements Closeable {
+
+  private final File zipFile;
+  private final File tmpFile;
+  private final String helpPrefix;
+  private final ZipOutputStream out;
+  private boolean closed = false;
+
+  /**
+   * @param zipFile
+   *          the archive
+   * @param helpPrefix
+   *          prefix of the entry names (can be null)
+   */
+  public DocArchive(File zipFile, String helpPrefix) throws IOException {
+    this.zipFile = zipFile;
+    this.tmpFile = new File(zipFile.getParentFile(), zipFile.getName() + ".tmp");
+    this.helpPrefix = helpPrefix;
+    Files.createParentDirs(zipFile);
+    this.out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+  }
+
+  /**
+   * Add a page.
+   *
+   * @param page
+   *          the page
+   * @param content
+   *          the content of the page (consumed)
+   */
+  public synchronized void add(Page page, ByteBuffer content) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("The archive '" + zipFile.getAbsolutePath() + "' is closed");
+    }
+    ZipEntry entry = new ZipEntry(GenerateEclipseTocUtility.calculateFilePath(page.getFilePath(), helpPrefix));
+    entry.setTime(page.hasAttributes() ? page.getLastModified() : java.nio.file.Files.getLastModifiedTime(page.getPath()).toMillis());
+    out.putNextEntry(entry);
+    if (content.hasArray()) {
+      out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+      content.position(content.limit());
+    }
+    else {
+      byte[] chunk = new byte[8192];
+      while (content.hasRemaining()) {
+        int length = Math.min(chunk.length, content.remaining());
+        content.get(chunk, 0, length);
+        out.write(chunk, 0, length);
+      }
+    }
+    out.closeEntry();
+  }
+
+  /**
+   * Finish the archive and move it to its target file.
+   */
+  public synchronized void commit() throws IOException {
+    if (closed) {
+      throw new IllegalStateException("The archive '" + zipFile.getAbsolutePath() + "' is closed");
+    }
+    closed = true;
+    out.close();
+    Files.move(tmpFile, zipFile);
+  }
+
+  /**
+   * Close the archive without replacing the target file (if {@link #commit()} was not called).
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      try {
+        out.close();
+      }
+      finally {
+        tmpFile.delete();
+      }
+    }
+  }
+}
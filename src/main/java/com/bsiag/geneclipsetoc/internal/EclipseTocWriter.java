@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.eclipse.mylyn.wikitext.core.parser.outline.OutlineItem;
+import org.eclipse.mylyn.wikitext.core.parser.util.MarkupToEclipseToc;
+import org.eclipse.mylyn.wikitext.core.util.DefaultXmlStreamWriter;
+import org.eclipse.mylyn.wikitext.core.util.FormattingXMLStreamWriter;
+import org.eclipse.mylyn.wikitext.core.util.XmlStreamWriter;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Writes the toc file while walking the outline, instead of building the complete content as String like
+ * {@link MarkupToEclipseToc#createToc(OutlineItem)}. The output is the same: the same {@link XmlStreamWriter} is
+ * used and the elements are emitted in the same way.
+ */
+public class EclipseTocWriter {
+
+  private static final String SUB_TOC_EXTENSION = ".xml";
+
+  private EclipseTocWriter() {
+  }
+
+  /**
+   * Write the toc file.
+   *
+   * @param root
+   *          the root node (its label is the book title)
+   * @param helpPrefix
+   *          prefix of the href (can be null)
+   * @param outTocFile
+   *          the toc file
+   */
+  public static void write(OutlineItemEx root, String helpPrefix, File outTocFile) throws IOException {
+    Files.createParentDirs(outTocFile);
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outTocFile), Charsets.UTF_8));
+    try {
+      write(root, helpPrefix, out);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Write the toc file, directly from the compact outline (without conversion to {@link OutlineItem}). Sub toc files
+   * of a previous generation (see {@link #writeSplit}) are deleted.
+   *
+   * @param outline
+   *          the outline (the label of the root node is the book title)
+   * @param helpPrefix
+   *          prefix of the href (can be null)
+   * @param outTocFile
+   *          the toc file
+   */
+  public static void write(CompactOutline outline, String helpPrefix, File outTocFile) throws IOException {
+    deleteSubTocFiles(outTocFile);
+    Files.createParentDirs(outTocFile);
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outTocFile), Charsets.UTF_8));
+    try {
+      write(outline, helpPrefix, out);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Write the toc content, directly from the compact outline.
+   *
+   * @param outline
+   *          the outline (the label of the root node is the book title)
+   * @param helpPrefix
+   *          prefix of the href (can be null)
+   * @param out
+   *          the target
+   */
+  public static void write(CompactOutline outline, String helpPrefix, Writer out) throws IOException {
+    write(outline, helpPrefix, out, null);
+  }
+
+  /**
+   * Write the toc file and one sub toc file for each topic (having children) of the split level. In the toc file,
+   * these topics contain a <code>&lt;link toc="..."/&gt;</code> element instead of their children. Eclipse Help
+   * includes the topics of the linked toc at this position: the result is equivalent to the single toc file.
+   * <p>
+   * The sub toc files are written next to the toc file (<code>toc-1.xml</code>, <code>toc-2.xml</code> ... for
+   * <code>toc.xml</code>) and are linked with their name: the toc file is expected at the root of the help plugin.
+   * Sub toc files of a previous generation are deleted.
+   *
+   * @param outline
+   *          the outline (the label of the root node is the book title)
+   * @param helpPrefix
+   *          prefix of the href (can be null)
+   * @param outTocFile
+   *          the toc file
+   * @param splitLevel
+   *          depth of the topics that are moved to a sub toc file (1 for the topics directly under the book)
+   * @param executor
+   *          executor used to write the sub toc files (in parallel with the toc file)
+   * @return the sub toc files, in the order of the toc
+   */
+  public static List<File> writeSplit(CompactOutline outline, String helpPrefix, File outTocFile, int splitLevel, ExecutorService executor) throws IOException {
+    if (splitLevel < 1) {
+      throw new IllegalArgumentException("splitLevel should be greater than 0, but was " + splitLevel);
+    }
+    deleteSubTocFiles(outTocFile);
+    Splitter splitter = new Splitter(outline, helpPrefix, outTocFile, splitLevel, executor);
+    Files.createParentDirs(outTocFile);
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outTocFile), Charsets.UTF_8));
+    try {
+      write(outline, helpPrefix, out, splitter);
+    }
+    finally {
+      out.close();
+      splitter.awaitSubTocFiles();
+    }
+    return splitter.subTocFiles;
+  }
+
+  /**
+   * @return true if the file is a sub toc file written by {@link #writeSplit} for the toc file
+   */
+  public static boolean isSubTocFile(File outTocFile, File file) {
+    File folder = outTocFile.getAbsoluteFile().getParentFile();
+    if (!folder.equals(file.getAbsoluteFile().getParentFile())) {
+      return false;
+    }
+    String prefix = subTocPrefix(outTocFile);
+    String name = file.getName();
+    if (!name.startsWith(prefix) || !name.endsWith(SUB_TOC_EXTENSION) || name.length() == prefix.length() + SUB_TOC_EXTENSION.length()) {
+      return false;
+    }
+    for (int i = prefix.length(); i < name.length() - SUB_TOC_EXTENSION.length(); i++) {
+      if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void write(CompactOutline outline, String helpPrefix, Writer out, Splitter splitter) throws IOException {
+    int root = outline.getRoot();
+    if (root == CompactOutline.NO_NODE) {
+      throw new IllegalStateException("The outline is empty");
+    }
+    writeToc(outline, helpPrefix, out, root, adjustForPrefix(helpPrefix, outline.getFilePath(root)), 1, splitter);
+  }
+
+  private static void writeToc(CompactOutline outline, String helpPrefix, Writer out, int node, String topic, int depth, Splitter splitter) throws IOException {
+    XmlStreamWriter writer = new FormattingXMLStreamWriter(new DefaultXmlStreamWriter(out));
+    writer.writeStartDocument("utf-8", "1.0");
+    writer.writeStartElement("toc");
+    writer.writeAttribute("topic", topic);
+    writer.writeAttribute("label", outline.getLabel(node));
+    emitToc(writer, outline, helpPrefix, node, depth, splitter);
+    writer.writeEndElement(); // toc
+    writer.writeEndDocument();
+    writer.flush();
+    out.flush();
+  }
+
+  /**
+   * Write the toc content.
+   *
+   * @param root
+   *          the root node (its label is the book title)
+   * @param helpPrefix
+   *          prefix of the href (can be null)
+   * @param out
+   *          the target
+   */
+  public static void write(OutlineItemEx root, String helpPrefix, Writer out) throws IOException {
+    XmlStreamWriter writer = new FormattingXMLStreamWriter(new DefaultXmlStreamWriter(out));
+    writer.writeStartDocument("utf-8", "1.0");
+    writer.writeStartElement("toc");
+    writer.writeAttribute("topic", adjustForPrefix(helpPrefix, root.getFilePath()));
+    writer.writeAttribute("label", root.getLabel());
+    emitToc(writer, root, helpPrefix, root.getChildren());
+    writer.writeEndElement(); // toc
+    writer.writeEndDocument();
+    writer.flush();
+    out.flush();
+  }
+
+  private static void emitToc(XmlStreamWriter writer, OutlineItemEx root, String helpPrefix, List<OutlineItem> children) {
+    for (OutlineItem item : children) {
+      writer.writeStartElement("topic");
+      String file = computeFile(root, item);
+      String suffix = "";
+      // same as MarkupToEclipseToc: only append the anchor if this is not the first item in the file.
+      OutlineItem previous = item.getPrevious();
+      if (previous != null && previous.getParent() != null) {
+        String fileOfPrevious = computeFile(root, previous);
+        if (file.equals(fileOfPrevious)) {
+          suffix = "#" + item.getId();
+        }
+      }
+      writer.writeAttribute("href", adjustForPrefix(helpPrefix, file + suffix));
+      writer.writeAttribute("label", item.getLabel());
+      if (!item.getChildren().isEmpty()) {
+        emitToc(writer, root, helpPrefix, item.getChildren());
+      }
+      writer.writeEndElement(); // topic
+    }
+  }
+
+  /**
+   * @param depth
+   *          depth of the children of parent (1 for the topics directly under the book)
+   * @param splitter
+   *          moves the children of the topics of the split level to sub toc files (can be null)
+   */
+  private static void emitToc(XmlStreamWriter writer, CompactOutline outline, String helpPrefix, int parent, int depth, Splitter splitter) {
+    // the previous item is the previous sibling, or the parent for the first child (see OutlineItem#getPrevious()).
+    int previous = parent;
+    for (int node = outline.getFirstChild(parent); node != CompactOutline.NO_NODE; node = outline.getNextSibling(node)) {
+      writer.writeStartElement("topic");
+      String file = outline.getFilePath(node);
+      if (outline.getParent(previous) != CompactOutline.NO_NODE && outline.isSameFile(node, previous)) {
+        file = file + "#" + outline.getId(node);
+      }
+      String href = adjustForPrefix(helpPrefix, file);
+      writer.writeAttribute("href", href);
+      writer.writeAttribute("label", outline.getLabel(node));
+      if (outline.getFirstChild(node) != CompactOutline.NO_NODE) {
+        if (splitter != null && depth == splitter.splitLevel) {
+          writer.writeEmptyElement("link");
+          writer.writeAttribute("toc", splitter.submit(node, href, depth + 1));
+        }
+        else {
+          emitToc(writer, outline, helpPrefix, node, depth + 1, splitter);
+        }
+      }
+      writer.writeEndElement(); // topic
+      previous = node;
+    }
+  }
+
+  private static String subTocPrefix(File outTocFile) {
+    String name = outTocFile.getName();
+    int index = name.lastIndexOf('.');
+    return (index > 0 ? name.substring(0, index) : name) + "-";
+  }
+
+  /**
+   * @return the sub toc files of the toc file that are present (see {@link #writeSplit})
+   */
+  public static List<File> listSubTocFiles(File outTocFile) {
+    List<File> result = new ArrayList<File>();
+    File[] files = outTocFile.getAbsoluteFile().getParentFile().listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (isSubTocFile(outTocFile, file)) {
+          result.add(file);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param count
+   *          number of sub toc files written with the toc file
+   * @return true if exactly the sub toc files <code>toc-1.xml</code> to <code>toc-&lt;count&gt;.xml</code> of the toc
+   *         file are present
+   */
+  public static boolean hasSubTocFiles(File outTocFile, int count) {
+    if (listSubTocFiles(outTocFile).size() != count) {
+      return false;
+    }
+    File folder = outTocFile.getAbsoluteFile().getParentFile();
+    for (int i = 1; i <= count; i++) {
+      if (!new File(folder, subTocPrefix(outTocFile) + i + SUB_TOC_EXTENSION).isFile()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static void deleteSubTocFiles(File outTocFile) throws IOException {
+    for (File file : listSubTocFiles(outTocFile)) {
+      if (!file.delete()) {
+        throw new IOException("Could not delete the sub toc file '" + file.getAbsolutePath() + "'");
+      }
+    }
+  }
+
+  /**
+   * Writes the sub toc files with the executor.
+   */
+  private static class Splitter {
+    private final CompactOutline outline;
+    private final String helpPrefix;
+    private final File folder;
+    private final String prefix;
+    private final int splitLevel;
+    private final ExecutorService executor;
+    private final List<File> subTocFiles = new ArrayList<File>();
+    private final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+    Splitter(CompactOutline outline, String helpPrefix, File outTocFile, int splitLevel, ExecutorService executor) {
+      this.outline = outline;
+      this.helpPrefix = helpPrefix;
+      this.folder = outTocFile.getAbsoluteFile().getParentFile();
+      this.prefix = subTocPrefix(outTocFile);
+      this.splitLevel = splitLevel;
+      this.executor = executor;
+    }
+
+    /**
+     * @return the value of the toc attribute of the link
+     */
+    String submit(final int node, final String topic, final int depth) {
+      final File subTocFile = new File(folder, prefix + (subTocFiles.size() + 1) + SUB_TOC_EXTENSION);
+      subTocFiles.add(subTocFile);
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(subTocFile), Charsets.UTF_8));
+          try {
+            writeToc(outline, helpPrefix, out, node, topic, depth, null);
+          }
+          finally {
+            out.close();
+          }
+          return null;
+        }
+      }));
+      return subTocFile.getName();
+    }
+
+    void awaitSubTocFiles() throws IOException {
+      for (Future<Void> future : futures) {
+        GenerateEclipseTocUtility.getResult(future);
+      }
+    }
+  }
+
+  private static String computeFile(OutlineItemEx root, OutlineItem item) {
+    if (item instanceof OutlineItemEx && ((OutlineItemEx) item).getFilePath() != null) {
+      return ((OutlineItemEx) item).getFilePath();
+    }
+    return root.getFilePath();
+  }
+
+  private static String adjustForPrefix(String helpPrefix, String file) {
+    if (helpPrefix != null) {
+      if (helpPrefix.endsWith("/")) {
+        return helpPrefix + file;
+      }
+      return helpPrefix + "/" + file;
+    }
+    return file;
+  }
+}
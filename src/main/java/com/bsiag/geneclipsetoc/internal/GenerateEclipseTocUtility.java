@@ -10,39 +10,83 @@
  ******************************************************************************/
 package com.bsiag.geneclipsetoc.internal;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.mylyn.wikitext.core.parser.outline.OutlineItem;
 import org.eclipse.mylyn.wikitext.core.parser.util.MarkupToEclipseToc;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Measure;
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Stage;
 import com.bsiag.geneclipsetoc.internal.contexts.Context;
 import com.bsiag.geneclipsetoc.internal.contexts.ContextUtility;
 import com.bsiag.geneclipsetoc.internal.contexts.Topic;
 import com.bsiag.geneclipsetoc.maven.HelpContext;
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class GenerateEclipseTocUtility {
 
-  private static final String CHAR_QUOTE = "\"";
-  private static final String CHAR_8220 = Character.toString((char) 8220);
-  private static final String CHAR_8221 = Character.toString((char) 8221);
-  private static final String CHAR_8222 = Character.toString((char) 8222);
+  private static final char CHAR_QUOTE = '"';
+  private static final char CHAR_8220 = (char) 8220;
+  private static final char CHAR_8222 = (char) 8222;
   private static final int ROOT_LEVEL = 0;
   private static final String ROOT_ID = "id";
 
   public static void generate(File rootInFolder, List<String> pages, String helpPrefix, File outTocFile, File outContextsFile, List<HelpContext> inContexts) throws IOException {
-    if (!rootInFolder.exists() || !rootInFolder.isDirectory()) {
-      throw new IllegalStateException("Folder rootInFolder '" + rootInFolder.getAbsolutePath() + "' not found.");
+    generate(rootInFolder, pages, helpPrefix, outTocFile, outContextsFile, inContexts, new GenerateOptions());
+  }
+
+  /**
+   * Generate the toc file (and the contexts file).
+   *
+   * @param options
+   *          how the pages are read and parsed. In any case the outline is built in the order of the pages, so the
+   *          output does not depend on the options.
+   */
+  public static void generate(File rootInFolder, List<String> pages, String helpPrefix, File outTocFile, File outContextsFile, List<HelpContext> inContexts, GenerateOptions options) throws IOException {
+    generate(rootInFolder.toPath(), pages, helpPrefix, outTocFile, outContextsFile, inContexts, options);
+  }
+
+  /**
+   * Generate the toc file (and the contexts file).
+   *
+   * @param rootInFolder
+   *          the root folder of the pages, in a folder or in an archive (see {@link SourceFolder})
+   * @param options
+   *          how the pages are read and parsed. In any case the outline is built in the order of the pages, so the
+   *          output does not depend on the options.
+   */
+  public static void generate(Path rootInFolder, List<String> pages, String helpPrefix, File outTocFile, File outContextsFile, List<HelpContext> inContexts, GenerateOptions options) throws IOException {
+    if (!java.nio.file.Files.isDirectory(rootInFolder)) {
+      throw new IllegalStateException("Folder rootInFolder '" + SourceFolder.getAbsoluteName(rootInFolder) + "' not found.");
     }
     if (pages == null || pages.isEmpty()) {
       throw new IllegalArgumentException("pages can not be null, it should contains at least one element");
@@ -53,57 +97,375 @@ public class GenerateEclipseTocUtility {
     if (inContexts != null && inContexts.size() > 0 && outContextsFile == null) {
       throw new IllegalStateException("File outContextsFile is not set (but there are '" + inContexts.size() + "' HelpContexts)");
     }
+    if (options.isHarvestHelpContexts() && outContextsFile == null) {
+      throw new IllegalStateException("File outContextsFile is not set (but the help contexts are harvested from the pages)");
+    }
+
+    GenerationMetrics metrics = options.getMetrics();
+    if (metrics == null) {
+      metrics = GenerationMetrics.DISABLED;
+    }
+    long startNanos = System.nanoTime();
+    try {
+      if (options.getPageWindow() > 0) {
+        checkBoundedMemoryOptions(options);
+        generateBounded(rootInFolder, pages, helpPrefix, outTocFile, outContextsFile, inContexts, options, metrics);
+      }
+      else {
+        generateWithIoExecutor(rootInFolder, pages, helpPrefix, outTocFile, outContextsFile, inContexts, options, metrics);
+      }
+    }
+    finally {
+      //with a single thread, the pages are read in the calling thread
+      PageReader.releaseBuffers();
+    }
+    metrics.setTotalNanos(System.nanoTime() - startNanos);
+  }
 
-    //Prepare the rootInFolder list (this will check that the files exist)
-    List<File> inFiles = new ArrayList<File>();
+  private static void generateWithIoExecutor(Path rootInFolder, List<String> pages, String helpPrefix, File outTocFile, File outContextsFile, List<HelpContext> inContexts, GenerateOptions options, GenerationMetrics metrics) throws IOException {
+    ExecutorService ioExecutor = null;
+    if (options.getIoThreads() > 0) {
+      ioExecutor = PagePrefetcher.createIoExecutor(options.getIoThreads());
+    }
+    try {
+      generate(rootInFolder, pages, helpPrefix, outTocFile, outContextsFile, inContexts, options, metrics, ioExecutor);
+    }
+    finally {
+      if (ioExecutor != null) {
+        ioExecutor.shutdownNow();
+      }
+    }
+  }
+
+  private static void generate(Path rootInFolder, List<String> pages, String helpPrefix, File outTocFile, File outContextsFile, List<HelpContext> inContexts, GenerateOptions options, GenerationMetrics metrics, ExecutorService ioExecutor) throws IOException {
+    //Resolve the pages of the toc and of the contexts (this will check that the files exist, once per file)
+    Measure resolve = metrics.start(Stage.RESOLVE);
+    List<DiscoveredPage> checkedPages = options.getDiscoveredPages();
+    if (ioExecutor != null) {
+      //check all the files concurrently
+      checkedPages = PagePrefetcher.checkPages(ioExecutor, rootInFolder, collectPageNames(pages, inContexts), checkedPages);
+    }
+    ValidationReport report = null;
+    if (options.isValidateLinks() || options.isCollectAllErrors()) {
+      report = options.getValidationReport() != null ? options.getValidationReport() : new ValidationReport();
+    }
+    //with collectAllErrors the errors are reported (and the generation fails) once all the pages are parsed
+    ValidationReport errors = options.isCollectAllErrors() ? report : null;
+    PageModel pageModel = new PageModel(rootInFolder, checkedPages);
+    List<Page> tocPages = new ArrayList<Page>();
     for (String p : pages) {
       if (p != null && p.length() > 0) {
-        inFiles.add(computeFile(rootInFolder, p));
+        Page page = pageModel.resolve(p, errors, "page of the toc");
+        if (page != null) {
+          tocPages.add(page);
+        }
       }
     }
-
-    //Prepare the topicFileMap (this will check that the files exist)
-    Map<File, String> topicFileMap = new HashMap<>();
     if (inContexts != null) {
       for (HelpContext hc : inContexts) {
         if (hc.getTopicPages() != null) {
           for (String p : hc.getTopicPages()) {
-            topicFileMap.put(computeFile(rootInFolder, p), null);
+            pageModel.resolve(p, errors, "topic page of the context '" + hc.getId() + "'");
           }
         }
       }
     }
+    metrics.end(resolve);
 
-    Map<Integer, OutlineItemEx> nodeMap = new HashMap<Integer, OutlineItemEx>();
-    for (int i = 0; i < inFiles.size(); i++) {
-      File inFile = inFiles.get(i);
+    CompactOutline outline = new CompactOutline();
+    HeaderExtractor extractor = options.getHeaderExtractor();
+    PageCollector.Options collectorOptions = PageCollector.Options.of(options);
+    OutlineCache cache = options.getOutlineCache();
+    boolean ownCache = cache == null && options.getCacheFile() != null;
+    if (ownCache) {
+      Measure loadCache = metrics.start(Stage.READ);
+      cache = OutlineCache.load(options.getCacheFile(), extractor);
+      metrics.end(loadCache);
+    }
+    ExecutorService executor = options.getExecutor();
+    boolean ownExecutor = executor == null;
+    if (ownExecutor) {
+      executor = createExecutor(options.getThreads());
+    }
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    DocArchive archive = null;
+    PagePrefetcher prefetcher = null;
+    try {
+      if (options.getDocZipFile() != null) {
+        archive = new DocArchive(options.getDocZipFile(), helpPrefix);
+      }
+      if (ioExecutor != null) {
+        //the read ahead should cover the pages waited by all the parsing threads
+        prefetcher = new PagePrefetcher(ioExecutor, pageModel.getPages(), cache, archive != null, collectorOptions, metrics);
+        prefetcher.readAhead(Math.max(options.getIoThreads(), options.getThreads()));
+      }
+      //Read and parse each page once (possibly in parallel)
+      Map<Page, Future<List<PageHeader>>> pageFutures = new HashMap<Page, Future<List<PageHeader>>>();
+      for (Page page : pageModel.getPages()) {
+        Future<List<PageHeader>> future = executor.submit(createReadHeadersTask(extractor, cache, options.getSharedHeaderCache(), archive, prefetcher, page, metrics, collectorOptions));
+        pageFutures.put(page, future);
+        futures.add(future);
+      }
 
-      String html = Files.toString(inFile, Charsets.UTF_8);
-      String filePath = calculateFilePath(rootInFolder, inFile);
-      Document doc = Jsoup.parse(html);
+      //Build the outline in the order of the pages
+      for (Page page : tocPages) {
+        List<PageHeader> headers = getHeaders(page, pageFutures);
+        Measure outlineMeasure = metrics.start(Stage.OUTLINE);
+        computeOutlineNodes(outline, headers, page.getFilePath(), errors);
+        metrics.end(outlineMeasure);
+      }
+
+      //Wait for the pages that are only used by the contexts
+      for (Page page : pageModel.getPages()) {
+        getHeaders(page, pageFutures);
+      }
+      if (options.isValidateLinks()) {
+        Measure validate = metrics.start(Stage.VALIDATE);
+        LinkValidator.validate(rootInFolder, pageModel.getPages(), report);
+        metrics.end(validate);
+      }
+      if (report != null) {
+        checkValidationReport(report, options);
+      }
+      if (archive != null) {
+        Measure archiveMeasure = metrics.start(Stage.ARCHIVE);
+        archive.commit();
+        metrics.end(archiveMeasure);
+      }
+      if (ownCache) {
+        Measure saveCache = metrics.start(Stage.WRITE);
+        cache.save();
+        metrics.end(saveCache);
+      }
+
+      if (outline.isEmpty()) {
+        throw new IllegalStateException("No header found in the html files");
+      }
 
-      computeOutlineNodes(nodeMap, doc, filePath);
+      writeTocAndContexts(pageModel, outline, helpPrefix, outTocFile, outContextsFile, inContexts, options, metrics, executor);
+    }
+    finally {
+      if (prefetcher != null) {
+        prefetcher.cancel();
+      }
+      if (archive != null) {
+        archive.close();
+      }
+      if (ownExecutor) {
+        executor.shutdownNow();
+      }
+      else {
+        //the executor is shared: only stop the tasks of this generation (in case of error)
+        for (Future<?> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Generate the toc file with a bounded memory (see {@link GenerateOptions#getPageWindow()}): the pages are read and
+   * parsed in a sliding window, their headers are written to the toc file in the order of the pages and released. Only
+   * the pages of the contexts are kept.
+   */
+  private static void generateBounded(Path rootInFolder, List<String> pages, String helpPrefix, File outTocFile, File outContextsFile, List<HelpContext> inContexts, GenerateOptions options, GenerationMetrics metrics) throws IOException {
+    //Resolve the pages of the contexts (the pages of the toc are resolved in the window)
+    Measure resolve = metrics.start(Stage.RESOLVE);
+    PageModel pageModel = new PageModel(rootInFolder, options.getDiscoveredPages());
+    if (inContexts != null) {
+      for (HelpContext hc : inContexts) {
+        if (hc.getTopicPages() != null) {
+          for (String p : hc.getTopicPages()) {
+            pageModel.resolve(p);
+          }
+        }
+      }
+    }
+    metrics.end(resolve);
+
+    HeaderExtractor extractor = options.getHeaderExtractor();
+    SharedHeaderCache sharedCache = options.getSharedHeaderCache();
+    ExecutorService executor = options.getExecutor();
+    boolean ownExecutor = executor == null;
+    if (ownExecutor) {
+      executor = createExecutor(options.getThreads());
+    }
+    Deque<Future<Page>> window = new ArrayDeque<Future<Page>>();
+    DocArchive archive = null;
+    Set<String> archivedPages = null;
+    StreamingTocWriter tocWriter = null;
+    try {
+      if (options.getDocZipFile() != null) {
+        archive = new DocArchive(options.getDocZipFile(), helpPrefix);
+        archivedPages = Collections.synchronizedSet(new HashSet<String>());
+      }
+      tocWriter = new StreamingTocWriter(outTocFile, helpPrefix);
+      Iterator<String> names = pages.iterator();
+      while (true) {
+        //backpressure: a page is submitted when a page of the window is written
+        while (window.size() < options.getPageWindow() && names.hasNext()) {
+          String name = names.next();
+          if (name != null && name.length() > 0) {
+            window.addLast(executor.submit(createReadPageTask(extractor, sharedCache, archive, archivedPages, pageModel, name, metrics)));
+          }
+        }
+        if (window.isEmpty()) {
+          break;
+        }
+        Page page = getResult(window.removeFirst());
+        Measure toc = metrics.start(Stage.TOC);
+        tocWriter.add(page.getHeaders(), page.getFilePath());
+        metrics.end(toc);
+      }
+      Measure toc = metrics.start(Stage.TOC);
+      tocWriter.commit();
+      metrics.end(toc);
 
-      if (topicFileMap.containsKey(inFile)) {
-        topicFileMap.put(inFile, findFirstHeader(doc));
+      //Parse the pages that are only used by the contexts
+      for (Page page : pageModel.getPages()) {
+        if (page.getHeaders() == null) {
+          DocArchive pageArchive = archivedPages != null && archivedPages.add(page.getFilePath()) ? archive : null;
+          page.setHeaders(readHeaders(extractor, null, sharedCache, pageArchive, page, metrics, PageCollector.Options.NONE));
+        }
       }
+      if (archive != null) {
+        Measure archiveMeasure = metrics.start(Stage.ARCHIVE);
+        archive.commit();
+        metrics.end(archiveMeasure);
+      }
+      writeContexts(pageModel, helpPrefix, outContextsFile, inContexts, metrics);
     }
+    finally {
+      if (tocWriter != null) {
+        tocWriter.close();
+      }
+      if (archive != null) {
+        archive.close();
+      }
+      if (ownExecutor) {
+        executor.shutdownNow();
+      }
+      else {
+        for (Future<Page> future : window) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
 
-    //Loop over the topicFileMap and verify that all values are set.
-    for (File inFile : topicFileMap.keySet()) {
-      if (topicFileMap.get(inFile) == null) {
-        String html = Files.toString(inFile, Charsets.UTF_8);
-        Document doc = Jsoup.parse(html);
-        topicFileMap.put(inFile, findFirstHeader(doc));
+  /**
+   * @throws IllegalStateException
+   *           if the report contains problems and the generation should fail
+   */
+  private static void checkValidationReport(ValidationReport report, GenerateOptions options) {
+    if (report.hasErrors() || (options.isFailOnValidationError() && !report.isEmpty())) {
+      StringBuilder sb = new StringBuilder();
+      sb.append(report.size()).append(" problem(s) found in the pages:");
+      for (String line : report.toLines()) {
+        sb.append("\n").append(line);
       }
+      throw new IllegalStateException(sb.toString());
     }
+  }
 
-    OutlineItemEx root = nodeMap.get(ROOT_LEVEL);
-    if (root == null) {
-      throw new IllegalStateException("No header found in the html files");
+  /**
+   * Check that the options can be combined with a bounded memory ({@link GenerateOptions#getPageWindow()} greater than
+   * 0): the split toc, the I/O threads, the link validation, the collection of all the errors, the
+   * harvest of the help contexts and the cache need the headers of all the pages.
+   *
+   * @throws IllegalArgumentException
+   *           if an option can not be used with a bounded memory
+   */
+  public static void checkBoundedMemoryOptions(GenerateOptions options) {
+    String option = null;
+    if (options.getTocSplitLevel() > 0) {
+      option = "tocSplitLevel";
     }
+    else if (options.getIoThreads() > 0) {
+      option = "ioThreads";
+    }
+    else if (options.isValidateLinks()) {
+      option = "validateLinks";
+    }
+    else if (options.isCollectAllErrors()) {
+      option = "collectAllErrors";
+    }
+    else if (options.isHarvestHelpContexts()) {
+      option = "harvestHelpContexts";
+    }
+    else if (options.getOutlineCache() != null || options.getCacheFile() != null) {
+      option = "cache";
+    }
+    if (option != null) {
+      throw new IllegalArgumentException("The option '" + option + "' can not be used with a bounded memory (pageWindow is " + options.getPageWindow() + ")");
+    }
+  }
 
+  /**
+   * @return the distinct names of the pages of the toc and of the contexts
+   */
+  private static Set<String> collectPageNames(List<String> pages, List<HelpContext> inContexts) {
+    Set<String> names = new LinkedHashSet<String>();
+    for (String p : pages) {
+      if (p != null && p.length() > 0) {
+        names.add(p);
+      }
+    }
+    if (inContexts != null) {
+      for (HelpContext hc : inContexts) {
+        if (hc.getTopicPages() != null) {
+          names.addAll(hc.getTopicPages());
+        }
+      }
+    }
+    return names;
+  }
+
+  private static void writeTocAndContexts(PageModel pageModel, CompactOutline outline, String helpPrefix, File outTocFile, File outContextsFile, List<HelpContext> inContexts, GenerateOptions options, GenerationMetrics metrics, ExecutorService executor) throws IOException {
     //Compute Toc File and write it
+    Measure toc = metrics.start(Stage.TOC);
+    if (options.getTocSplitLevel() > 0) {
+      EclipseTocWriter.writeSplit(outline, helpPrefix, outTocFile, options.getTocSplitLevel(), executor);
+    }
+    else {
+      EclipseTocWriter.write(outline, helpPrefix, outTocFile);
+    }
+    metrics.end(toc);
+
+    writeContexts(pageModel, helpPrefix, outContextsFile, inContexts, metrics);
+  }
+
+  private static void writeContexts(PageModel pageModel, String helpPrefix, File outContextsFile, List<HelpContext> inContexts, GenerationMetrics metrics) throws IOException {
+    //Compute Contexts File and write it
+    if ((inContexts != null && inContexts.size() > 0) || hasHarvestedContexts(pageModel)) {
+      Measure contexts = metrics.start(Stage.CONTEXTS);
+      List<Context> outContexts = computeContexts(pageModel, helpPrefix, inContexts);
+      metrics.end(contexts);
+
+      Measure write = metrics.start(Stage.WRITE);
+      Files.createParentDirs(outContextsFile);
+      Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outContextsFile), Charsets.UTF_8));
+      try {
+        ContextUtility.write(outContexts, out);
+      }
+      finally {
+        out.close();
+      }
+      metrics.end(write);
+    }
+  }
+
+  /**
+   * Compute the toc content with {@link MarkupToEclipseToc} (the content is created as String, see
+   * {@link EclipseTocWriter} for the streaming variant).
+   *
+   * @param root
+   *          the root node
+   * @param helpPrefix
+   *          prefix of the href (can be null)
+   * @return toc content
+   */
+  static String createToc(OutlineItemEx root, String helpPrefix) {
     MarkupToEclipseToc eclipseToc = new MarkupToEclipseToc() {
       @Override
       protected String computeFile(OutlineItem item) {
@@ -116,21 +478,18 @@ public class GenerateEclipseTocUtility {
     eclipseToc.setBookTitle(root.getLabel());
     eclipseToc.setHtmlFile(root.getFilePath());
     eclipseToc.setHelpPrefix(helpPrefix);
-    String tocContent = eclipseToc.createToc(root);
-    Files.createParentDirs(outTocFile);
-    Files.write(tocContent, outTocFile, Charsets.UTF_8);
-
-    //Compute Contexts File and write it
-    if (inContexts != null && inContexts.size() > 0) {
-      List<Context> outContexts = computeContexts(rootInFolder, helpPrefix, inContexts, topicFileMap);
-      String contextsContent = ContextUtility.toXml(outContexts);
-      Files.createParentDirs(outContextsFile);
-      Files.write(contextsContent, outContextsFile, Charsets.UTF_8);
-    }
+    return eclipseToc.createToc(root);
   }
 
-  static List<Context> computeContexts(File rootInFolder, String helpPrefix, List<HelpContext> inContexts, Map<File, String> topicFileMap) {
+  /**
+   * Compute the contexts: the {@link HelpContext}s followed by the contexts declared in the pages (see
+   * {@link Page#getContexts()}). A context declared in a page with the id of a {@link HelpContext} is merged into it:
+   * the page is added to its topics, the title and the description of the {@link HelpContext} are kept if they are
+   * set.
+   */
+  static List<Context> computeContexts(PageModel pageModel, String helpPrefix, List<HelpContext> inContexts) {
     List<Context> outContexts = new ArrayList<>();
+    Map<String, Context> contextsById = new HashMap<String, Context>();
     if (inContexts != null) {
       for (HelpContext hc : inContexts) {
         Context context = new Context();
@@ -140,11 +499,11 @@ public class GenerateEclipseTocUtility {
           for (String p : hc.getTopicPages()) {
             Topic topic = new Topic();
 
-            File file = computeFile(rootInFolder, p);
-            String filePath = calculateFilePath(rootInFolder, file, helpPrefix);
+            Page page = pageModel.resolve(p);
+            String filePath = calculateFilePath(page.getFilePath(), helpPrefix);
 
             topic.setHref(filePath);
-            topic.setLabel(topicFileMap.get(file));
+            topic.setLabel(findFirstHeader(page.getHeaders()));
             topics.add(topic);
           }
         }
@@ -152,17 +511,77 @@ public class GenerateEclipseTocUtility {
         if (hc.getTitle() != null && hc.getTitle().length() > 0) {
           context.setTitle(hc.getTitle());
         }
-        else if (topics.size() > 0) {
-          context.setTitle(topics.get(0).getLabel());
-        }
         context.setId(hc.getId());
         context.setDescription(hc.getDescription());
         outContexts.add(context);
+        if (hc.getId() != null && !contextsById.containsKey(hc.getId())) {
+          contextsById.put(hc.getId(), context);
+        }
+      }
+    }
+    for (Page page : pageModel.getPages()) {
+      PageContexts.Declarations declarations = page.getContexts();
+      if (declarations == null) {
+        continue;
+      }
+      for (int i = 0; i < declarations.size(); i++) {
+        Context context = contextsById.get(declarations.getId(i));
+        if (context == null) {
+          context = new Context();
+          context.setId(declarations.getId(i));
+          context.setTopics(new ArrayList<Topic>());
+          outContexts.add(context);
+          contextsById.put(context.getId(), context);
+        }
+        if (isEmpty(context.getTitle())) {
+          context.setTitle(declarations.getTitle(i));
+        }
+        if (isEmpty(context.getDescription())) {
+          context.setDescription(declarations.getDescription(i));
+        }
+        String href = calculateFilePath(page.getFilePath(), helpPrefix);
+        if (declarations.getAnchor(i) != null) {
+          href += "#" + declarations.getAnchor(i);
+        }
+        if (!containsTopic(context.getTopics(), href)) {
+          Topic topic = new Topic();
+          topic.setHref(href);
+          topic.setLabel(findHeader(page.getHeaders(), declarations.getAnchor(i)));
+          context.getTopics().add(topic);
+        }
+      }
+    }
+    //without title, the label of the first topic is used
+    for (Context context : outContexts) {
+      if (isEmpty(context.getTitle()) && context.getTopics().size() > 0) {
+        context.setTitle(context.getTopics().get(0).getLabel());
       }
     }
     return outContexts;
   }
 
+  private static boolean hasHarvestedContexts(PageModel pageModel) {
+    for (Page page : pageModel.getPages()) {
+      if (page.getContexts() != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean containsTopic(List<Topic> topics, String href) {
+    for (Topic topic : topics) {
+      if (href.equals(topic.getHref())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isEmpty(String value) {
+    return value == null || value.length() == 0;
+  }
+
   /**
    * Compute the file for a page name.
    *
@@ -170,19 +589,37 @@ public class GenerateEclipseTocUtility {
    * @param page
    * @return file
    */
-  private static File computeFile(File rootInFolder, String page) {
-    File file = new File(rootInFolder, page);
-    if (!file.exists() || !file.isFile()) {
-      throw new IllegalStateException("File '" + file.getAbsolutePath() + "' not found.");
+  static Path computeFile(Path rootInFolder, String page) {
+    Path file = findFile(rootInFolder, page);
+    if (file == null) {
+      throw new IllegalStateException("File '" + SourceFolder.getAbsoluteName(rootInFolder.resolve(page)) + "' not found.");
     }
     return file;
   }
 
-  private static String calculateFilePath(File rootFolder, File file) {
-    return file.getAbsolutePath().substring(rootFolder.getAbsolutePath().length() + 1).replaceAll("\\\\", "/");
+  /**
+   * @return the file for a page name, or null if it does not exist
+   */
+  static Path findFile(Path rootInFolder, String page) {
+    Path file = rootInFolder.resolve(page);
+    return java.nio.file.Files.isRegularFile(file) ? file : null;
+  }
+
+  /**
+   * @return path of the file relative to the root folder, with '/' as separator (whatever the file system)
+   */
+  static String calculateFilePath(Path rootFolder, Path file) {
+    StringBuilder sb = new StringBuilder();
+    for (Path segment : rootFolder.toAbsolutePath().relativize(file.toAbsolutePath())) {
+      if (sb.length() > 0) {
+        sb.append('/');
+      }
+      sb.append(segment.toString());
+    }
+    return sb.toString();
   }
 
-  private static String calculateFilePath(File rootFolder, File file, String helpPrefix) {
+  static String calculateFilePath(String filePath, String helpPrefix) {
     StringBuilder sb = new StringBuilder();
     if (helpPrefix != null && helpPrefix.length() > 0) {
       sb.append(helpPrefix);
@@ -190,77 +627,326 @@ public class GenerateEclipseTocUtility {
         sb.append("/");
       }
     }
-    sb.append(calculateFilePath(rootFolder, file));
+    sb.append(filePath);
     return sb.toString();
   }
 
-  static void computeOutlineNodes(Map<Integer, OutlineItemEx> nodeMap, Document doc, String filePath) {
-    Elements elements = doc.getAllElements();
-    for (Element element : elements) {
-      if (isHeaderTag(element)) {
-        int level = Integer.parseInt(element.nodeName().substring(1));
-        String title = sanitize(element.text());
-        OutlineItem parent = findParent(nodeMap, level);
-        if (parent == null) {
-          level = ROOT_LEVEL;
+  /**
+   * Create the executor used to read and parse the pages.
+   *
+   * @param threads
+   *          number of threads. With 1 (or less) the tasks are executed in the calling thread.
+   * @return executor (to be shut down by the caller)
+   */
+  public static ExecutorService createExecutor(int threads) {
+    if (threads > 1) {
+      return Executors.newFixedThreadPool(threads);
+    }
+    return MoreExecutors.sameThreadExecutor();
+  }
+
+  private static Callable<List<PageHeader>> createReadHeadersTask(final HeaderExtractor extractor, final OutlineCache cache, final SharedHeaderCache sharedCache, final DocArchive archive, final PagePrefetcher prefetcher, final Page page, final GenerationMetrics metrics, final PageCollector.Options collectorOptions) {
+    return new Callable<List<PageHeader>>() {
+      @Override
+      public List<PageHeader> call() throws Exception {
+        if (prefetcher != null) {
+          prefetcher.await(page);
         }
-        String id = findId(element);
-        if (id == null) {
-          if (parent == null) {
-            id = ROOT_ID;
-          }
-          else {
-            throw new IllegalStateException("id is not found for node " + element.nodeName() + " '" + element.text() + "'");
-          }
+        long startNanos = System.nanoTime();
+        List<PageHeader> headers = readHeaders(extractor, cache, sharedCache, archive, page, metrics, collectorOptions);
+        metrics.addPageTime(page.getFilePath(), System.nanoTime() - startNanos);
+        return headers;
+      }
+    };
+  }
+
+  /**
+   * @param archivedPages
+   *          file paths of the pages already added to the archive (synchronized)
+   * @return task resolving the page (without keeping it in the page model) and extracting its headers
+   */
+  private static Callable<Page> createReadPageTask(final HeaderExtractor extractor, final SharedHeaderCache sharedCache, final DocArchive archive, final Set<String> archivedPages, final PageModel pageModel, final String name, final GenerationMetrics metrics) {
+    return new Callable<Page>() {
+      @Override
+      public Page call() throws Exception {
+        Page page = pageModel.lookup(name);
+        long startNanos = System.nanoTime();
+        //a page listed several times is archived once
+        DocArchive pageArchive = archive != null && archivedPages.add(page.getFilePath()) ? archive : null;
+        page.setHeaders(readHeaders(extractor, null, sharedCache, pageArchive, page, metrics, PageCollector.Options.NONE));
+        metrics.addPageTime(page.getFilePath(), System.nanoTime() - startNanos);
+        return page;
+      }
+    };
+  }
+
+  /**
+   * Wait until the page is parsed.
+   *
+   * @return headers of the page
+   */
+  private static List<PageHeader> getHeaders(Page page, Map<Page, Future<List<PageHeader>>> futures) throws IOException {
+    if (page.getHeaders() == null) {
+      page.setHeaders(getResult(futures.get(page)));
+    }
+    return page.getHeaders();
+  }
+
+  static <T> T getResult(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while parsing the pages", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Error while parsing the pages", cause);
+    }
+  }
+
+  /**
+   * Extract the headers of a page, or take them from the cache if the page is unchanged.
+   *
+   * @param extractor
+   *          engine used to extract the headers
+   * @param cache
+   *          the cache (can be null)
+   * @param sharedCache
+   *          the cache of the JVM, used if the page is not in the cache (can be null)
+   * @param archive
+   *          receives the content of the page (can be null). The page is read even if it is in the cache.
+   * @param page
+   *          the page (if its attributes are known, the file is not checked before the cache lookup; if its content
+   *          was read in advance, the file is not read again)
+   * @param metrics
+   *          collects the metrics
+   * @param collectorOptions
+   *          the values needed in addition to the headers (see {@link Page#getLinks()} and {@link Page#getContexts()})
+   * @return headers in the order of the document
+   */
+  static List<PageHeader> readHeaders(HeaderExtractor extractor, OutlineCache cache, SharedHeaderCache sharedCache, DocArchive archive, Page page, GenerationMetrics metrics, PageCollector.Options collectorOptions) throws IOException {
+    Path inFile = page.getPath();
+    List<PageHeader> headers = null;
+    long length = 0;
+    long lastModified = 0;
+    ByteBuffer bytes = page.takeContent();
+    if (archive != null) {
+      if (bytes == null) {
+        Measure read = metrics.start(Stage.READ);
+        bytes = PageReader.readBytes(inFile, metrics);
+        metrics.end(read);
+      }
+      Measure archiveMeasure = metrics.start(Stage.ARCHIVE);
+      archive.add(page, bytes.duplicate());
+      metrics.end(archiveMeasure);
+    }
+    if (cache != null) {
+      Measure lookup = metrics.start(Stage.READ);
+      length = page.hasAttributes() ? page.getLength() : java.nio.file.Files.size(inFile);
+      lastModified = page.hasAttributes() ? page.getLastModified() : java.nio.file.Files.getLastModifiedTime(inFile).toMillis();
+      headers = cache.get(inFile, length, lastModified);
+      PageLinks.Links links = collectorOptions.isLinks() && headers != null ? cache.getLinks(inFile, length, lastModified) : null;
+      PageContexts.Declarations contexts = collectorOptions.isContexts() && headers != null ? cache.getContexts(inFile, length, lastModified) : null;
+      metrics.end(lookup);
+      if (headers != null && collectorOptions.isCollected(links, contexts)) {
+        page.setLinks(links);
+        page.setContexts(contexts);
+        metrics.addPageFromCache(headers.size());
+        return headers;
+      }
+    }
+    PageLinks.Links links;
+    PageContexts.Declarations contexts;
+    CharBuffer content = null;
+    if (bytes != null) {
+      //the page is already read (in advance or for the archive)
+      Measure decode = metrics.start(Stage.READ);
+      content = PageReader.decode(bytes);
+      metrics.end(decode);
+    }
+    if (sharedCache != null) {
+      SharedHeaderCache.Entry entry = content != null ? sharedCache.getHeaders(extractor, inFile, content, metrics, collectorOptions) : sharedCache.readHeaders(extractor, inFile, metrics, collectorOptions);
+      headers = entry.getHeaders();
+      links = entry.getLinks();
+      contexts = entry.getContexts();
+    }
+    else {
+      PageCollector collector = new PageCollector(collectorOptions);
+      if (content != null) {
+        headers = extractor.parseHeaders(content, metrics, collector);
+      }
+      else {
+        headers = extractor.readHeaders(inFile, metrics, collector);
+      }
+      links = collector.buildLinks();
+      contexts = collector.buildContexts();
+      metrics.addPageParsed(headers.size());
+    }
+    page.setLinks(links);
+    page.setContexts(contexts);
+    if (cache != null) {
+      cache.put(inFile, length, lastModified, headers, links, contexts);
+    }
+    return headers;
+  }
+
+  /**
+   * Add the headers of a page to the outline. The first header of the first page is the root, the parent of a header
+   * is the last node of the closest lower level (see {@link CompactOutline#findParent(int)}).
+   *
+   * @throws IllegalStateException
+   *           if a header (other than the root) has no id
+   */
+  static void computeOutlineNodes(CompactOutline outline, List<PageHeader> headers, String filePath) {
+    computeOutlineNodes(outline, headers, filePath, null);
+  }
+
+  /**
+   * Same as {@link #computeOutlineNodes(CompactOutline, List, String)}, the problems of the headers are reported.
+   *
+   * @param errors
+   *          receives the headers without id (they are not added to the outline) and the empty headers. If null, a
+   *          header without id is an {@link IllegalStateException}.
+   */
+  static void computeOutlineNodes(CompactOutline outline, List<PageHeader> headers, String filePath, ValidationReport errors) {
+    for (PageHeader header : headers) {
+      int level = header.getLevel();
+      String title = sanitize(header.getText());
+      int parent = outline.findParent(level);
+      if (parent == CompactOutline.NO_NODE) {
+        level = ROOT_LEVEL;
+      }
+      String id = header.getId();
+      if (id == null) {
+        if (parent == CompactOutline.NO_NODE) {
+          id = ROOT_ID;
+        }
+        else if (errors != null) {
+          errors.addError(filePath, "id is not found for node h" + header.getLevel() + " '" + header.getText() + "'");
+          continue;
+        }
+        else {
+          throw new IllegalStateException("id is not found for node h" + header.getLevel() + " '" + header.getText() + "'");
         }
-        OutlineItemEx node = new OutlineItemEx(parent, level, id, 0, 0, title);
-        node.setFilePath(filePath);
-        putNode(nodeMap, node, level);
       }
+      if (errors != null && title.trim().length() == 0) {
+        errors.addError(filePath, "empty header h" + header.getLevel() + (header.getId() != null ? " (id '" + header.getId() + "')" : ""));
+      }
+      outline.add(parent, level, id, title, filePath);
     }
   }
 
-  private static boolean isHeaderTag(Element element) {
-    return element.nodeName().matches("h[1-6]");
+  /**
+   * Extract the headers (h1, h2, h3, h4, h5 or h6) of a document.
+   *
+   * @param doc
+   *          the html content as JSoup document
+   * @return headers in the order of the document
+   */
+  static List<PageHeader> computeHeaders(Document doc) {
+    List<PageHeader> headers = new ArrayList<PageHeader>();
+    Elements elements = doc.getAllElements();
+    for (Element element : elements) {
+      int level = headerLevel(element);
+      if (level > 0) {
+        headers.add(new PageHeader(level, findId(element), element.text()));
+      }
+    }
+    return headers;
   }
 
-  private static String sanitize(String text) {
-    String result = text;
-    result = result.replaceAll(CHAR_8220, CHAR_QUOTE);
-    result = result.replaceAll(CHAR_8221, CHAR_QUOTE);
-    result = result.replaceAll(CHAR_8222, CHAR_QUOTE);
-    return result;
+  /**
+   * Collect the anchors and the links of a document (see {@link PageLinks}).
+   *
+   * @param doc
+   *          the html content as JSoup document
+   * @param links
+   *          receives the anchors and the links
+   */
+  static void computeLinks(Document doc, PageLinks links) {
+    for (Element element : doc.getAllElements()) {
+      links.addId(element.id());
+      String name = element.nodeName();
+      if ("a".equals(name)) {
+        links.addName(element.attr("name"));
+      }
+      if (("a".equals(name) || "area".equals(name)) && element.hasAttr("href")) {
+        links.addHref(element.attr("href"));
+      }
+    }
   }
 
   /**
-   * Put the node in
+   * Collect the help contexts declared in a document (see {@link PageContexts}).
    *
-   * @param nodeMap
-   *          the map containing the last known node for each level
-   * @param node
-   *          the node that needs to be added
-   * @param level
-   *          the level (1 for h1, 2 for h2 ...)
+   * @param doc
+   *          the html content as JSoup document
+   * @param contexts
+   *          receives the help contexts
    */
-  static void putNode(Map<Integer, OutlineItemEx> nodeMap, OutlineItemEx node, int level) {
-    nodeMap.put(level, node);
+  static void computeHelpContexts(Document doc, PageContexts contexts) {
+    for (Element element : doc.getAllElements()) {
+      String id = element.attr(PageContexts.CONTEXT_ATTRIBUTE);
+      if (id.length() == 0 && "meta".equals(element.nodeName()) && PageContexts.META_NAME.equalsIgnoreCase(element.attr("name").trim())) {
+        id = element.attr("content");
+      }
+      contexts.add(id, element.attr(PageContexts.TITLE_ATTRIBUTE), element.attr(PageContexts.DESCRIPTION_ATTRIBUTE), element.id());
+    }
   }
 
   /**
-   * Find the parent node given a specific level.
+   * Header level of an element, computed without regular expression or allocation (this is called for each element
+   * of each page).
    *
-   * @param nodeMap
-   *          the map containing the last known node for each level
-   * @param level
-   *          the level of the current node
-   * @return parentNode
+   * @param element
+   *          the element
+   * @return the level (1 for h1, 2 for h2 ...) or 0 if the element is not a header tag
    */
-  static OutlineItem findParent(Map<Integer, OutlineItemEx> nodeMap, int level) {
-    int i = level - 1;
-    while (nodeMap.get(i) == null && i > 0) {
-      i = i - 1;
+  static int headerLevel(Element element) {
+    String name = element.nodeName();
+    if (name.length() == 2 && name.charAt(0) == 'h') {
+      char c = name.charAt(1);
+      if (c >= '1' && c <= '6') {
+        return c - '0';
+      }
     }
-    return nodeMap.get(i);
+    return 0;
+  }
+
+  /**
+   * Replace the typographic quotes (8220, 8221 and 8222) with '"'. The text is returned as is (no allocation) when
+   * it does not contain any of these characters.
+   */
+  static String sanitize(String text) {
+    int i = 0;
+    while (i < text.length() && !isTypographicQuote(text.charAt(i))) {
+      i++;
+    }
+    if (i == text.length()) {
+      return text;
+    }
+    char[] chars = text.toCharArray();
+    for (; i < chars.length; i++) {
+      if (isTypographicQuote(chars[i])) {
+        chars[i] = CHAR_QUOTE;
+      }
+    }
+    return new String(chars);
+  }
+
+  private static boolean isTypographicQuote(char c) {
+    return c >= CHAR_8220 && c <= CHAR_8222;
   }
 
   /**
@@ -303,17 +989,28 @@ public class GenerateEclipseTocUtility {
    * Find the first header (h1, h2, h3, h4, h5 or h6) and returns the text
    * content .
    *
-   * @param doc
-   *          the html content as JSoup document
+   * @param headers
+   *          the headers of the page
    * @return title or null if not found
    */
-  private static String findFirstHeader(Document doc) {
-    Elements elements = doc.getAllElements();
-    for (Element element : elements) {
-      if (isHeaderTag(element)) {
-        return sanitize(element.text());
+  private static String findFirstHeader(List<PageHeader> headers) {
+    if (headers.isEmpty()) {
+      return null;
+    }
+    return sanitize(headers.get(0).getText());
+  }
+
+  /**
+   * @return the text of the header with this id, or of the first header if there is no such header
+   */
+  static String findHeader(List<PageHeader> headers, String id) {
+    if (id != null) {
+      for (PageHeader header : headers) {
+        if (id.equals(header.getId())) {
+          return sanitize(header.getText());
+        }
       }
     }
-    return null;
+    return findFirstHeader(headers);
   }
 }
@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Options of {@link GenerateEclipseTocUtility#generate}. The default values correspond to the original behavior.
+ */
+public class GenerateOptions {
+
+  private int threads = 1;
+  private int ioThreads = 0;
+  private int pageWindow = 0;
+  private HeaderExtractor headerExtractor = HeaderExtractor.JSOUP;
+  private File cacheFile;
+  private OutlineCache outlineCache;
+  private SharedHeaderCache sharedHeaderCache;
+  private List<DiscoveredPage> discoveredPages;
+  private int tocSplitLevel = 0;
+  private File docZipFile;
+  private boolean validateLinks = false;
+  private boolean failOnValidationError = false;
+  private ValidationReport validationReport;
+  private boolean collectAllErrors = false;
+  private boolean harvestHelpContexts = false;
+  private ExecutorService executor;
+  private GenerationMetrics metrics;
+
+  /**
+   * @return number of threads used to read and parse the pages. With 1 (or less) the pages are parsed sequentially in
+   *         the calling thread.
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * @return if greater than 0, the files are checked and read concurrently on an I/O executor, ahead of the parsing
+   *         (see {@link PagePrefetcher}): virtual threads if the JVM supports them, otherwise a pool of
+   *         <code>ioThreads</code> threads. At most <code>ioThreads</code> pages are read ahead of the parsing.
+   */
+  public int getIoThreads() {
+    return ioThreads;
+  }
+
+  public void setIoThreads(int ioThreads) {
+    this.ioThreads = ioThreads;
+  }
+
+  /**
+   * @return if greater than 0, the generation runs with a bounded memory (see {@link StreamingTocWriter}): at most
+   *         <code>pageWindow</code> pages are read and parsed ahead of the toc, the toc file is written while the pages
+   *         are parsed and the headers of the pages are not kept. The cache, the split of the toc and the I/O threads are not supported in this mode.
+   */
+  public int getPageWindow() {
+    return pageWindow;
+  }
+
+  public void setPageWindow(int pageWindow) {
+    this.pageWindow = pageWindow;
+  }
+
+  public HeaderExtractor getHeaderExtractor() {
+    return headerExtractor;
+  }
+
+  public void setHeaderExtractor(HeaderExtractor headerExtractor) {
+    this.headerExtractor = headerExtractor;
+  }
+
+  /**
+   * @return executor shared by several generations (see {@link GenerateEclipseTocUtility#createExecutor(int)}), or
+   *         null if each generation creates its own executor with {@link #getThreads()} threads. A shared executor
+   *         is not shut down by the generation.
+   */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @return file used to cache the headers of each page between two generations (see {@link OutlineCache}), or null
+   *         if no cache is used.
+   */
+  public File getCacheFile() {
+    return cacheFile;
+  }
+
+  public void setCacheFile(File cacheFile) {
+    this.cacheFile = cacheFile;
+  }
+
+  /**
+   * @return cache used instead of the one loaded from {@link #getCacheFile()}, or null. This is used to share the
+   *         headers between several generations in the same JVM. A provided cache is not saved by the generation.
+   */
+  public OutlineCache getOutlineCache() {
+    return outlineCache;
+  }
+
+  public void setOutlineCache(OutlineCache outlineCache) {
+    this.outlineCache = outlineCache;
+  }
+
+  /**
+   * @return cache of the JVM used for the pages that are not in the {@link #getOutlineCache()} (or in the cache
+   *         file), or null.
+   */
+  public SharedHeaderCache getSharedHeaderCache() {
+    return sharedHeaderCache;
+  }
+
+  public void setSharedHeaderCache(SharedHeaderCache sharedHeaderCache) {
+    this.sharedHeaderCache = sharedHeaderCache;
+  }
+
+  /**
+   * @return pages found by {@link PageDiscovery}, or null. The attributes read during the discovery are used instead of
+   *         checking the files again.
+   */
+  public List<DiscoveredPage> getDiscoveredPages() {
+    return discoveredPages;
+  }
+
+  public void setDiscoveredPages(List<DiscoveredPage> discoveredPages) {
+    this.discoveredPages = discoveredPages;
+  }
+
+  /**
+   * @return depth of the topics whose children are written in sub toc files (1 for the topics directly under the
+   *         book), or 0 to write a single toc file (see {@link EclipseTocWriter#writeSplit}).
+   */
+  public int getTocSplitLevel() {
+    return tocSplitLevel;
+  }
+
+  public void setTocSplitLevel(int tocSplitLevel) {
+    this.tocSplitLevel = tocSplitLevel;
+  }
+
+  /**
+   * @return archive receiving the pages while they are read (see {@link DocArchive}), or null if no archive is
+   *         written.
+   */
+  public File getDocZipFile() {
+    return docZipFile;
+  }
+
+  public void setDocZipFile(File docZipFile) {
+    this.docZipFile = docZipFile;
+  }
+
+  /**
+   * @return if true, the anchors and the links of the pages are collected while the pages are parsed and the links
+   *         are validated (see {@link LinkValidator}).
+   */
+  public boolean isValidateLinks() {
+    return validateLinks;
+  }
+
+  public void setValidateLinks(boolean validateLinks) {
+    this.validateLinks = validateLinks;
+  }
+
+  /**
+   * @return if true, the generation fails (before the toc file is written) when the validation finds a problem. The
+   *         message of the exception contains all the problems.
+   */
+  public boolean isFailOnValidationError() {
+    return failOnValidationError;
+  }
+
+  public void setFailOnValidationError(boolean failOnValidationError) {
+    this.failOnValidationError = failOnValidationError;
+  }
+
+  /**
+   * @return if true, the missing files, the headers without id and the empty headers of all the pages are collected
+   *         in the validation report before the generation fails, instead of failing on the first one.
+   */
+  public boolean isCollectAllErrors() {
+    return collectAllErrors;
+  }
+
+  public void setCollectAllErrors(boolean collectAllErrors) {
+    this.collectAllErrors = collectAllErrors;
+  }
+
+  /**
+   * @return if true, the help contexts declared in the pages (see {@link PageContexts}) are collected while the pages
+   *         are parsed and written to the contexts file with the {@link com.bsiag.geneclipsetoc.maven.HelpContext}s.
+   */
+  public boolean isHarvestHelpContexts() {
+    return harvestHelpContexts;
+  }
+
+  public void setHarvestHelpContexts(boolean harvestHelpContexts) {
+    this.harvestHelpContexts = harvestHelpContexts;
+  }
+
+  /**
+   * @return receives the problems found by the validation, or null if they are only needed in case of failure.
+   */
+  public ValidationReport getValidationReport() {
+    return validationReport;
+  }
+
+  public void setValidationReport(ValidationReport validationReport) {
+    this.validationReport = validationReport;
+  }
+
+  /**
+   * @return collects the metrics of the generation, or null if they are not needed.
+   */
+  public GenerationMetrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(GenerationMetrics metrics) {
+    this.metrics = metrics;
+  }
+}
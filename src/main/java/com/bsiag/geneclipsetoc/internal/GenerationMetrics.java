@@ -0,0 +1,447 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Metrics collected during {@link GenerateEclipseTocUtility#generate}: time and allocated bytes per stage, bytes read,
+ * pages parsed, headers found and the slowest pages. This class is thread-safe, the pages can be parsed in parallel.
+ * <p>
+ * Two times are measured for each stage: the wall time (elapsed time during which at least one thread is in the
+ * stage) and the thread time (sum of the time spent in the stage by each thread, greater than the wall time when the
+ * pages are parsed in parallel). Allocated bytes are only available on JVMs supporting
+ * <code>com.sun.management.ThreadMXBean</code>.
+ * <p>
+ * When the metrics are not needed, {@link #DISABLED} does not measure anything (no clock or allocation lookup).
+ */
+public class GenerationMetrics {
+
+  public enum Stage {
+    /**
+     * Resolution of the page names to files.
+     */
+    RESOLVE,
+    /**
+     * Read of the pages (including the cache lookup).
+     */
+    READ,
+    /**
+     * Parse of the pages and extraction of the headers.
+     */
+    PARSE,
+    /**
+     * Build of the outline tree.
+     */
+    OUTLINE,
+    /**
+     * Rendering of the toc file (the file is streamed, this includes the write).
+     */
+    TOC,
+    /**
+     * Computation of the help contexts.
+     */
+    CONTEXTS,
+    /**
+     * Write of the contexts file and of the cache file.
+     */
+    WRITE,
+    /**
+     * Write of the pages in the archive (see {@link DocArchive}).
+     */
+    ARCHIVE,
+    /**
+     * Validation of the pages (see {@link LinkValidator}).
+     */
+    VALIDATE
+  }
+
+  public static final int DEFAULT_SLOWEST_PAGES_COUNT = 10;
+
+  /**
+   * Metrics that are not collected: the methods do nothing and the getters return 0.
+   */
+  public static final GenerationMetrics DISABLED = new GenerationMetrics(0, false);
+
+  private static final Measure NO_MEASURE = new Measure(null, 0L, -1L);
+
+  private static final Comparator<PageTime> PAGE_TIME_COMPARATOR = new Comparator<PageTime>() {
+    @Override
+    public int compare(PageTime o1, PageTime o2) {
+      return o1.nanos < o2.nanos ? -1 : (o1.nanos == o2.nanos ? 0 : 1);
+    }
+  };
+
+  private final Map<Stage, AtomicLong> stageNanos = new EnumMap<Stage, AtomicLong>(Stage.class);
+  private final Map<Stage, StageClock> stageClocks = new EnumMap<Stage, StageClock>(Stage.class);
+  private final Map<Stage, AtomicLong> stageAllocatedBytes = new EnumMap<Stage, AtomicLong>(Stage.class);
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong pagesParsed = new AtomicLong();
+  private final AtomicLong pagesFromCache = new AtomicLong();
+  private final AtomicLong headersFound = new AtomicLong();
+  private final boolean enabled;
+  private final int slowestPagesCount;
+  private final PriorityQueue<PageTime> slowestPages;
+  private long totalNanos;
+
+  public GenerationMetrics() {
+    this(DEFAULT_SLOWEST_PAGES_COUNT);
+  }
+
+  /**
+   * @param slowestPagesCount
+   *          number of slowest pages that are tracked
+   */
+  public GenerationMetrics(int slowestPagesCount) {
+    this(slowestPagesCount, true);
+  }
+
+  private GenerationMetrics(int slowestPagesCount, boolean enabled) {
+    this.enabled = enabled;
+    this.slowestPagesCount = Math.max(0, slowestPagesCount);
+    this.slowestPages = new PriorityQueue<PageTime>(Math.max(1, this.slowestPagesCount), PAGE_TIME_COMPARATOR);
+    for (Stage stage : Stage.values()) {
+      stageNanos.put(stage, new AtomicLong());
+      stageClocks.put(stage, new StageClock());
+      stageAllocatedBytes.put(stage, new AtomicLong());
+    }
+  }
+
+  /**
+   * @return false for {@link #DISABLED}
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Start the measure of a stage in the current thread.
+   *
+   * @return the measure, to be ended with {@link #end(Measure)}
+   */
+  public Measure start(Stage stage) {
+    if (!enabled) {
+      return NO_MEASURE;
+    }
+    long startNanos = System.nanoTime();
+    stageClocks.get(stage).enter(startNanos);
+    return new Measure(stage, startNanos, Allocation.currentThreadAllocatedBytes());
+  }
+
+  /**
+   * End the measure of a stage (in the thread where it was started).
+   *
+   * @return the duration in nanoseconds (0 if the metrics are disabled)
+   */
+  public long end(Measure measure) {
+    if (measure == NO_MEASURE) {
+      return 0L;
+    }
+    long endNanos = System.nanoTime();
+    long nanos = endNanos - measure.startNanos;
+    stageNanos.get(measure.stage).addAndGet(nanos);
+    stageClocks.get(measure.stage).exit(endNanos);
+    if (measure.startAllocatedBytes >= 0) {
+      long allocated = Allocation.currentThreadAllocatedBytes();
+      if (allocated >= 0) {
+        stageAllocatedBytes.get(measure.stage).addAndGet(allocated - measure.startAllocatedBytes);
+      }
+    }
+    return nanos;
+  }
+
+  public void addBytesRead(long bytes) {
+    if (enabled) {
+      bytesRead.addAndGet(bytes);
+    }
+  }
+
+  public void addPageParsed(int headers) {
+    if (enabled) {
+      pagesParsed.incrementAndGet();
+      headersFound.addAndGet(headers);
+    }
+  }
+
+  public void addPageFromCache(int headers) {
+    if (enabled) {
+      pagesFromCache.incrementAndGet();
+      headersFound.addAndGet(headers);
+    }
+  }
+
+  /**
+   * Record the time needed to read and parse a page.
+   */
+  public void addPageTime(String filePath, long nanos) {
+    if (slowestPagesCount == 0) {
+      return;
+    }
+    synchronized (slowestPages) {
+      if (slowestPages.size() < slowestPagesCount) {
+        slowestPages.add(new PageTime(filePath, nanos));
+      }
+      else if (slowestPages.peek().nanos < nanos) {
+        slowestPages.poll();
+        slowestPages.add(new PageTime(filePath, nanos));
+      }
+    }
+  }
+
+  public void setTotalNanos(long totalNanos) {
+    if (enabled) {
+      this.totalNanos = totalNanos;
+    }
+  }
+
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /**
+   * @return elapsed time during which at least one thread was in the stage
+   */
+  public long getStageWallNanos(Stage stage) {
+    return stageClocks.get(stage).getWallNanos();
+  }
+
+  /**
+   * @return sum of the time spent in the stage by each thread
+   */
+  public long getStageThreadNanos(Stage stage) {
+    return stageNanos.get(stage).get();
+  }
+
+  /**
+   * @return allocated bytes or 0 if not available
+   */
+  public long getStageAllocatedBytes(Stage stage) {
+    return stageAllocatedBytes.get(stage).get();
+  }
+
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  public long getPagesParsed() {
+    return pagesParsed.get();
+  }
+
+  public long getPagesFromCache() {
+    return pagesFromCache.get();
+  }
+
+  public long getHeadersFound() {
+    return headersFound.get();
+  }
+
+  /**
+   * @return the slowest pages, the slowest first
+   */
+  public List<PageTime> getSlowestPages() {
+    List<PageTime> result;
+    synchronized (slowestPages) {
+      result = new ArrayList<PageTime>(slowestPages);
+    }
+    Collections.sort(result, Collections.reverseOrder(PAGE_TIME_COMPARATOR));
+    return result;
+  }
+
+  /**
+   * @return human readable summary, one line per entry
+   */
+  public List<String> toSummary() {
+    List<String> lines = new ArrayList<String>();
+    lines.add(String.format(Locale.ENGLISH, "Generation time: %d ms, pages parsed: %d, pages from cache: %d, headers: %d, bytes read: %d",
+        toMillis(totalNanos), getPagesParsed(), getPagesFromCache(), getHeadersFound(), getBytesRead()));
+    for (Stage stage : Stage.values()) {
+      lines.add(String.format(Locale.ENGLISH, "  %-9s %8d ms wall %8d ms thread time %12d bytes allocated", stage.name().toLowerCase(Locale.ENGLISH), toMillis(getStageWallNanos(stage)), toMillis(getStageThreadNanos(stage)), getStageAllocatedBytes(stage)));
+    }
+    List<PageTime> pages = getSlowestPages();
+    if (!pages.isEmpty()) {
+      lines.add("Slowest pages:");
+      for (PageTime page : pages) {
+        lines.add(String.format(Locale.ENGLISH, "  %8d ms %s", toMillis(page.getNanos()), page.getFilePath()));
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * @return the metrics as JSON document
+   */
+  public String toJson() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\n");
+    sb.append("  \"totalMillis\": ").append(toMillis(totalNanos)).append(",\n");
+    sb.append("  \"pagesParsed\": ").append(getPagesParsed()).append(",\n");
+    sb.append("  \"pagesFromCache\": ").append(getPagesFromCache()).append(",\n");
+    sb.append("  \"headersFound\": ").append(getHeadersFound()).append(",\n");
+    sb.append("  \"bytesRead\": ").append(getBytesRead()).append(",\n");
+    sb.append("  \"stages\": {");
+    boolean first = true;
+    for (Stage stage : Stage.values()) {
+      sb.append(first ? "\n" : ",\n");
+      sb.append("    \"").append(stage.name().toLowerCase(Locale.ENGLISH)).append("\": {");
+      sb.append("\"wallMillis\": ").append(toMillis(getStageWallNanos(stage))).append(", ");
+      sb.append("\"threadMillis\": ").append(toMillis(getStageThreadNanos(stage))).append(", ");
+      sb.append("\"allocatedBytes\": ").append(getStageAllocatedBytes(stage)).append("}");
+      first = false;
+    }
+    sb.append("\n  },\n");
+    sb.append("  \"slowestPages\": [");
+    first = true;
+    for (PageTime page : getSlowestPages()) {
+      sb.append(first ? "\n" : ",\n");
+      sb.append("    {\"page\": ");
+      appendJsonString(sb, page.getFilePath());
+      sb.append(", \"millis\": ").append(toMillis(page.getNanos())).append("}");
+      first = false;
+    }
+    sb.append(first ? "]\n" : "\n  ]\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  public void writeJson(File reportFile) throws IOException {
+    Files.createParentDirs(reportFile);
+    Files.write(toJson(), reportFile, Charsets.UTF_8);
+  }
+
+  private static long toMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  private static void appendJsonString(StringBuilder sb, String value) {
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      }
+      else if (c < 0x20) {
+        sb.append(String.format(Locale.ENGLISH, "\\u%04x", (int) c));
+      }
+      else {
+        sb.append(c);
+      }
+    }
+    sb.append('"');
+  }
+
+  /**
+   * A started measure (see {@link GenerationMetrics#start(Stage)}).
+   */
+  public static class Measure {
+    private final Stage stage;
+    private final long startNanos;
+    private final long startAllocatedBytes;
+
+    Measure(Stage stage, long startNanos, long startAllocatedBytes) {
+      this.stage = stage;
+      this.startNanos = startNanos;
+      this.startAllocatedBytes = startAllocatedBytes;
+    }
+  }
+
+  /**
+   * Wall time of a stage: the clock runs as long as at least one thread is in the stage.
+   */
+  private static class StageClock {
+    private int activeMeasures;
+    private long activeSinceNanos;
+    private long wallNanos;
+
+    synchronized void enter(long nanos) {
+      if (activeMeasures == 0) {
+        activeSinceNanos = nanos;
+      }
+      activeMeasures++;
+    }
+
+    synchronized void exit(long nanos) {
+      activeMeasures--;
+      if (activeMeasures == 0) {
+        wallNanos += nanos - activeSinceNanos;
+      }
+    }
+
+    synchronized long getWallNanos() {
+      return wallNanos;
+    }
+  }
+
+  /**
+   * Time needed to read and parse a page.
+   */
+  public static class PageTime {
+    private final String filePath;
+    private final long nanos;
+
+    PageTime(String filePath, long nanos) {
+      this.filePath = filePath;
+      this.nanos = nanos;
+    }
+
+    public String getFilePath() {
+      return filePath;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+  }
+
+  /**
+   * Access to <code>com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)</code> when the JVM supports it.
+   */
+  private static final class Allocation {
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = findThreadMXBean();
+
+    private Allocation() {
+    }
+
+    private static com.sun.management.ThreadMXBean findThreadMXBean() {
+      try {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+          return (com.sun.management.ThreadMXBean) bean;
+        }
+      }
+      catch (LinkageError e) {
+        //not supported
+      }
+      return null;
+    }
+
+    static long currentThreadAllocatedBytes() {
+      if (THREAD_MX_BEAN == null) {
+        return -1;
+      }
+      return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Measure;
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Stage;
+
+/**
+ * Engine used to extract the headers of a page.
+ */
+public enum HeaderExtractor {
+
+  /**
+   * The page is read in a String (see {@link PageReader}) and parsed with JSoup (full DOM).
+   */
+  JSOUP {
+    @Override
+    public List<PageHeader> readHeaders(Path inFile, GenerationMetrics metrics, PageCollector collector) throws IOException {
+      Measure read = metrics.start(Stage.READ);
+      //JSoup needs a String: the decode buffer of the thread is copied once.
+      String html = PageReader.read(inFile, metrics).toString();
+      metrics.end(read);
+      return parseHeaders(html, metrics, collector);
+    }
+
+    @Override
+    public List<PageHeader> parseHeaders(CharSequence html, GenerationMetrics metrics, PageCollector collector) {
+      Measure parse = metrics.start(Stage.PARSE);
+      Document doc = Jsoup.parse(html.toString());
+      List<PageHeader> headers = GenerateEclipseTocUtility.computeHeaders(doc);
+      if (collector.getLinks() != null) {
+        GenerateEclipseTocUtility.computeLinks(doc, collector.getLinks());
+      }
+      if (collector.getContexts() != null) {
+        GenerateEclipseTocUtility.computeHelpContexts(doc, collector.getContexts());
+      }
+      metrics.end(parse);
+      return headers;
+    }
+  },
+
+  /**
+   * The page is scanned as a stream with {@link StreamingHeaderScanner}, only the content of the headers is kept.
+   */
+  STREAMING {
+    @Override
+    public List<PageHeader> readHeaders(Path inFile, GenerationMetrics metrics, PageCollector collector) throws IOException {
+      Measure read = metrics.start(Stage.READ);
+      Reader reader = PageReader.openReader(inFile, metrics);
+      metrics.end(read);
+
+      //the page is decoded while it is scanned: the decoding is measured as parse.
+      Measure parse = metrics.start(Stage.PARSE);
+      try {
+        return StreamingHeaderScanner.scan(new BufferedReader(reader), collector);
+      }
+      finally {
+        reader.close();
+        metrics.end(parse);
+      }
+    }
+
+    @Override
+    public List<PageHeader> parseHeaders(CharSequence html, GenerationMetrics metrics, PageCollector collector) {
+      Measure parse = metrics.start(Stage.PARSE);
+      try {
+        return StreamingHeaderScanner.scan(new CharSequenceReader(html), collector);
+      }
+      catch (IOException e) {
+        //not expected, the content is in memory
+        throw new IllegalStateException("Error while scanning the page content", e);
+      }
+      finally {
+        metrics.end(parse);
+      }
+    }
+  };
+
+  /**
+   * Read a page, extract its headers and collect the values needed by the generation (links, help contexts).
+   *
+   * @param inFile
+   *          the html file (in a folder or in an archive)
+   * @param metrics
+   *          collects the read and parse metrics
+   * @param collector
+   *          receives the values collected from the page
+   * @return headers in the order of the document
+   */
+  public abstract List<PageHeader> readHeaders(Path inFile, GenerationMetrics metrics, PageCollector collector) throws IOException;
+
+  /**
+   * Extract the headers of a page that is already read (see {@link SharedHeaderCache}) and collect the values needed
+   * by the generation.
+   *
+   * @param html
+   *          the content of the page
+   * @param metrics
+   *          collects the parse metrics
+   * @param collector
+   *          receives the values collected from the page
+   * @return headers in the order of the document
+   */
+  public abstract List<PageHeader> parseHeaders(CharSequence html, GenerationMetrics metrics, PageCollector collector);
+
+  /**
+   * Reader on a content in memory (without copy).
+   */
+  private static class CharSequenceReader extends Reader {
+    private final CharSequence content;
+    private int position;
+
+    CharSequenceReader(CharSequence content) {
+      this.content = content;
+    }
+
+    @Override
+    public int read() {
+      return position < content.length() ? content.charAt(position++) : -1;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      if (position >= content.length()) {
+        return -1;
+      }
+      int n = Math.min(len, content.length() - position);
+      for (int i = 0; i < n; i++) {
+        cbuf[off + i] = content.charAt(position++);
+      }
+      return n;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
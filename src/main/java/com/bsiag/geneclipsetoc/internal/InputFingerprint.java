@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bsiag.geneclipsetoc.maven.HelpContext;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Fingerprint of the inputs of {@link GenerateEclipseTocUtility#generate}: the version of the plugin, the configuration
+ * and the length and modification time of each page. If the fingerprint is the same as the one of the previous
+ * generation, the output files are up-to-date.
+ * <p>
+ * The fingerprint file contains the fingerprint on its first line, followed by a description of the outputs
+ * (<code>name=value</code> lines) used to check that they are still present.
+ * <p>
+ * As in the {@link OutlineCache}, a page modified less than {@link OutlineCache#MTIME_RESOLUTION} before the
+ * fingerprint was computed is not trusted: it could have been modified again after it was read, with the same length
+ * and the same modification time.
+ */
+public class InputFingerprint {
+
+  private static final int FORMAT_VERSION = 7;
+  private static final String COMPUTED_AT = "computedAt";
+  private static final String SUB_TOC_FILES = "subTocFiles";
+  private static final String LINK_TARGET = "linkTarget";
+  private static final String EXISTING = "1:";
+  private static final String MISSING = "0:";
+
+  private InputFingerprint() {
+  }
+
+  /**
+   * Compute the fingerprint for a generation.
+   *
+   * @return the fingerprint (hexadecimal string)
+   */
+  public static String compute(File rootInFolder, List<String> pages, String helpPrefix, File outTocFile, File outContextsFile, List<HelpContext> inContexts, GenerateOptions options) {
+    return compute(rootInFolder.toPath(), pages, helpPrefix, outTocFile, outContextsFile, inContexts, options);
+  }
+
+  /**
+   * Compute the fingerprint for a generation.
+   *
+   * @param rootInFolder
+   *          the root folder (in a folder or in an archive, see {@link SourceFolder})
+   * @return the fingerprint (hexadecimal string)
+   */
+  public static String compute(Path rootInFolder, List<String> pages, String helpPrefix, File outTocFile, File outContextsFile, List<HelpContext> inContexts, GenerateOptions options) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+    putString(hasher, OutlineCache.PLUGIN_VERSION);
+    putString(hasher, SourceFolder.getAbsoluteName(rootInFolder));
+    putString(hasher, helpPrefix);
+    putString(hasher, outTocFile.getAbsolutePath());
+    putString(hasher, outContextsFile == null ? null : outContextsFile.getAbsolutePath());
+    putString(hasher, options.getHeaderExtractor().name());
+    hasher.putInt(options.getTocSplitLevel());
+    putString(hasher, options.getDocZipFile() == null ? null : options.getDocZipFile().getAbsolutePath());
+    hasher.putBoolean(options.isValidateLinks());
+    hasher.putBoolean(options.isFailOnValidationError());
+    hasher.putBoolean(options.isHarvestHelpContexts());
+    Map<String, DiscoveredPage> discoveredPages = toMap(options.getDiscoveredPages());
+    hasher.putInt(pages.size());
+    for (String p : pages) {
+      putString(hasher, p);
+      putFile(hasher, rootInFolder, p, discoveredPages);
+    }
+    if (inContexts == null) {
+      hasher.putInt(-1);
+    }
+    else {
+      hasher.putInt(inContexts.size());
+      for (HelpContext hc : inContexts) {
+        putString(hasher, hc.getId());
+        putString(hasher, hc.getTitle());
+        putString(hasher, hc.getDescription());
+        List<String> topicPages = hc.getTopicPages();
+        if (topicPages == null) {
+          hasher.putInt(-1);
+        }
+        else {
+          hasher.putInt(topicPages.size());
+          for (String p : topicPages) {
+            putString(hasher, p);
+            putFile(hasher, rootInFolder, p, discoveredPages);
+          }
+        }
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Check if the output files of the previous generation are up-to-date: the fingerprint is unchanged, the output files
+   * (toc file and its sub toc files, contexts file and archive) are present, no page was modified just
+   * before the fingerprint was computed and the targets of the checked links are unchanged.
+   *
+   * @param fingerprintFile
+   *          the file containing the fingerprint of the previous generation
+   * @param fingerprint
+   *          the fingerprint of the inputs (see {@link #compute})
+   * @return true if the generation can be skipped
+   */
+  public static boolean isUpToDate(File fingerprintFile, String fingerprint, Path rootInFolder, List<String> pages, File outTocFile, File outContextsFile, List<HelpContext> inContexts, GenerateOptions options) throws IOException {
+    return fingerprint.equals(read(fingerprintFile))
+        && isOutputPresent(fingerprintFile, outTocFile, outContextsFile, inContexts, options)
+        && !isModifiedBeforeComputation(fingerprintFile, rootInFolder, pages, inContexts, options)
+        && isLinkTargetsUnchanged(fingerprintFile, rootInFolder);
+  }
+
+  private static boolean isModifiedBeforeComputation(File fingerprintFile, Path rootInFolder, List<String> pages, List<HelpContext> inContexts, GenerateOptions options) throws IOException {
+    String value = readProperty(fingerprintFile, COMPUTED_AT);
+    long computedAt;
+    try {
+      computedAt = value == null ? Long.MAX_VALUE : Long.parseLong(value);
+    }
+    catch (NumberFormatException e) {
+      computedAt = Long.MAX_VALUE;
+    }
+    Map<String, DiscoveredPage> discoveredPages = toMap(options.getDiscoveredPages());
+    long limit = computedAt - OutlineCache.MTIME_RESOLUTION;
+    for (String p : pages) {
+      if (lastModified(rootInFolder, p, discoveredPages) >= limit) {
+        return true;
+      }
+    }
+    if (inContexts != null) {
+      for (HelpContext hc : inContexts) {
+        if (hc.getTopicPages() != null) {
+          for (String p : hc.getTopicPages()) {
+            if (lastModified(rootInFolder, p, discoveredPages) >= limit) {
+              return true;
+            }
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean isOutputPresent(File fingerprintFile, File outTocFile, File outContextsFile, List<HelpContext> inContexts, GenerateOptions options) throws IOException {
+    if (!outTocFile.isFile()) {
+      return false;
+    }
+    int subTocFiles = readSubTocFiles(fingerprintFile);
+    if (subTocFiles < 0 || !EclipseTocWriter.hasSubTocFiles(outTocFile, subTocFiles)) {
+      return false;
+    }
+    if (options.getDocZipFile() != null && !options.getDocZipFile().isFile()) {
+      return false;
+    }
+    if ((inContexts == null || inContexts.isEmpty()) && !options.isHarvestHelpContexts()) {
+      return true;
+    }
+    return outContextsFile != null && outContextsFile.isFile();
+  }
+
+  /**
+   * @param fingerprintFile
+   *          the file containing the fingerprint of the previous generation
+   * @return the stored fingerprint or null if the file does not exist.
+   */
+  public static String read(File fingerprintFile) throws IOException {
+    if (!fingerprintFile.isFile()) {
+      return null;
+    }
+    List<String> lines = Files.readLines(fingerprintFile, Charsets.UTF_8);
+    return lines.isEmpty() ? null : lines.get(0).trim();
+  }
+
+  /**
+   * @param fingerprintFile
+   *          the file containing the fingerprint of the previous generation
+   * @return the number of sub toc files written by the previous generation (see
+   *         {@link EclipseTocWriter#writeSplit}), or -1 if it is unknown
+   */
+  public static int readSubTocFiles(File fingerprintFile) throws IOException {
+    String value = readProperty(fingerprintFile, SUB_TOC_FILES);
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(value);
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * The targets of the links that are not pages of the generation are not part of the fingerprint (they are only
+   * known after the generation): they are stored in the fingerprint file with their state (existing or missing).
+   *
+   * @param fingerprintFile
+   *          the file containing the fingerprint of the previous generation
+   * @param rootInFolder
+   *          the root folder (in a folder or in an archive, see {@link SourceFolder})
+   * @return true if each target of a link checked by the previous generation still exists or is still missing
+   */
+  public static boolean isLinkTargetsUnchanged(File fingerprintFile, Path rootInFolder) throws IOException {
+    for (String value : readProperties(fingerprintFile, LINK_TARGET)) {
+      boolean exists;
+      if (value.startsWith(EXISTING)) {
+        exists = true;
+      }
+      else if (value.startsWith(MISSING)) {
+        exists = false;
+      }
+      else {
+        return false;
+      }
+      if (java.nio.file.Files.exists(rootInFolder.resolve(value.substring(EXISTING.length()))) != exists) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param fingerprint
+   *          the fingerprint of the inputs
+   * @param computedAt
+   *          the time (in milliseconds) at which the fingerprint was computed, before the pages were read
+   * @param subTocFiles
+   *          the number of sub toc files written with the toc file
+   * @param linkTargets
+   *          the targets of the links that are not pages of the generation, with their state (see
+   *          {@link ValidationReport#getCheckedFiles()}), can be null
+   */
+  public static void write(File fingerprintFile, String fingerprint, long computedAt, int subTocFiles, Map<String, Boolean> linkTargets) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    sb.append(fingerprint).append("\n");
+    sb.append(COMPUTED_AT).append("=").append(computedAt).append("\n");
+    sb.append(SUB_TOC_FILES).append("=").append(subTocFiles).append("\n");
+    if (linkTargets != null) {
+      for (Map.Entry<String, Boolean> e : linkTargets.entrySet()) {
+        sb.append(LINK_TARGET).append("=").append(e.getValue() ? EXISTING : MISSING).append(e.getKey()).append("\n");
+      }
+    }
+    Files.createParentDirs(fingerprintFile);
+    Files.write(sb.toString(), fingerprintFile, Charsets.UTF_8);
+  }
+
+  private static String readProperty(File fingerprintFile, String name) throws IOException {
+    List<String> values = readProperties(fingerprintFile, name);
+    return values.isEmpty() ? null : values.get(0).trim();
+  }
+
+  private static List<String> readProperties(File fingerprintFile, String name) throws IOException {
+    List<String> values = new ArrayList<String>();
+    if (!fingerprintFile.isFile()) {
+      return values;
+    }
+    String prefix = name + "=";
+    for (String line : Files.readLines(fingerprintFile, Charsets.UTF_8)) {
+      if (line.startsWith(prefix)) {
+        values.add(line.substring(prefix.length()));
+      }
+    }
+    return values;
+  }
+
+  private static void putString(Hasher hasher, String value) {
+    if (value == null) {
+      hasher.putInt(-1);
+    }
+    else {
+      hasher.putInt(value.length());
+      hasher.putString(value, Charsets.UTF_8);
+    }
+  }
+
+  private static Map<String, DiscoveredPage> toMap(List<DiscoveredPage> pages) {
+    Map<String, DiscoveredPage> result = new HashMap<String, DiscoveredPage>();
+    if (pages != null) {
+      for (DiscoveredPage p : pages) {
+        result.put(p.getName(), p);
+      }
+    }
+    return result;
+  }
+
+  private static long lastModified(Path rootInFolder, String page, Map<String, DiscoveredPage> discoveredPages) {
+    DiscoveredPage discoveredPage = discoveredPages.get(page);
+    if (discoveredPage != null) {
+      return discoveredPage.getLastModified();
+    }
+    try {
+      return java.nio.file.Files.getLastModifiedTime(rootInFolder.resolve(page)).toMillis();
+    }
+    catch (IOException e) {
+      //missing file: same value as File#lastModified()
+      return 0L;
+    }
+  }
+
+  private static void putFile(Hasher hasher, Path rootInFolder, String page, Map<String, DiscoveredPage> discoveredPages) {
+    DiscoveredPage discoveredPage = discoveredPages.get(page);
+    if (discoveredPage != null) {
+      //same values as for a file, without checking the file again.
+      hasher.putBoolean(true);
+      hasher.putLong(discoveredPage.getLength());
+      hasher.putLong(discoveredPage.getLastModified());
+      return;
+    }
+    Path file = rootInFolder.resolve(page);
+    try {
+      BasicFileAttributes attributes = java.nio.file.Files.readAttributes(file, BasicFileAttributes.class);
+      hasher.putBoolean(attributes.isRegularFile());
+      hasher.putLong(attributes.size());
+      hasher.putLong(attributes.lastModifiedTime().toMillis());
+    }
+    catch (IOException e) {
+      //missing file: same values as File#length() and File#lastModified()
+      hasher.putBoolean(false);
+      hasher.putLong(0L);
+      hasher.putLong(0L);
+    }
+  }
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Validates the links of the pages with the anchors and the links collected while the pages were parsed (see
+ * {@link PageLinks}), without reading the pages again. The anchors of all the pages are indexed in hash sets, each link
+ * is checked once: the cost is linear in the number of links.
+ * <p>
+ * A link to a page of the generation is valid if the anchor (the fragment) exists in this page. A link to another
+ * file of the source folder (an image, a page that is not in the toc) is valid if the file exists, its anchors are not
+ * checked. External links (with a scheme like <code>http:</code> or <code>mailto:</code>, absolute paths and paths
+ * outside of the source folder) are not checked. The ids used several times in a page are reported as well.
+ */
+public class LinkValidator {
+
+  private final Path rootInFolder;
+  private final ValidationReport report;
+  private final Map<String, Set<String>> idsByFile = new HashMap<String, Set<String>>();
+  private final Map<String, Boolean> existingFiles = new HashMap<String, Boolean>();
+
+  private LinkValidator(Path rootInFolder, ValidationReport report) {
+    this.rootInFolder = rootInFolder;
+    this.report = report;
+  }
+
+  /**
+   * Validate the links of the pages.
+   *
+   * @param rootInFolder
+   *          the root folder (in a folder or in an archive)
+   * @param pages
+   *          the pages, with their links (see {@link Page#getLinks()})
+   * @param report
+   *          receives the problems and the files whose existence was checked (see
+   *          {@link ValidationReport#addCheckedFile(String, boolean)})
+   */
+  public static void validate(Path rootInFolder, List<Page> pages, ValidationReport report) {
+    LinkValidator validator = new LinkValidator(rootInFolder, report);
+    List<Page> pagesWithLinks = new ArrayList<Page>();
+    for (Page page : pages) {
+      PageLinks.Links links = page.getLinks();
+      if (links != null) {
+        validator.idsByFile.put(page.getFilePath(), new HashSet<String>(Arrays.asList(links.getIds())));
+        pagesWithLinks.add(page);
+      }
+    }
+    for (Page page : pagesWithLinks) {
+      for (String id : page.getLinks().getDuplicateIds()) {
+        report.add(page.getFilePath(), "duplicate id '" + id + "'");
+      }
+      for (String href : page.getLinks().getHrefs()) {
+        String problem = validator.check(page.getFilePath(), href);
+        if (problem != null) {
+          report.add(page.getFilePath(), "broken link '" + href + "': " + problem);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the problem or null if the link is valid (or not checked)
+   */
+  private String check(String filePath, String href) {
+    if (href.length() == 0 || isExternal(href)) {
+      return null;
+    }
+    int fragmentIndex = href.indexOf('#');
+    String path = fragmentIndex < 0 ? href : href.substring(0, fragmentIndex);
+    String fragment = fragmentIndex < 0 ? "" : href.substring(fragmentIndex + 1);
+    int queryIndex = path.indexOf('?');
+    if (queryIndex >= 0) {
+      path = path.substring(0, queryIndex);
+    }
+    String target = path.length() == 0 ? filePath : resolve(filePath, decode(path));
+    if (target == null) {
+      //outside of the source folder
+      return null;
+    }
+    Set<String> ids = idsByFile.get(target);
+    if (ids == null) {
+      if (!exists(target)) {
+        return "file '" + target + "' not found";
+      }
+      return null;
+    }
+    if (fragment.length() > 0 && !ids.contains(fragment)) {
+      return "anchor '" + fragment + "' not found in '" + target + "'";
+    }
+    return null;
+  }
+
+  private boolean exists(String target) {
+    Boolean result = existingFiles.get(target);
+    if (result == null) {
+      result = Files.exists(rootInFolder.resolve(target));
+      existingFiles.put(target, result);
+      report.addCheckedFile(target, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return true if the link has a scheme (<code>http:</code>, <code>mailto:</code> ...) or is an absolute path
+   */
+  static boolean isExternal(String href) {
+    if (href.startsWith("/")) {
+      return true;
+    }
+    for (int i = 0; i < href.length(); i++) {
+      char c = href.charAt(i);
+      if (c == ':') {
+        return i > 0;
+      }
+      boolean schemeChar = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (i > 0 && ((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.'));
+      if (!schemeChar) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Resolve a relative link.
+   *
+   * @param filePath
+   *          path of the page containing the link, relative to the root folder
+   * @param path
+   *          the path of the link (without fragment)
+   * @return path of the target relative to the root folder (with '/' as separator), or null if the target is outside
+   *         of the root folder
+   */
+  static String resolve(String filePath, String path) {
+    List<String> segments = new ArrayList<String>(Arrays.asList(filePath.split("/")));
+    //the name of the page
+    segments.remove(segments.size() - 1);
+    for (String segment : path.split("/", -1)) {
+      if (segment.equals("..")) {
+        if (segments.isEmpty()) {
+          return null;
+        }
+        segments.remove(segments.size() - 1);
+      }
+      else if (!segment.equals(".") && segment.length() > 0) {
+        segments.add(segment);
+      }
+    }
+    StringBuilder sb = new StringBuilder();
+    for (String segment : segments) {
+      if (sb.length() > 0) {
+        sb.append('/');
+      }
+      sb.append(segment);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the path with the percent-encoded characters decoded (as is if it is not a valid URI path)
+   */
+  private static String decode(String path) {
+    if (path.indexOf('%') < 0) {
+      return path;
+    }
+    try {
+      return new URI(path).getPath();
+    }
+    catch (URISyntaxException e) {
+      return path;
+    }
+  }
+}
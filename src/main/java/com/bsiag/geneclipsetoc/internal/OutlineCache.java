@@ -0,0 +1,476 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Persistent cache of the headers (and optionally of the links and of the help contexts) extracted from
+ * each page. An entry is valid as long as the size and the last modification time of the page are unchanged, in this
+ * case the page does not need to be read again. The pages of an archive are identified by their URI.
+ * <p>
+ * The cache file is ignored if it was written by another version of the plugin (the extraction may have changed). A
+ * page modified less than {@link #MTIME_RESOLUTION} before the cache was saved is not trusted: it could be modified
+ * again with the same size and the same modification time (as "racily clean" files in git).
+ */
+public class OutlineCache {
+
+  private static final int FORMAT_VERSION = 6;
+
+  /**
+   * Coarsest resolution of the modification time of the file systems (FAT: 2 seconds).
+   */
+  static final long MTIME_RESOLUTION = 2000L;
+
+  private static final String POM_PROPERTIES = "/META-INF/maven/com.bsiag.geneclipsetoc/geneclipsetoc-maven-plugin/pom.properties";
+  static final String PLUGIN_VERSION = readPluginVersion();
+  private static final String ARCHIVE_URI_PREFIX = "jar:";
+
+  private final File cacheFile;
+  private final String extractorName;
+  private final Map<String, Entry> entries;
+  private final Map<String, Entry> usedEntries = new ConcurrentHashMap<String, Entry>();
+
+  private OutlineCache(File cacheFile, String extractorName, Map<String, Entry> entries) {
+    this.cacheFile = cacheFile;
+    this.extractorName = extractorName;
+    this.entries = entries;
+  }
+
+  /**
+   * Load the cache. If the file does not exist, can not be read or was written for another
+   * {@link HeaderExtractor}, the cache is empty.
+   *
+   * @param cacheFile
+   *          the file containing the cache
+   * @param extractor
+   *          the engine used to extract the headers
+   * @return cache
+   */
+  public static OutlineCache load(File cacheFile, HeaderExtractor extractor) {
+    Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    if (cacheFile.isFile()) {
+      try {
+        readEntries(cacheFile, extractor.name(), entries);
+      }
+      catch (IOException e) {
+        //corrupted or incompatible cache, ignore it.
+        entries.clear();
+      }
+      catch (RuntimeException e) {
+        //corrupted cache (inconsistent values), ignore it.
+        entries.clear();
+      }
+    }
+    return new OutlineCache(cacheFile, extractor.name(), entries);
+  }
+
+  /**
+   * @return the version of the plugin (from the pom.properties of the jar), or "unknown" (not packaged)
+   */
+  private static String readPluginVersion() {
+    InputStream in = OutlineCache.class.getResourceAsStream(POM_PROPERTIES);
+    if (in == null) {
+      return "unknown";
+    }
+    try {
+      try {
+        Properties properties = new Properties();
+        properties.load(in);
+        return properties.getProperty("version", "unknown");
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      return "unknown";
+    }
+  }
+
+  /**
+   * Create an empty cache that is only kept in memory ({@link #save()} does nothing). It can be used for several
+   * generations in the same JVM (see the watch goal).
+   *
+   * @param extractor
+   *          the engine used to extract the headers
+   * @return cache
+   */
+  public static OutlineCache createInMemory(HeaderExtractor extractor) {
+    return new OutlineCache(null, extractor.name(), new ConcurrentHashMap<String, Entry>());
+  }
+
+  /**
+   * @param file
+   *          the page
+   * @param length
+   *          the current length of the page
+   * @param lastModified
+   *          the current modification time of the page
+   * @return the cached headers or null if the page is not in the cache or was modified.
+   */
+  public List<PageHeader> get(File file, long length, long lastModified) {
+    return get(file.toPath(), length, lastModified);
+  }
+
+  /**
+   * @param path
+   *          the page (in a folder or in an archive)
+   * @param length
+   *          the current length of the page
+   * @param lastModified
+   *          the current modification time of the page
+   * @return the cached headers or null if the page is not in the cache or was modified.
+   */
+  public List<PageHeader> get(Path path, long length, long lastModified) {
+    String key = SourceFolder.getAbsoluteName(path);
+    Entry entry = entries.get(key);
+    if (entry == null || entry.length != length || entry.lastModified != lastModified) {
+      return null;
+    }
+    usedEntries.put(key, entry);
+    return entry.headers;
+  }
+
+  /**
+   * @param file
+   *          the page
+   * @param length
+   *          the length of the page (before it was read)
+   * @param lastModified
+   *          the modification time of the page (before it was read)
+   * @param headers
+   *          the headers extracted from the page
+   */
+  public void put(File file, long length, long lastModified, List<PageHeader> headers) {
+    put(file.toPath(), length, lastModified, headers, null, null);
+  }
+
+  /**
+   * @param path
+   *          the page (in a folder or in an archive)
+   * @param length
+   *          the current length of the page
+   * @param lastModified
+   *          the current modification time of the page
+   * @return the cached anchors and links or null if the page is not in the cache, was modified or if its links were
+   *         not collected.
+   */
+  public PageLinks.Links getLinks(Path path, long length, long lastModified) {
+    Entry entry = entries.get(SourceFolder.getAbsoluteName(path));
+    if (entry == null || entry.length != length || entry.lastModified != lastModified) {
+      return null;
+    }
+    return entry.links;
+  }
+
+  /**
+   * @param path
+   *          the page (in a folder or in an archive)
+   * @param length
+   *          the current length of the page
+   * @param lastModified
+   *          the current modification time of the page
+   * @return the cached help contexts or null if the page is not in the cache, was modified or if its help contexts
+   *         were not collected.
+   */
+  public PageContexts.Declarations getContexts(Path path, long length, long lastModified) {
+    Entry entry = entries.get(SourceFolder.getAbsoluteName(path));
+    if (entry == null || entry.length != length || entry.lastModified != lastModified) {
+      return null;
+    }
+    return entry.contexts;
+  }
+
+  /**
+   * @param path
+   *          the page (in a folder or in an archive)
+   * @param length
+   *          the length of the page (before it was read)
+   * @param lastModified
+   *          the modification time of the page (before it was read)
+   * @param headers
+   *          the headers extracted from the page
+   * @param links
+   *          the anchors and links of the page (can be null)
+   * @param contexts
+   *          the help contexts declared in the page (can be null)
+   */
+  public void put(Path path, long length, long lastModified, List<PageHeader> headers, PageLinks.Links links, PageContexts.Declarations contexts) {
+    String key = SourceFolder.getAbsoluteName(path);
+    Entry entry = new Entry(length, lastModified, Collections.unmodifiableList(new ArrayList<PageHeader>(headers)), links, contexts);
+    entries.put(key, entry);
+    usedEntries.put(key, entry);
+  }
+
+  /**
+   * Remove a page from the cache. If the file is a folder, all the pages contained in this folder are removed. If the
+   * file is an archive, all the pages of the archive are removed.
+   *
+   * @param file
+   *          the page, the folder or the archive
+   */
+  public void invalidate(File file) {
+    String key = SourceFolder.getAbsoluteName(file.toPath());
+    String folderPrefix = key + File.separator;
+    File absoluteFile = file.getAbsoluteFile();
+    for (String k : entries.keySet()) {
+      if (k.equals(key) || k.startsWith(folderPrefix) || absoluteFile.equals(toArchiveFile(k))) {
+        entries.remove(k);
+        usedEntries.remove(k);
+      }
+    }
+  }
+
+  /**
+   * Write the cache. The entries used since the cache was loaded are written, as well as the loaded entries of the
+   * pages that are not modified (pages of a book that was not generated), so that deleted or renamed pages do not stay
+   * in the cache forever.
+   */
+  public void save() throws IOException {
+    if (cacheFile == null) {
+      return;
+    }
+    Files.createParentDirs(cacheFile);
+    File tmpFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+    try {
+      out.writeInt(FORMAT_VERSION);
+      writeString(out, PLUGIN_VERSION);
+      writeString(out, extractorName);
+      out.writeLong(System.currentTimeMillis());
+      Map<String, Entry> sortedEntries = new TreeMap<String, Entry>(usedEntries);
+      for (Map.Entry<String, Entry> e : entries.entrySet()) {
+        if (!sortedEntries.containsKey(e.getKey()) && isUnmodified(e.getKey(), e.getValue())) {
+          sortedEntries.put(e.getKey(), e.getValue());
+        }
+      }
+      out.writeInt(sortedEntries.size());
+      for (Map.Entry<String, Entry> e : sortedEntries.entrySet()) {
+        writeString(out, e.getKey());
+        Entry entry = e.getValue();
+        out.writeLong(entry.length);
+        out.writeLong(entry.lastModified);
+        out.writeInt(entry.headers.size());
+        for (PageHeader header : entry.headers) {
+          out.writeByte(header.getLevel());
+          writeString(out, header.getId());
+          writeString(out, header.getText());
+        }
+        if (entry.links == null) {
+          out.writeInt(-1);
+        }
+        else {
+          writeStrings(out, entry.links.getIds());
+          writeStrings(out, entry.links.getDuplicateIds());
+          writeStrings(out, entry.links.getHrefs());
+        }
+        if (entry.contexts == null) {
+          out.writeInt(-1);
+        }
+        else {
+          writeStrings(out, entry.contexts.getIds());
+          writeStrings(out, entry.contexts.getTitles());
+          writeStrings(out, entry.contexts.getDescriptions());
+          writeStrings(out, entry.contexts.getAnchors());
+        }
+      }
+    }
+    finally {
+      out.close();
+    }
+    Files.move(tmpFile, cacheFile);
+  }
+
+  /**
+   * @return true if the page of an entry that was not used still exists and is not modified. The page of an archive
+   *         is kept as long as the archive exists.
+   */
+  private static boolean isUnmodified(String key, Entry entry) {
+    if (key.startsWith(ARCHIVE_URI_PREFIX)) {
+      File archive = toArchiveFile(key);
+      return archive != null && archive.isFile();
+    }
+    File file = new File(key);
+    return file.isFile() && file.length() == entry.length && file.lastModified() == entry.lastModified;
+  }
+
+  /**
+   * @param key
+   *          the key of a page in an archive (see {@link SourceFolder#getAbsoluteName(Path)})
+   * @return the archive, or null if the key is not the URI of a page in an archive
+   */
+  private static File toArchiveFile(String key) {
+    int separatorIndex = key.indexOf("!/");
+    if (!key.startsWith(ARCHIVE_URI_PREFIX) || separatorIndex < 0) {
+      return null;
+    }
+    try {
+      return new File(new URI(key.substring(ARCHIVE_URI_PREFIX.length(), separatorIndex)));
+    }
+    catch (URISyntaxException e) {
+      return null;
+    }
+    catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static void readEntries(File cacheFile, String extractorName, Map<String, Entry> entries) throws IOException {
+    //a count or a length can not be greater than the size of the file
+    long limit = cacheFile.length();
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+    try {
+      if (in.readInt() != FORMAT_VERSION || !PLUGIN_VERSION.equals(readString(in, limit)) || !extractorName.equals(readString(in, limit))) {
+        return;
+      }
+      long savedAt = in.readLong();
+      int size = readSize(in, limit);
+      for (int i = 0; i < size; i++) {
+        String key = readString(in, limit);
+        long length = in.readLong();
+        long lastModified = in.readLong();
+        int headersSize = readSize(in, limit);
+        List<PageHeader> headers = new ArrayList<PageHeader>(headersSize);
+        for (int j = 0; j < headersSize; j++) {
+          int level = in.readByte();
+          String id = readString(in, limit);
+          String text = readString(in, limit);
+          headers.add(new PageHeader(level, id, text));
+        }
+        PageLinks.Links links = null;
+        String[] ids = readStrings(in, limit);
+        if (ids != null) {
+          links = new PageLinks.Links(ids, readStrings(in, limit), readStrings(in, limit));
+        }
+        PageContexts.Declarations contexts = null;
+        String[] contextIds = readStrings(in, limit);
+        if (contextIds != null) {
+          contexts = new PageContexts.Declarations(contextIds, readStrings(in, limit), readStrings(in, limit), readStrings(in, limit));
+        }
+        if (key == null || lastModified >= savedAt - MTIME_RESOLUTION) {
+          //the page could have been modified since it was read, without change of its size and modification time
+          continue;
+        }
+        entries.put(key, new Entry(length, lastModified, Collections.unmodifiableList(headers), links, contexts));
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    }
+    else {
+      byte[] bytes = value.getBytes(Charsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+    out.writeInt(values.length);
+    for (String value : values) {
+      writeString(out, value);
+    }
+  }
+
+  /**
+   * @return the strings, or null if the length is -1
+   */
+  private static String[] readStrings(DataInputStream in, long limit) throws IOException {
+    int length = readNullableSize(in, limit);
+    if (length < 0) {
+      return null;
+    }
+    String[] values = new String[length];
+    for (int i = 0; i < length; i++) {
+      values[i] = readString(in, limit);
+    }
+    return values;
+  }
+
+  private static String readString(DataInputStream in, long limit) throws IOException {
+    int length = readNullableSize(in, limit);
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  /**
+   * @return a count or a length
+   * @throws IOException
+   *           if the value is negative or greater than the size of the file (corrupted cache)
+   */
+  private static int readSize(DataInputStream in, long limit) throws IOException {
+    int size = in.readInt();
+    if (size < 0 || size > limit) {
+      throw new IOException("Corrupted cache: invalid size " + size);
+    }
+    return size;
+  }
+
+  /**
+   * @return a count or a length, or -1 for null
+   * @throws IOException
+   *           if the value is less than -1 or greater than the size of the file (corrupted cache)
+   */
+  private static int readNullableSize(DataInputStream in, long limit) throws IOException {
+    int size = in.readInt();
+    if (size < -1 || size > limit) {
+      throw new IOException("Corrupted cache: invalid size " + size);
+    }
+    return size;
+  }
+
+  private static class Entry {
+    private final long length;
+    private final long lastModified;
+    private final List<PageHeader> headers;
+    private final PageLinks.Links links;
+    private final PageContexts.Declarations contexts;
+
+    Entry(long length, long lastModified, List<PageHeader> headers, PageLinks.Links links, PageContexts.Declarations contexts) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.headers = headers;
+      this.links = links;
+      this.contexts = contexts;
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A page of the help, shared by the toc and the contexts: it is resolved and parsed once per generation.
+ */
+public class Page {
+
+  private final Path path;
+  private final String filePath;
+  private final long length;
+  private final long lastModified;
+  private List<PageHeader> headers;
+  private PageLinks.Links links;
+  private PageContexts.Declarations contexts;
+  private ByteBuffer content;
+
+  /**
+   * @param path
+   *          the html file (in a folder or in an archive)
+   * @param filePath
+   *          path of the file relative to the root folder (with '/' as separator)
+   */
+  public Page(Path path, String filePath) {
+    this(path, filePath, -1L, -1L);
+  }
+
+  /**
+   * @param path
+   *          the html file (in a folder or in an archive)
+   * @param filePath
+   *          path of the file relative to the root folder (with '/' as separator)
+   * @param length
+   *          length of the file, or -1 if unknown
+   * @param lastModified
+   *          modification time of the file, or -1 if unknown
+   */
+  public Page(Path path, String filePath, long length, long lastModified) {
+    this.path = path;
+    this.filePath = filePath;
+    this.length = length;
+    this.lastModified = lastModified;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public String getFilePath() {
+    return filePath;
+  }
+
+  /**
+   * @return true if the length and the modification time are known (the file does not need to be checked again).
+   */
+  public boolean hasAttributes() {
+    return length >= 0 && lastModified >= 0;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return headers of the page, null as long as the page is not parsed.
+   */
+  public List<PageHeader> getHeaders() {
+    return headers;
+  }
+
+  public void setHeaders(List<PageHeader> headers) {
+    this.headers = headers;
+  }
+
+  /**
+   * @return anchors and links of the page, null if they are not collected (see {@link LinkValidator}).
+   */
+  public PageLinks.Links getLinks() {
+    return links;
+  }
+
+  public void setLinks(PageLinks.Links links) {
+    this.links = links;
+  }
+
+  /**
+   * @return help contexts declared in the page, null if they are not collected (see
+   *         {@link GenerateOptions#isHarvestHelpContexts()}).
+   */
+  public PageContexts.Declarations getContexts() {
+    return contexts;
+  }
+
+  public void setContexts(PageContexts.Declarations contexts) {
+    this.contexts = contexts;
+  }
+
+  /**
+   * @param content
+   *          content of the page read in advance (see {@link PagePrefetcher}), or null
+   */
+  public synchronized void setContent(ByteBuffer content) {
+    this.content = content;
+  }
+
+  /**
+   * @return the content of the page read in advance, or null. The content is released by the page.
+   */
+  public synchronized ByteBuffer takeContent() {
+    ByteBuffer result = content;
+    content = null;
+    return result;
+  }
+}
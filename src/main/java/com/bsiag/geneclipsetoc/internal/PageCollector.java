@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+/**
+ * Receives what is collected from a page while its headers are extracted: its anchors and links (for the
+ * {@link LinkValidator}) and the help contexts it declares (see {@link GenerateOptions#isHarvestHelpContexts()}). A collector is created for each page from the {@link Options} of
+ * the generation; the sinks of the values that are not needed are null.
+ */
+public class PageCollector {
+
+  private final PageLinks links;
+  private final PageContexts contexts;
+
+  public PageCollector(Options options) {
+    this.links = options.isLinks() ? new PageLinks() : null;
+    this.contexts = options.isContexts() ? new PageContexts() : null;
+  }
+
+  /**
+   * @return receives the anchors and the links of the page, or null
+   */
+  public PageLinks getLinks() {
+    return links;
+  }
+
+  /**
+   * @return receives the help contexts declared in the page, or null
+   */
+  public PageContexts getContexts() {
+    return contexts;
+  }
+
+  /**
+   * @return the collected anchors and links, or null if they are not collected
+   */
+  public PageLinks.Links buildLinks() {
+    return links != null ? links.build() : null;
+  }
+
+  /**
+   * @return the collected help contexts, or null if they are not collected
+   */
+  public PageContexts.Declarations buildContexts() {
+    return contexts != null ? contexts.build() : null;
+  }
+
+  /**
+   * What is collected from the pages of a generation, in addition to their headers. Immutable.
+   */
+  public static class Options {
+
+    /**
+     * Only the headers are extracted.
+     */
+    public static final Options NONE = new Options(false, false);
+
+    private final boolean links;
+    private final boolean contexts;
+
+    private Options(boolean links, boolean contexts) {
+      this.links = links;
+      this.contexts = contexts;
+    }
+
+    /**
+     * @return the values needed by the generation: the links if they are validated and the help contexts if they are
+     *         harvested
+     */
+    public static Options of(GenerateOptions options) {
+      return new Options(options.isValidateLinks(), options.isHarvestHelpContexts());
+    }
+
+    public Options withLinks() {
+      return new Options(true, contexts);
+    }
+
+    public Options withContexts() {
+      return new Options(links, true);
+    }
+
+    public boolean isLinks() {
+      return links;
+    }
+
+    public boolean isContexts() {
+      return contexts;
+    }
+
+    /**
+     * @return true if the values needed are available (a value that is not needed can be null)
+     */
+    public boolean isCollected(PageLinks.Links pageLinks, PageContexts.Declarations declarations) {
+      return (!links || pageLinks != null) && (!contexts || declarations != null);
+    }
+
+    /**
+     * @return the options collecting the values needed and the values that are already available, so that they are
+     *         not lost when the page is parsed again
+     */
+    public Options union(PageLinks.Links pageLinks, PageContexts.Declarations declarations) {
+      return new Options(links || pageLinks != null, contexts || declarations != null);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the help contexts declared in a page while it is parsed (see
+ * {@link GenerateOptions#isHarvestHelpContexts()}). A context is declared by an element with a
+ * <code>data-help-context</code> attribute (the id of the context) or by a
+ * <code>&lt;meta name="help-context" content="..."&gt;</code> element. The same element can define the title and the
+ * description of the context with the <code>data-help-context-title</code> and
+ * <code>data-help-context-description</code> attributes. The page is a topic of the context, at the anchor of the
+ * element if it has an id.
+ */
+public class PageContexts {
+
+  static final String CONTEXT_ATTRIBUTE = "data-help-context";
+  static final String TITLE_ATTRIBUTE = "data-help-context-title";
+  static final String DESCRIPTION_ATTRIBUTE = "data-help-context-description";
+  static final String META_NAME = "help-context";
+
+  private final List<String> ids = new ArrayList<String>();
+  private final List<String> titles = new ArrayList<String>();
+  private final List<String> descriptions = new ArrayList<String>();
+  private final List<String> anchors = new ArrayList<String>();
+
+  /**
+   * @param id
+   *          the id of the context (ignored if empty)
+   * @param title
+   *          the title of the context (can be null)
+   * @param description
+   *          the description of the context (can be null)
+   * @param anchor
+   *          the id of the element declaring the context (can be null)
+   */
+  public void add(String id, String title, String description, String anchor) {
+    if (id == null || id.trim().length() == 0) {
+      return;
+    }
+    ids.add(id.trim());
+    titles.add(emptyToNull(title));
+    descriptions.add(emptyToNull(description));
+    anchors.add(emptyToNull(anchor));
+  }
+
+  /**
+   * @return the collected declarations
+   */
+  public Declarations build() {
+    return new Declarations(toArray(ids), toArray(titles), toArray(descriptions), toArray(anchors));
+  }
+
+  private static String emptyToNull(String value) {
+    return value == null || value.trim().length() == 0 ? null : value.trim();
+  }
+
+  private static String[] toArray(List<String> values) {
+    return values.toArray(new String[values.size()]);
+  }
+
+  /**
+   * Immutable help contexts declared in a page, in the order of the document. The title, the description and the
+   * anchor of a declaration are null if they are not defined.
+   */
+  public static class Declarations {
+    private final String[] ids;
+    private final String[] titles;
+    private final String[] descriptions;
+    private final String[] anchors;
+
+    public Declarations(String[] ids, String[] titles, String[] descriptions, String[] anchors) {
+      if (ids.length != titles.length || ids.length != descriptions.length || ids.length != anchors.length) {
+        throw new IllegalArgumentException("ids, titles, descriptions and anchors should have the same length");
+      }
+      this.ids = ids;
+      this.titles = titles;
+      this.descriptions = descriptions;
+      this.anchors = anchors;
+    }
+
+    public int size() {
+      return ids.length;
+    }
+
+    public String getId(int index) {
+      return ids[index];
+    }
+
+    public String getTitle(int index) {
+      return titles[index];
+    }
+
+    public String getDescription(int index) {
+      return descriptions[index];
+    }
+
+    public String getAnchor(int index) {
+      return anchors[index];
+    }
+
+    String[] getIds() {
+      return ids;
+    }
+
+    String[] getTitles() {
+      return titles;
+    }
+
+    String[] getDescriptions() {
+      return descriptions;
+    }
+
+    String[] getAnchors() {
+      return anchors;
+    }
+  }
+}
@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the pages of the root folder matching include and exclude glob patterns (see
+ * {@link FileSystem#getPathMatcher(String)}, the patterns are relative to the root folder and use '/' as separator).
+ * The folders are walked in parallel (one fork/join task per folder) and the attributes of the files are read during
+ * the walk.
+ * <p>
+ * The result is ordered: the pages of a folder come before the pages of its sub-folders, files and folders are sorted
+ * by name.
+ * <p>
+ * Symbolic links are followed, except a link to a folder containing it (the walk would not end). The entries that can
+ * not be read (dangling links, folders without access) are skipped and reported to the caller.
+ */
+public class PageDiscovery {
+
+  private static final String GLOB = "glob:";
+  private static final String ANY_FOLDER_PREFIX = "**/";
+  private static final String ANY_CONTENT_SUFFIX = "/**";
+
+  /**
+   * Compare the page names (see the order described in {@link PageDiscovery}).
+   */
+  static final Comparator<String> PAGE_ORDER = new Comparator<String>() {
+    @Override
+    public int compare(String o1, String o2) {
+      String[] segments1 = o1.split("/");
+      String[] segments2 = o2.split("/");
+      int i = 0;
+      while (i < segments1.length && i < segments2.length && segments1[i].equals(segments2[i])) {
+        i++;
+      }
+      if (i == segments1.length || i == segments2.length) {
+        return segments1.length - segments2.length;
+      }
+      boolean isFile1 = i == segments1.length - 1;
+      boolean isFile2 = i == segments2.length - 1;
+      if (isFile1 != isFile2) {
+        return isFile1 ? -1 : 1;
+      }
+      return segments1[i].compareTo(segments2[i]);
+    }
+  };
+
+  private PageDiscovery() {
+  }
+
+  /**
+   * Find the pages.
+   *
+   * @param rootInFolder
+   *          the root folder
+   * @param includes
+   *          patterns of the pages (at least one)
+   * @param excludes
+   *          patterns of the excluded pages or folders (can be null)
+   * @param threads
+   *          number of threads walking the folders
+   * @return the pages, in a deterministic order
+   */
+  public static List<DiscoveredPage> discover(File rootInFolder, List<String> includes, List<String> excludes, int threads) throws IOException {
+    return discover(rootInFolder.toPath(), includes, excludes, threads, null);
+  }
+
+  /**
+   * Find the pages.
+   *
+   * @param root
+   *          the root folder (in a folder or in an archive, see {@link SourceFolder})
+   * @param includes
+   *          patterns of the pages (at least one)
+   * @param excludes
+   *          patterns of the excluded pages or folders (can be null)
+   * @param threads
+   *          number of threads walking the folders
+   * @param skippedEntries
+   *          receives a message for each entry that is skipped because it can not be read or because it is a link to a
+   *          folder containing it (can be null)
+   * @return the pages, in a deterministic order
+   */
+  public static List<DiscoveredPage> discover(Path root, List<String> includes, List<String> excludes, int threads, List<String> skippedEntries) throws IOException {
+    if (!Files.isDirectory(root)) {
+      throw new IllegalStateException("Folder rootInFolder '" + SourceFolder.getAbsoluteName(root) + "' not found.");
+    }
+    if (includes == null || includes.isEmpty()) {
+      throw new IllegalArgumentException("includes can not be null, it should contains at least one element");
+    }
+    Filter filter = new Filter(root.getFileSystem(), includes, excludes);
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+    List<DiscoveredPage> result;
+    List<String> skipped = Collections.synchronizedList(new ArrayList<String>());
+    try {
+      result = pool.invoke(new FolderTask(root, root, filter, Collections.singleton(folderKey(root, Files.readAttributes(root, BasicFileAttributes.class))), skipped));
+    }
+    catch (WalkException e) {
+      throw e.getCause();
+    }
+    finally {
+      pool.shutdown();
+    }
+    if (skippedEntries != null) {
+      List<String> messages = new ArrayList<String>(skipped);
+      Collections.sort(messages);
+      skippedEntries.addAll(messages);
+    }
+    Collections.sort(result, new Comparator<DiscoveredPage>() {
+      @Override
+      public int compare(DiscoveredPage o1, DiscoveredPage o2) {
+        return PAGE_ORDER.compare(o1.getName(), o2.getName());
+      }
+    });
+    return result;
+  }
+
+  private static class Filter {
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final List<PathMatcher> folderExcludes;
+
+    Filter(FileSystem fileSystem, List<String> includePatterns, List<String> excludePatterns) {
+      includes = createMatchers(fileSystem, includePatterns);
+      excludes = createMatchers(fileSystem, excludePatterns);
+      //"folder/**" excludes the folder: it does not need to be walked.
+      List<String> folderPatterns = new ArrayList<String>();
+      if (excludePatterns != null) {
+        for (String pattern : excludePatterns) {
+          folderPatterns.add(pattern.endsWith(ANY_CONTENT_SUFFIX) ? pattern.substring(0, pattern.length() - ANY_CONTENT_SUFFIX.length()) : pattern);
+        }
+      }
+      folderExcludes = createMatchers(fileSystem, folderPatterns);
+    }
+
+    boolean isIncludedFile(Path relativePath) {
+      return matches(includes, relativePath) && !matches(excludes, relativePath);
+    }
+
+    boolean isIncludedFolder(Path relativePath) {
+      return !matches(folderExcludes, relativePath);
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path relativePath) {
+      for (PathMatcher matcher : matchers) {
+        if (matcher.matches(relativePath)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static List<PathMatcher> createMatchers(FileSystem fileSystem, List<String> patterns) {
+      List<PathMatcher> matchers = new ArrayList<PathMatcher>();
+      if (patterns != null) {
+        for (String pattern : patterns) {
+          if (pattern != null && pattern.length() > 0) {
+            matchers.add(fileSystem.getPathMatcher(GLOB + pattern));
+            //"**/" also matches the files of the root folder:
+            if (pattern.startsWith(ANY_FOLDER_PREFIX)) {
+              matchers.add(fileSystem.getPathMatcher(GLOB + pattern.substring(ANY_FOLDER_PREFIX.length())));
+            }
+          }
+        }
+      }
+      return matchers;
+    }
+  }
+
+  private static class FolderTask extends RecursiveTask<List<DiscoveredPage>> {
+    private static final long serialVersionUID = 1L;
+
+    private final Path root;
+    private final Path folder;
+    private final Filter filter;
+    /**
+     * Keys of the folder and of its parents (see {@link PageDiscovery#folderKey(Path, BasicFileAttributes)}).
+     */
+    private final Set<Object> folderKeys;
+    private final List<String> skipped;
+
+    FolderTask(Path root, Path folder, Filter filter, Set<Object> folderKeys, List<String> skipped) {
+      this.root = root;
+      this.folder = folder;
+      this.filter = filter;
+      this.folderKeys = folderKeys;
+      this.skipped = skipped;
+    }
+
+    @Override
+    protected List<DiscoveredPage> compute() {
+      List<DiscoveredPage> result = new ArrayList<DiscoveredPage>();
+      List<FolderTask> subTasks = new ArrayList<FolderTask>();
+      try {
+        DirectoryStream<Path> stream = Files.newDirectoryStream(folder);
+        try {
+          for (Path entry : stream) {
+            Path relativePath = root.relativize(entry);
+            BasicFileAttributes attributes = readAttributes(entry, relativePath);
+            if (attributes == null) {
+              continue;
+            }
+            if (attributes.isDirectory()) {
+              if (filter.isIncludedFolder(relativePath)) {
+                Object key = folderKey(entry, attributes, relativePath);
+                if (key == null) {
+                  continue;
+                }
+                if (folderKeys.contains(key)) {
+                  skipped.add(toName(relativePath) + ": link to a folder containing it");
+                  continue;
+                }
+                Set<Object> keys = new HashSet<Object>(folderKeys);
+                keys.add(key);
+                FolderTask task = new FolderTask(root, entry, filter, keys, skipped);
+                task.fork();
+                subTasks.add(task);
+              }
+            }
+            else if (attributes.isRegularFile() && filter.isIncludedFile(relativePath)) {
+              String name = toName(relativePath);
+              result.add(new DiscoveredPage(name, entry, attributes.size(), attributes.lastModifiedTime().toMillis()));
+            }
+          }
+        }
+        finally {
+          stream.close();
+        }
+      }
+      catch (IOException e) {
+        skipFolder(e);
+      }
+      catch (DirectoryIteratorException e) {
+        skipFolder(e.getCause());
+      }
+      for (FolderTask task : subTasks) {
+        result.addAll(task.join());
+      }
+      return result;
+    }
+
+    private void skipFolder(IOException e) {
+      if (folder == root) {
+        throw new WalkException(e);
+      }
+      //for example a folder without read access
+      skipped.add(toName(root.relativize(folder)) + ": " + e);
+    }
+
+    /**
+     * @return the key of a folder (see {@link PageDiscovery#folderKey(Path, BasicFileAttributes)}), or null if the
+     *         folder can not be read
+     */
+    private Object folderKey(Path entry, BasicFileAttributes attributes, Path relativePath) {
+      try {
+        return PageDiscovery.folderKey(entry, attributes);
+      }
+      catch (IOException e) {
+        skipped.add(toName(relativePath) + ": " + e);
+        return null;
+      }
+    }
+
+    /**
+     * @return the attributes of the entry (of the target for a symbolic link), or null if the entry can not be read
+     */
+    private BasicFileAttributes readAttributes(Path entry, Path relativePath) {
+      try {
+        BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (attributes.isSymbolicLink()) {
+          attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+        }
+        return attributes;
+      }
+      catch (IOException e) {
+        //for example a dangling link
+        skipped.add(toName(relativePath) + ": " + e);
+        return null;
+      }
+    }
+
+    private static String toName(Path relativePath) {
+      StringBuilder sb = new StringBuilder();
+      for (Path segment : relativePath) {
+        if (sb.length() > 0) {
+          sb.append('/');
+        }
+        sb.append(segment.toString());
+      }
+      return sb.toString();
+    }
+  }
+
+  /**
+   * @return the key identifying the folder (several paths can lead to the same folder with symbolic links)
+   */
+  private static Object folderKey(Path folder, BasicFileAttributes attributes) throws IOException {
+    Object key = attributes.fileKey();
+    if (key == null) {
+      //not supported by the file system (for example on Windows or in an archive)
+      key = folder.toRealPath().toString();
+    }
+    return key;
+  }
+
+  /**
+   * Transports an {@link IOException} out of a fork/join task.
+   */
+  private static class WalkException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    WalkException(IOException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized IOException getCause() {
+      return (IOException) super.getCause();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+/**
+ * Header (h1, h2, h3, h4, h5 or h6) extracted from a page. This is the information needed to build the outline, it
+ * can be computed independently for each page.
+ */
+public class PageHeader {
+
+  private final int level;
+  private final String id;
+  private final String text;
+
+  /**
+   * @param level
+   *          the level (1 for h1, 2 for h2 ...)
+   * @param id
+   *          id of the header (see {@link GenerateEclipseTocUtility#findId(org.jsoup.nodes.Element)}), can be null
+   * @param text
+   *          text content of the header
+   */
+  public PageHeader(int level, String id, String text) {
+    this.level = level;
+    this.id = id;
+    this.text = text;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getText() {
+    return text;
+  }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Collects the anchors and the links of a page while it is parsed (see {@link LinkValidator}). An anchor is the
+ * <code>id</code> attribute of any element or the <code>name</code> attribute of an <code>a</code> element, a link is
+ * the <code>href</code> attribute of an <code>a</code> or an <code>area</code> element.
+ */
+public class PageLinks {
+
+  private final Set<String> ids = new LinkedHashSet<String>();
+  private final Set<String> duplicateIds = new LinkedHashSet<String>();
+  private final Set<String> hrefs = new LinkedHashSet<String>();
+
+  /**
+   * @param id
+   *          value of an <code>id</code> attribute (ignored if empty)
+   */
+  public void addId(String id) {
+    if (id != null && id.length() > 0 && !ids.add(id)) {
+      duplicateIds.add(id);
+    }
+  }
+
+  /**
+   * @param name
+   *          value of the <code>name</code> attribute of an <code>a</code> element (ignored if empty). The same name
+   *          as an id is not a duplicate (<code>&lt;a id="x" name="x"&gt;</code> is a common pattern).
+   */
+  public void addName(String name) {
+    if (name != null && name.length() > 0) {
+      ids.add(name);
+    }
+  }
+
+  /**
+   * @param href
+   *          value of an <code>href</code> attribute
+   */
+  public void addHref(String href) {
+    if (href != null) {
+      hrefs.add(href.trim());
+    }
+  }
+
+  /**
+   * @return the collected anchors and links
+   */
+  public Links build() {
+    return new Links(ids.toArray(new String[ids.size()]), duplicateIds.toArray(new String[duplicateIds.size()]), hrefs.toArray(new String[hrefs.size()]));
+  }
+
+  /**
+   * Immutable anchors and links of a page, in the order of the document (without duplicates).
+   */
+  public static class Links {
+    private final String[] ids;
+    private final String[] duplicateIds;
+    private final String[] hrefs;
+
+    public Links(String[] ids, String[] duplicateIds, String[] hrefs) {
+      this.ids = ids;
+      this.duplicateIds = duplicateIds;
+      this.hrefs = hrefs;
+    }
+
+    /**
+     * @return the ids and the names of the anchors
+     */
+    public String[] getIds() {
+      return ids;
+    }
+
+    /**
+     * @return the ids used by several elements of the page
+     */
+    public String[] getDuplicateIds() {
+      return duplicateIds;
+    }
+
+    public String[] getHrefs() {
+      return hrefs;
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All the pages used during one generation (for the toc and for the contexts). Each distinct file is checked and
+ * represented by a single {@link Page} instance, whatever the number of times it is referenced.
+ */
+public class PageModel {
+
+  private final Path rootInFolder;
+  private final Map<String, Page> pagesByName = new HashMap<String, Page>();
+  private final Map<Path, Page> pagesByFile = new HashMap<Path, Page>();
+  private final List<Page> pages = new ArrayList<Page>();
+  private final Map<String, DiscoveredPage> discoveredPages = new HashMap<String, DiscoveredPage>();
+
+  public PageModel(File rootInFolder) {
+    this(rootInFolder.toPath(), null);
+  }
+
+  /**
+   * @param rootInFolder
+   *          the root folder (in a folder or in an archive, see {@link SourceFolder})
+   * @param discoveredPages
+   *          pages found by {@link PageDiscovery} (can be null): these pages are not checked again.
+   */
+  public PageModel(Path rootInFolder, List<DiscoveredPage> discoveredPages) {
+    this.rootInFolder = rootInFolder;
+    if (discoveredPages != null) {
+      for (DiscoveredPage p : discoveredPages) {
+        this.discoveredPages.put(p.getName(), p);
+      }
+    }
+  }
+
+  public Path getRootInFolder() {
+    return rootInFolder;
+  }
+
+  /**
+   * Resolve a page name (this will check that the file exists, once per page).
+   *
+   * @param page
+   *          page name, relative to the root folder
+   * @return the page
+   */
+  public Page resolve(String page) {
+    return resolve(page, null, null);
+  }
+
+  /**
+   * Resolve a page name (this will check that the file exists, once per page).
+   *
+   * @param page
+   *          page name, relative to the root folder
+   * @param errors
+   *          receives the missing file (can be null: a missing file is an {@link IllegalStateException})
+   * @param reference
+   *          what references the page, used in the description of the error
+   * @return the page, or null if the file does not exist and the error is reported
+   */
+  public Page resolve(String page, ValidationReport errors, String reference) {
+    Page result = pagesByName.get(page);
+    if (result == null) {
+      DiscoveredPage discoveredPage = discoveredPages.get(page);
+      Path file;
+      if (discoveredPage != null) {
+        file = discoveredPage.getPath();
+      }
+      else if (errors != null) {
+        file = GenerateEclipseTocUtility.findFile(rootInFolder, page);
+        if (file == null) {
+          errors.addError(page, "file '" + SourceFolder.getAbsoluteName(rootInFolder.resolve(page)) + "' not found (" + reference + ")");
+          return null;
+        }
+      }
+      else {
+        file = GenerateEclipseTocUtility.computeFile(rootInFolder, page);
+      }
+      result = pagesByFile.get(file);
+      if (result == null) {
+        String filePath = GenerateEclipseTocUtility.calculateFilePath(rootInFolder, file);
+        if (discoveredPage != null) {
+          result = new Page(file, filePath, discoveredPage.getLength(), discoveredPage.getLastModified());
+        }
+        else {
+          result = new Page(file, filePath);
+        }
+        pagesByFile.put(file, result);
+        pages.add(result);
+      }
+      pagesByName.put(page, result);
+    }
+    return result;
+  }
+
+  /**
+   * Resolve a page name without keeping the page in the model (this will check that the file exists, each time). If
+   * the page is already resolved, the page of the model is returned.
+   *
+   * @param page
+   *          page name, relative to the root folder
+   * @return the page
+   */
+  public Page lookup(String page) {
+    Page result = pagesByName.get(page);
+    if (result == null) {
+      DiscoveredPage discoveredPage = discoveredPages.get(page);
+      if (discoveredPage != null) {
+        result = pagesByFile.get(discoveredPage.getPath());
+        if (result == null) {
+          result = new Page(discoveredPage.getPath(), GenerateEclipseTocUtility.calculateFilePath(rootInFolder, discoveredPage.getPath()), discoveredPage.getLength(), discoveredPage.getLastModified());
+        }
+      }
+      else {
+        Path file = GenerateEclipseTocUtility.computeFile(rootInFolder, page);
+        result = pagesByFile.get(file);
+        if (result == null) {
+          result = new Page(file, GenerateEclipseTocUtility.calculateFilePath(rootInFolder, file));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the distinct pages, in the order of their first resolution.
+   */
+  public List<Page> getPages() {
+    return Collections.unmodifiableList(pages);
+  }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Measure;
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Stage;
+
+/**
+ * I/O mode for file systems with a high latency (for example NFS): the file checks and the reads of the pages are
+ * issued concurrently on an I/O executor (virtual threads if the JVM supports them), while the pages are parsed on the
+ * CPU executor. The reads are issued in the order of the parsing, at most <code>window</code> pages ahead of it, so
+ * that the memory used by the content waiting to be parsed is bounded.
+ */
+public class PagePrefetcher {
+
+  private final ExecutorService ioExecutor;
+  private final List<FutureTask<ByteBuffer>> tasks = new ArrayList<FutureTask<ByteBuffer>>();
+  private final Map<Page, FutureTask<ByteBuffer>> tasksByPage = new HashMap<Page, FutureTask<ByteBuffer>>();
+  private int submitted = 0;
+
+  /**
+   * @param ioExecutor
+   *          the I/O executor (see {@link #createIoExecutor(int)})
+   * @param pages
+   *          the pages, in the order of the parsing
+   * @param cache
+   *          the cache (can be null): the pages in the cache are not read
+   * @param readAll
+   *          true if the pages are read even if they are in the cache (see {@link DocArchive})
+   * @param options
+   *          the values needed in addition to the headers (a page in the cache without one of them is read)
+   * @param metrics
+   *          collects the number of bytes read
+   */
+  public PagePrefetcher(ExecutorService ioExecutor, List<Page> pages, final OutlineCache cache, final boolean readAll, final PageCollector.Options options, final GenerationMetrics metrics) {
+    this.ioExecutor = ioExecutor;
+    for (final Page page : pages) {
+      FutureTask<ByteBuffer> task = new FutureTask<ByteBuffer>(new Callable<ByteBuffer>() {
+        @Override
+        public ByteBuffer call() throws Exception {
+          if (!readAll && isCached(cache, page, options)) {
+            return null;
+          }
+          Measure read = metrics.start(Stage.READ);
+          ByteBuffer content = PageReader.readDetached(page.getPath(), metrics);
+          metrics.end(read);
+          return content;
+        }
+      });
+      tasks.add(task);
+      tasksByPage.put(page, task);
+    }
+  }
+
+  /**
+   * Create the executor used for the I/O: a virtual thread per task if the JVM supports it (Java 21), otherwise a pool
+   * of platform threads.
+   *
+   * @param ioThreads
+   *          number of platform threads, if virtual threads are not supported
+   * @return the executor (to be shut down by the caller)
+   */
+  public static ExecutorService createIoExecutor(int ioThreads) {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    }
+    catch (ReflectiveOperationException e) {
+      //older JVM
+      return Executors.newFixedThreadPool(Math.max(1, ioThreads));
+    }
+  }
+
+  /**
+   * Check the pages concurrently. The checked pages are returned with their attributes, so that {@link PageModel} does
+   * not check them again. The missing pages are not returned ({@link PageModel} reports them).
+   *
+   * @param ioExecutor
+   *          the I/O executor
+   * @param root
+   *          the root folder
+   * @param names
+   *          the names of the pages (relative to the root folder)
+   * @param knownPages
+   *          pages that are already checked (can be null)
+   * @return the known pages and the checked pages
+   */
+  public static List<DiscoveredPage> checkPages(ExecutorService ioExecutor, final Path root, Collection<String> names, List<DiscoveredPage> knownPages) throws IOException {
+    List<DiscoveredPage> result = new ArrayList<DiscoveredPage>();
+    Map<String, DiscoveredPage> known = new HashMap<String, DiscoveredPage>();
+    if (knownPages != null) {
+      result.addAll(knownPages);
+      for (DiscoveredPage p : knownPages) {
+        known.put(p.getName(), p);
+      }
+    }
+    List<Future<DiscoveredPage>> futures = new ArrayList<Future<DiscoveredPage>>();
+    try {
+      for (final String name : names) {
+        if (known.containsKey(name)) {
+          continue;
+        }
+        known.put(name, null);
+        futures.add(ioExecutor.submit(new Callable<DiscoveredPage>() {
+          @Override
+          public DiscoveredPage call() {
+            Path path = root.resolve(name);
+            try {
+              BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+              if (attributes.isRegularFile()) {
+                return new DiscoveredPage(name, path, attributes.size(), attributes.lastModifiedTime().toMillis());
+              }
+            }
+            catch (IOException e) {
+              //missing file
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<DiscoveredPage> future : futures) {
+        DiscoveredPage page = GenerateEclipseTocUtility.getResult(future);
+        if (page != null) {
+          result.add(page);
+        }
+      }
+    }
+    finally {
+      for (Future<DiscoveredPage> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Issue the reads of the next pages.
+   *
+   * @param count
+   *          number of pages
+   */
+  public synchronized void readAhead(int count) {
+    for (int i = 0; i < count && submitted < tasks.size(); i++) {
+      ioExecutor.execute(tasks.get(submitted));
+      submitted++;
+    }
+  }
+
+  /**
+   * Wait until the page is read and give its content to the page (see {@link Page#takeContent()}). The read of the
+   * next page is issued.
+   *
+   * @param page
+   *          the page
+   */
+  public void await(Page page) throws IOException {
+    page.setContent(GenerateEclipseTocUtility.getResult(tasksByPage.get(page)));
+    readAhead(1);
+  }
+
+  /**
+   * Cancel the reads that are not done.
+   */
+  public void cancel() {
+    for (FutureTask<ByteBuffer> task : tasks) {
+      task.cancel(true);
+    }
+  }
+
+  private static boolean isCached(OutlineCache cache, Page page, PageCollector.Options options) {
+    if (cache == null || !page.hasAttributes()) {
+      return false;
+    }
+    Path path = page.getPath();
+    if (cache.get(path, page.getLength(), page.getLastModified()) == null) {
+      return false;
+    }
+    return options.isCollected(cache.getLinks(path, page.getLength(), page.getLastModified()), cache.getContexts(path, page.getLength(), page.getLastModified()));
+  }
+}
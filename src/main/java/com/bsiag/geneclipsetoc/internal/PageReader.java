@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Reads the pages (UTF-8) with NIO:
+ * <ul>
+ * <li>the files are read in a byte buffer that is reused by the thread,</li>
+ * <li>the content is decoded in a char buffer that is reused by the thread, or on the fly when the page is consumed
+ * as {@link Reader}.</li>
+ * </ul>
+ * The files are not memory mapped: a mapping keeps the file locked (on Windows) until it is garbage collected and
+ * fails badly if the file is truncated while it is read. The buffers of a large page are not kept by the thread (see
+ * {@link #MAX_RETAINED_BUFFER_SIZE}), {@link #releaseBuffers()} drops the buffers of the calling thread.
+ * <p>
+ * The returned buffers and readers are only valid until the next call in the same thread.
+ */
+public class PageReader {
+
+  /**
+   * Buffers bigger than this capacity are allocated for one page and not kept by the thread.
+   */
+  static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+  private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+    @Override
+    protected Buffers initialValue() {
+      return new Buffers();
+    }
+  };
+
+  private PageReader() {
+  }
+
+  /**
+   * Drop the buffers of the calling thread (at the end of a generation: the calling thread can live much longer, for
+   * example the thread of the maven build).
+   */
+  public static void releaseBuffers() {
+    BUFFERS.remove();
+  }
+
+  /**
+   * Read and decode a page.
+   *
+   * @param file
+   *          the page
+   * @param metrics
+   *          collects the number of bytes read
+   * @return the content, valid until the next call of a {@link PageReader} method in the current thread.
+   */
+  public static CharBuffer read(File file, GenerationMetrics metrics) throws IOException {
+    return read(file.toPath(), metrics);
+  }
+
+  /**
+   * Read and decode a page.
+   *
+   * @param path
+   *          the page (in a folder or in an archive)
+   * @param metrics
+   *          collects the number of bytes read
+   * @return the content, valid until the next call of a {@link PageReader} method in the current thread.
+   */
+  public static CharBuffer read(Path path, GenerationMetrics metrics) throws IOException {
+    return decode(readBytes(path, metrics));
+  }
+
+  /**
+   * Read a page without decoding it.
+   *
+   * @param path
+   *          the page (in a folder or in an archive)
+   * @param metrics
+   *          collects the number of bytes read
+   * @return the content (in the byte buffer of the thread), valid until the next call of a
+   *         {@link PageReader} method in the current thread.
+   */
+  public static ByteBuffer readBytes(Path path, GenerationMetrics metrics) throws IOException {
+    ByteBuffer bytes = readBytes(path, BUFFERS.get());
+    metrics.addBytesRead(bytes.remaining());
+    return bytes;
+  }
+
+  /**
+   * Read a page in a new buffer (not reused by the thread): the content can be passed to another thread.
+   *
+   * @param path
+   *          the page (in a folder or in an archive)
+   * @param metrics
+   *          collects the number of bytes read
+   * @return the content, ready to be read
+   */
+  public static ByteBuffer readDetached(Path path, GenerationMetrics metrics) throws IOException {
+    SeekableByteChannel channel = Files.newByteChannel(path);
+    try {
+      long size = channel.size();
+      if (size >= Integer.MAX_VALUE) {
+        throw new IOException("File '" + SourceFolder.getAbsoluteName(path) + "' is too large (" + size + " bytes)");
+      }
+      ByteBuffer bytes = ByteBuffer.allocate((int) size + 1);
+      while (channel.read(bytes) >= 0) {
+        if (!bytes.hasRemaining()) {
+          //the file has grown since the size was computed.
+          ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+          bytes.flip();
+          larger.put(bytes);
+          bytes = larger;
+        }
+      }
+      bytes.flip();
+      metrics.addBytesRead(bytes.remaining());
+      return bytes;
+    }
+    finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Decode the content of a page read with {@link #readBytes(Path, GenerationMetrics)}.
+   *
+   * @param bytes
+   *          the content (consumed)
+   * @return the content, valid until the next call of a {@link PageReader} method in the current thread.
+   */
+  public static CharBuffer decode(ByteBuffer bytes) throws IOException {
+    Buffers buffers = BUFFERS.get();
+    CharsetDecoder decoder = buffers.decoder();
+    int capacity = (int) (bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1;
+    CharBuffer chars = buffers.chars(capacity);
+    CoderResult result = decoder.decode(bytes, chars, true);
+    if (!result.isUnderflow()) {
+      result.throwException();
+    }
+    result = decoder.flush(chars);
+    if (!result.isUnderflow()) {
+      result.throwException();
+    }
+    chars.flip();
+    return chars;
+  }
+
+  /**
+   * Open a page as reader. The content is decoded on the fly (there is no char buffer for the complete page).
+   *
+   * @param file
+   *          the page
+   * @param metrics
+   *          collects the number of bytes read
+   * @return the reader, valid until the next call of a {@link PageReader} method in the current thread.
+   */
+  public static Reader openReader(File file, GenerationMetrics metrics) throws IOException {
+    return openReader(file.toPath(), metrics);
+  }
+
+  /**
+   * Open a page as reader. The content is decoded on the fly (there is no char buffer for the complete page).
+   *
+   * @param path
+   *          the page (in a folder or in an archive)
+   * @param metrics
+   *          collects the number of bytes read
+   * @return the reader, valid until the next call of a {@link PageReader} method in the current thread.
+   */
+  public static Reader openReader(Path path, GenerationMetrics metrics) throws IOException {
+    Buffers buffers = BUFFERS.get();
+    ByteBuffer bytes = readBytes(path, buffers);
+    metrics.addBytesRead(bytes.remaining());
+    return new DecodingReader(bytes, buffers.decoder());
+  }
+
+  /**
+   * @return the content of the file (in the byte buffer of the thread or in a buffer for this page if it is large),
+   *         ready to be read.
+   */
+  private static ByteBuffer readBytes(Path path, Buffers buffers) throws IOException {
+    SeekableByteChannel channel = Files.newByteChannel(path);
+    try {
+      long size = channel.size();
+      if (size >= Integer.MAX_VALUE) {
+        throw new IOException("File '" + SourceFolder.getAbsoluteName(path) + "' is too large (" + size + " bytes)");
+      }
+      ByteBuffer bytes = buffers.bytes((int) size + 1);
+      while (channel.read(bytes) >= 0) {
+        if (!bytes.hasRemaining()) {
+          //the file has grown since the size was computed.
+          bytes = buffers.grow(bytes);
+        }
+      }
+      bytes.flip();
+      return bytes;
+    }
+    finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Buffers and decoder of a thread.
+   */
+  private static class Buffers {
+    private ByteBuffer bytes;
+    private CharBuffer chars;
+    private CharsetDecoder decoder;
+
+    ByteBuffer bytes(int capacity) {
+      if (capacity > MAX_RETAINED_BUFFER_SIZE) {
+        return ByteBuffer.allocate(capacity);
+      }
+      if (bytes == null || bytes.capacity() < capacity) {
+        bytes = ByteBuffer.allocate(Math.max(capacity, INITIAL_BUFFER_SIZE));
+      }
+      bytes.clear();
+      return bytes;
+    }
+
+    ByteBuffer grow(ByteBuffer current) {
+      ByteBuffer larger = ByteBuffer.allocate(current.capacity() * 2);
+      current.flip();
+      larger.put(current);
+      if (larger.capacity() <= MAX_RETAINED_BUFFER_SIZE) {
+        bytes = larger;
+      }
+      return larger;
+    }
+
+    CharBuffer chars(int capacity) {
+      if (capacity > MAX_RETAINED_BUFFER_SIZE) {
+        return CharBuffer.allocate(capacity);
+      }
+      if (chars == null || chars.capacity() < capacity) {
+        chars = CharBuffer.allocate(Math.max(capacity, INITIAL_BUFFER_SIZE));
+      }
+      chars.clear();
+      return chars;
+    }
+
+    /**
+     * @return the UTF-8 decoder of the thread. Malformed input is replaced, like in {@link String#String(byte[],
+     *         java.nio.charset.Charset)}.
+     */
+    CharsetDecoder decoder() {
+      if (decoder == null) {
+        decoder = Charsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      }
+      decoder.reset();
+      return decoder;
+    }
+  }
+
+  /**
+   * Reader decoding a byte buffer on the fly, directly in the array of the caller.
+   */
+  private static class DecodingReader extends Reader {
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder;
+    private boolean flushed = false;
+
+    DecodingReader(ByteBuffer bytes, CharsetDecoder decoder) {
+      this.bytes = bytes;
+      this.decoder = decoder;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (flushed) {
+        return -1;
+      }
+      CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+      CoderResult result = decoder.decode(bytes, out, true);
+      if (result.isError()) {
+        throwException(result);
+      }
+      if (result.isUnderflow()) {
+        result = decoder.flush(out);
+        if (result.isUnderflow()) {
+          flushed = true;
+        }
+      }
+      int count = out.position() - off;
+      if (count == 0 && flushed) {
+        return -1;
+      }
+      return count;
+    }
+
+    private static void throwException(CoderResult result) throws IOException {
+      try {
+        result.throwException();
+      }
+      catch (CharacterCodingException e) {
+        throw new IOException(e);
+      }
+    }
+
+    @Override
+    public void close() {
+      //nothing to release, the buffers are reused by the thread.
+    }
+  }
+}
@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Measure;
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Stage;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Cache of the headers (and optionally of the values of {@link PageCollector}) of the pages shared by all the generations running in the same
+ * JVM, for example the modules of a parallel Maven build using the same documentation folder. An entry is identified
+ * by the real path of the page and the hash of its content: a page is read to be looked up, but it is parsed only
+ * once. The size of the cache is bounded, the entries are weighted with the approximate memory used by the headers, the
+ * links and the help contexts.
+ */
+public class SharedHeaderCache {
+
+  private static final HashFunction CONTENT_HASH = Hashing.murmur3_128();
+  private static SharedHeaderCache instance;
+
+  private final Cache<Key, Entry> cache;
+
+  SharedHeaderCache(long maximumWeight) {
+    cache = CacheBuilder.newBuilder()
+        .maximumWeight(maximumWeight)
+        .weigher(new Weigher<Key, Entry>() {
+          @Override
+          public int weigh(Key key, Entry entry) {
+            return entry.weight;
+          }
+        })
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * @param maximumWeight
+   *          approximate maximum size of the cache in bytes. It is only used when the cache is created (by the first
+   *          caller).
+   * @return the cache of the JVM
+   */
+  public static synchronized SharedHeaderCache getInstance(long maximumWeight) {
+    if (instance == null) {
+      instance = new SharedHeaderCache(maximumWeight);
+    }
+    return instance;
+  }
+
+  /**
+   * Read the page and extract its headers, or take them from the cache if a page with the same path and the same
+   * content was already parsed. If several threads look up the same page, it is parsed only once.
+   *
+   * @param extractor
+   *          engine used to extract the headers
+   * @param inFile
+   *          the page (in a folder or in an archive)
+   * @param metrics
+   *          collects the metrics (the page is counted as parsed or as taken from the cache)
+   * @param options
+   *          the values needed in addition to the headers
+   * @return headers, links and help contexts of the page (null if they are not collected)
+   */
+  public Entry readHeaders(HeaderExtractor extractor, Path inFile, GenerationMetrics metrics, PageCollector.Options options) throws IOException {
+    Measure read = metrics.start(Stage.READ);
+    CharBuffer content = PageReader.read(inFile, metrics);
+    metrics.end(read);
+    return getHeaders(extractor, inFile, content, metrics, options);
+  }
+
+  /**
+   * Extract the headers of a page that is already read, or take them from the cache if a page with the same path and
+   * the same content was already parsed.
+   *
+   * @param extractor
+   *          engine used to extract the headers
+   * @param inFile
+   *          the page (in a folder or in an archive)
+   * @param content
+   *          the content of the page
+   * @param metrics
+   *          collects the metrics (the page is counted as parsed or as taken from the cache)
+   * @param options
+   *          the values needed in addition to the headers
+   * @return headers, links and help contexts of the page (null if they are not collected)
+   */
+  public Entry getHeaders(final HeaderExtractor extractor, Path inFile, final CharSequence content, final GenerationMetrics metrics, final PageCollector.Options options) throws IOException {
+    Measure hash = metrics.start(Stage.READ);
+    Key key = new Key(SourceFolder.getAbsoluteName(inFile.toRealPath()), extractor, CONTENT_HASH.hashUnencodedChars(content));
+    metrics.end(hash);
+
+    final boolean[] parsed = new boolean[1];
+    Callable<Entry> parser = new Callable<Entry>() {
+      @Override
+      public Entry call() {
+        Entry entry = parse(extractor, content, metrics, options);
+        parsed[0] = true;
+        return entry;
+      }
+    };
+    Entry entry = get(key, parser);
+    if (!options.isCollected(entry.getLinks(), entry.getContexts())) {
+      //the page was cached without its links or its contexts (the ones that are cached are kept)
+      entry = parse(extractor, content, metrics, options.union(entry.getLinks(), entry.getContexts()));
+      parsed[0] = true;
+      cache.put(key, entry);
+    }
+    if (parsed[0]) {
+      metrics.addPageParsed(entry.getHeaders().size());
+    }
+    else {
+      metrics.addPageFromCache(entry.getHeaders().size());
+    }
+    return entry;
+  }
+
+  private static Entry parse(HeaderExtractor extractor, CharSequence content, GenerationMetrics metrics, PageCollector.Options options) {
+    PageCollector collector = new PageCollector(options);
+    List<PageHeader> headers = extractor.parseHeaders(content, metrics, collector);
+    return new Entry(headers, collector.buildLinks(), collector.buildContexts());
+  }
+
+  private Entry get(Key key, Callable<Entry> parser) throws IOException {
+    try {
+      return cache.get(key, parser);
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException("Error while parsing the page '" + key.path + "'", e.getCause());
+    }
+    catch (UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return hit and miss statistics since the cache was created
+   */
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  /**
+   * @return number of entries in the cache
+   */
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * @return the statistics of the cache, as a line of text
+   */
+  public String toSummary() {
+    CacheStats stats = cache.stats();
+    return String.format(Locale.ENGLISH, "Shared header cache: %d hits, %d misses (hit rate %.1f%%), %d evictions, %d entries",
+        stats.hitCount(), stats.missCount(), stats.hitRate() * 100, stats.evictionCount(), cache.size());
+  }
+
+  /**
+   * Headers, links and help contexts of a page.
+   */
+  public static class Entry {
+    private final List<PageHeader> headers;
+    private final PageLinks.Links links;
+    private final PageContexts.Declarations contexts;
+    private final int weight;
+
+    Entry(List<PageHeader> headers, PageLinks.Links links, PageContexts.Declarations contexts) {
+      this.headers = Collections.unmodifiableList(new ArrayList<PageHeader>(headers));
+      this.links = links;
+      this.contexts = contexts;
+      this.weight = computeWeight(headers, links, contexts);
+    }
+
+    public List<PageHeader> getHeaders() {
+      return headers;
+    }
+
+    public PageLinks.Links getLinks() {
+      return links;
+    }
+
+    public PageContexts.Declarations getContexts() {
+      return contexts;
+    }
+
+    private static int computeWeight(List<PageHeader> headers, PageLinks.Links links, PageContexts.Declarations contexts) {
+      long weight = 64;
+      for (PageHeader header : headers) {
+        weight += 64 + 2 * (length(header.getId()) + length(header.getText()));
+      }
+      if (links != null) {
+        weight += weight(links.getIds()) + weight(links.getDuplicateIds()) + weight(links.getHrefs());
+      }
+      if (contexts != null) {
+        weight += weight(contexts.getIds()) + weight(contexts.getTitles()) + weight(contexts.getDescriptions()) + weight(contexts.getAnchors());
+      }
+      return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private static long weight(String[] values) {
+      long weight = 16;
+      for (String value : values) {
+        weight += 40 + 2 * length(value);
+      }
+      return weight;
+    }
+
+    private static int length(String value) {
+      return value == null ? 0 : value.length();
+    }
+  }
+
+  private static class Key {
+    private final String path;
+    private final HeaderExtractor extractor;
+    private final HashCode contentHash;
+
+    Key(String path, HeaderExtractor extractor, HashCode contentHash) {
+      this.path = path;
+      this.extractor = extractor;
+      this.contentHash = contentHash;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * path.hashCode() + extractor.hashCode()) + contentHash.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return path.equals(other.path) && extractor == other.extractor && contentHash.equals(other.contentHash);
+    }
+  }
+}
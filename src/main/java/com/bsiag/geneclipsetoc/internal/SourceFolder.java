@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+
+/**
+ * Root folder of the pages: a folder, or a zip (or jar) archive that is read through a zip {@link FileSystem} without
+ * being extracted. In an archive, the root of the archive is the root folder.
+ */
+public class SourceFolder implements Closeable {
+
+  private final Path root;
+  private final FileSystem archiveFileSystem;
+
+  private SourceFolder(Path root, FileSystem archiveFileSystem) {
+    this.root = root;
+    this.archiveFileSystem = archiveFileSystem;
+  }
+
+  /**
+   * @param folderOrArchive
+   *          a folder or a zip archive
+   * @return the source folder (to be closed by the caller)
+   */
+  public static SourceFolder open(File folderOrArchive) throws IOException {
+    if (folderOrArchive.isFile()) {
+      FileSystem fileSystem = FileSystems.newFileSystem(folderOrArchive.toPath(), (ClassLoader) null);
+      return new SourceFolder(fileSystem.getPath("/"), fileSystem);
+    }
+    return new SourceFolder(folderOrArchive.toPath(), null);
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  /**
+   * @return true if the pages are read from an archive
+   */
+  public boolean isArchive() {
+    return archiveFileSystem != null;
+  }
+
+  /**
+   * @param path
+   *          a path of any file system
+   * @return the absolute path for a file of the default file system (as {@link File#getAbsolutePath()}), the URI
+   *         otherwise (the path in an archive is not unique).
+   */
+  public static String getAbsoluteName(Path path) {
+    if (path.getFileSystem() == FileSystems.getDefault()) {
+      return path.toAbsolutePath().toString();
+    }
+    return path.toUri().toString();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (archiveFileSystem != null) {
+      archiveFileSystem.close();
+    }
+  }
+}
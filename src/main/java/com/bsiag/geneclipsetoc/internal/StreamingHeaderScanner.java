@@ -0,0 +1,657 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsoup.nodes.Entities;
+
+/**
+ * Tokenizer extracting the headers (h1, h2, h3, h4, h5 or h6) of an HTML page without building a DOM.
+ * <p>
+ * Only the content of the headers is kept (level, id, id of a nested "a" tag and text). Everything else is read and
+ * dropped: tag names and attribute names are read in reusable buffers, attribute values and text are only
+ * materialized inside the headers.
+ * <p>
+ * The result is the same as {@link GenerateEclipseTocUtility#computeHeaders(org.jsoup.nodes.Document)} for well
+ * formed pages. For broken markup, the header ends at the next header or at the end of an enclosing block element.
+ * <p>
+ * Optionally the anchors and links of the page and the help contexts it declares are passed to a
+ * {@link PageCollector}.
+ */
+public class StreamingHeaderScanner {
+
+  private static final int EOF = -1;
+  private static final int NAME_BUFFER_SIZE = 16;
+  private static final int ATTRIBUTE_NAME_BUFFER_SIZE = 32;
+  private static final int PUSHBACK_SIZE = 64;
+  private static final int MAX_ENTITY_NAME_LENGTH = 32;
+
+  private static final String[] RAW_TEXT_TAGS = {"script", "style", "title", "textarea", "xmp", "iframe", "noembed", "noframes"};
+  private static final String[] VOID_TAGS = {"area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr"};
+  /**
+   * Indexes of the attributes declaring a help context (see {@link PageContexts}).
+   */
+  private static final int CONTEXT_ID = 0;
+  private static final int CONTEXT_TITLE = 1;
+  private static final int CONTEXT_DESCRIPTION = 2;
+  private static final int CONTEXT_ANCHOR = 3;
+  private static final int META_NAME = 4;
+  private static final int META_CONTENT = 5;
+
+  private static final String[] BLOCK_TAGS = {"html", "body", "div", "section", "article", "aside", "nav", "main", "header", "footer", "blockquote", "table", "tr", "td", "th", "ul", "ol", "li", "dl", "dt", "dd", "form"};
+
+  private final Reader reader;
+  private final PageLinks links;
+  private final PageContexts contexts;
+  private final String[] contextAttributes = new String[META_CONTENT + 1];
+  private final char[] pushback = new char[PUSHBACK_SIZE];
+  private int pushbackLength = 0;
+
+  private final char[] tagName = new char[NAME_BUFFER_SIZE];
+  private int tagNameLength;
+  private final char[] attributeName = new char[ATTRIBUTE_NAME_BUFFER_SIZE];
+  private int attributeNameLength;
+
+  private final List<PageHeader> headers = new ArrayList<PageHeader>();
+
+  /**
+   * Level of the current header, 0 if the scanner is not in a header.
+   */
+  private int headerLevel = 0;
+  private String headerId;
+  private String anchorId;
+  private final StringBuilder headerText = new StringBuilder();
+  private boolean pendingSpace;
+  private final List<String> openTagsInHeader = new ArrayList<String>();
+  private boolean lastTagWasSelfClosing;
+
+  private StreamingHeaderScanner(Reader reader, PageLinks links, PageContexts contexts) {
+    this.reader = reader;
+    this.links = links;
+    this.contexts = contexts;
+  }
+
+  /**
+   * Scan an HTML page, extract its headers and collect the values needed by the generation (links, help contexts).
+   *
+   * @param reader
+   *          the html content (the reader is not closed)
+   * @param collector
+   *          receives the values collected from the page
+   * @return headers in the order of the document
+   */
+  public static List<PageHeader> scan(Reader reader, PageCollector collector) throws IOException {
+    StreamingHeaderScanner scanner = new StreamingHeaderScanner(reader, collector.getLinks(), collector.getContexts());
+    scanner.scanDocument();
+    return scanner.headers;
+  }
+
+  private void scanDocument() throws IOException {
+    int c = read();
+    while (c != EOF) {
+      if (c == '<') {
+        scanMarkup();
+      }
+      else if (c == '&') {
+        if (isInHeader()) {
+          appendCharacterReference(false, null);
+        }
+      }
+      else if (isInHeader()) {
+        appendText((char) c);
+      }
+      c = read();
+    }
+    endHeader();
+  }
+
+  private void scanMarkup() throws IOException {
+    int c = read();
+    if (c == '!') {
+      scanDeclaration();
+    }
+    else if (c == '?') {
+      skipUntil('>');
+    }
+    else if (c == '/') {
+      c = read();
+      if (isLetter(c)) {
+        unread(c);
+        readTagName();
+        scanAttributes(false, false, false, false);
+        handleEndTag();
+      }
+      else {
+        unread(c);
+        skipUntil('>');
+      }
+    }
+    else if (isLetter(c)) {
+      unread(c);
+      readTagName();
+      handleStartTag();
+    }
+    else {
+      unread(c);
+      if (isInHeader()) {
+        appendText('<');
+      }
+    }
+  }
+
+  private void scanDeclaration() throws IOException {
+    if (consume("--")) {
+      skipUntil("-->");
+    }
+    else if (consume("[CDATA[")) {
+      int c = read();
+      while (c != EOF && !(c == ']' && consume("]>"))) {
+        if (isInHeader()) {
+          appendText((char) c);
+        }
+        c = read();
+      }
+    }
+    else {
+      skipUntil('>');
+    }
+  }
+
+  private void handleStartTag() throws IOException {
+    int level = headerLevel();
+    boolean isAnchor = isInHeader() && anchorId == null && tagNameIs("a");
+    if (level > 0) {
+      endHeader();
+      String id = scanAttributes(true, true, links != null, contexts != null);
+      headerLevel = level;
+      headerId = id;
+    }
+    else {
+      String id = scanAttributes(isAnchor, isAnchor, links != null, contexts != null);
+      if (isAnchor && id != null) {
+        anchorId = id;
+      }
+      if (isOneOf(RAW_TEXT_TAGS) && !lastTagWasSelfClosing) {
+        skipRawText();
+      }
+      else if (isInHeader()) {
+        if (tagNameIs("br")) {
+          appendText(' ');
+        }
+        else if (!isOneOf(VOID_TAGS) && !lastTagWasSelfClosing) {
+          openTagsInHeader.add(new String(tagName, 0, tagNameLength));
+        }
+      }
+    }
+  }
+
+  private void handleEndTag() {
+    if (!isInHeader()) {
+      return;
+    }
+    if (headerLevel() > 0) {
+      endHeader();
+      return;
+    }
+    for (int i = openTagsInHeader.size() - 1; i >= 0; i--) {
+      if (tagNameIs(openTagsInHeader.get(i))) {
+        while (openTagsInHeader.size() > i) {
+          openTagsInHeader.remove(openTagsInHeader.size() - 1);
+        }
+        return;
+      }
+    }
+    if (isOneOf(BLOCK_TAGS)) {
+      endHeader();
+    }
+  }
+
+  /**
+   * Read the attributes of a tag until the closing '&gt;'.
+   *
+   * @param captureId
+   *          if the value of the id attribute is needed
+   * @param decode
+   *          if the value needs to be decoded
+   * @param collectLinks
+   *          if the anchors and the links are passed to the {@link PageLinks} collector
+   * @param collectContexts
+   *          if a help context declared by the tag is passed to the {@link PageContexts} collector
+   * @return the id (if captured and not empty) or null
+   */
+  private String scanAttributes(boolean captureId, boolean decode, boolean collectLinks, boolean collectContexts) throws IOException {
+    String id = null;
+    lastTagWasSelfClosing = false;
+    int c = read();
+    while (c != EOF && c != '>') {
+      if (c == '/') {
+        lastTagWasSelfClosing = true;
+        c = read();
+      }
+      else if (isWhitespace(c)) {
+        c = read();
+      }
+      else {
+        lastTagWasSelfClosing = false;
+        unread(c);
+        readAttributeName();
+        c = skipWhitespace();
+        if (c == '=') {
+          boolean capture = captureId && attributeNameIs("id");
+          boolean link = collectLinks && isLinkAttribute();
+          int contextAttribute = collectContexts ? contextAttributeIndex() : -1;
+          boolean context = contextAttribute >= 0 && contextAttributes[contextAttribute] == null;
+          String value = readAttributeValue(capture || link || context, decode || link || context);
+          if (capture && value != null && value.length() > 0 && id == null) {
+            id = value;
+          }
+          if (link) {
+            addLink(value);
+          }
+          if (context) {
+            contextAttributes[contextAttribute] = value;
+          }
+          c = read();
+        }
+      }
+    }
+    if (collectContexts) {
+      addContext();
+    }
+    return id;
+  }
+
+  /**
+   * @return the index of the current attribute in {@link #contextAttributes}, or -1 if it does not declare a help
+   *         context (see {@link PageContexts})
+   */
+  private int contextAttributeIndex() {
+    if (attributeNameIs(PageContexts.CONTEXT_ATTRIBUTE)) {
+      return CONTEXT_ID;
+    }
+    if (attributeNameIs(PageContexts.TITLE_ATTRIBUTE)) {
+      return CONTEXT_TITLE;
+    }
+    if (attributeNameIs(PageContexts.DESCRIPTION_ATTRIBUTE)) {
+      return CONTEXT_DESCRIPTION;
+    }
+    if (attributeNameIs("id")) {
+      return CONTEXT_ANCHOR;
+    }
+    if (tagNameIs("meta")) {
+      if (attributeNameIs("name")) {
+        return META_NAME;
+      }
+      if (attributeNameIs("content")) {
+        return META_CONTENT;
+      }
+    }
+    return -1;
+  }
+
+  private void addContext() {
+    String id = contextAttributes[CONTEXT_ID];
+    if (id == null && contextAttributes[META_NAME] != null && PageContexts.META_NAME.equalsIgnoreCase(contextAttributes[META_NAME].trim())) {
+      id = contextAttributes[META_CONTENT];
+    }
+    if (id != null) {
+      contexts.add(id, contextAttributes[CONTEXT_TITLE], contextAttributes[CONTEXT_DESCRIPTION], contextAttributes[CONTEXT_ANCHOR]);
+    }
+    Arrays.fill(contextAttributes, null);
+  }
+
+  /**
+   * @return true if the current attribute is an anchor or a link (see {@link PageLinks})
+   */
+  private boolean isLinkAttribute() {
+    if (attributeNameIs("id")) {
+      return true;
+    }
+    if (attributeNameIs("name")) {
+      return tagNameIs("a");
+    }
+    return attributeNameIs("href") && (tagNameIs("a") || tagNameIs("area"));
+  }
+
+  private void addLink(String value) {
+    if (attributeNameIs("id")) {
+      links.addId(value);
+    }
+    else if (attributeNameIs("name")) {
+      links.addName(value);
+    }
+    else {
+      links.addHref(value);
+    }
+  }
+
+  private String readAttributeValue(boolean capture, boolean decode) throws IOException {
+    int c = skipWhitespace();
+    StringBuilder sb = capture ? new StringBuilder() : null;
+    if (c == '"' || c == '\'') {
+      int quote = c;
+      c = read();
+      while (c != EOF && c != quote) {
+        appendAttributeChar(sb, c, decode);
+        c = read();
+      }
+    }
+    else {
+      while (c != EOF && c != '>' && !isWhitespace(c)) {
+        appendAttributeChar(sb, c, decode);
+        c = read();
+      }
+      unread(c);
+    }
+    return sb == null ? null : sb.toString();
+  }
+
+  private void appendAttributeChar(StringBuilder sb, int c, boolean decode) throws IOException {
+    if (sb == null) {
+      return;
+    }
+    if (c == '&' && decode) {
+      appendCharacterReference(true, sb);
+    }
+    else {
+      sb.append((char) c);
+    }
+  }
+
+  /**
+   * Decode a character reference (the '&amp;' is already consumed). If no reference is found, '&amp;' is appended.
+   *
+   * @param inAttribute
+   *          if the reference is in an attribute value
+   * @param sb
+   *          the target for an attribute value, or null for the header text
+   */
+  private void appendCharacterReference(boolean inAttribute, StringBuilder sb) throws IOException {
+    String decoded = readCharacterReference(inAttribute);
+    if (decoded == null) {
+      decoded = "&";
+    }
+    for (int i = 0; i < decoded.length(); i++) {
+      if (sb == null) {
+        appendText(decoded.charAt(i));
+      }
+      else {
+        sb.append(decoded.charAt(i));
+      }
+    }
+  }
+
+  private String readCharacterReference(boolean inAttribute) throws IOException {
+    int c = read();
+    if (c == '#') {
+      return readNumericReference();
+    }
+    StringBuilder name = new StringBuilder();
+    while (isLetter(c) && name.length() < MAX_ENTITY_NAME_LENGTH) {
+      name.append((char) c);
+      c = read();
+    }
+    while (isDigit(c) && name.length() < MAX_ENTITY_NAME_LENGTH) {
+      name.append((char) c);
+      c = read();
+    }
+    String nameRef = name.toString();
+    boolean found = nameRef.length() > 0 && (Entities.isBaseNamedEntity(nameRef) || (Entities.isNamedEntity(nameRef) && c == ';'));
+    if (found && inAttribute && c != ';' && (isLetter(c) || isDigit(c) || c == '=' || c == '-' || c == '_')) {
+      found = false;
+    }
+    if (!found) {
+      unread(c);
+      unread(nameRef);
+      return null;
+    }
+    if (c != ';') {
+      unread(c);
+    }
+    return String.valueOf(Entities.getCharacterByName(nameRef).charValue());
+  }
+
+  private String readNumericReference() throws IOException {
+    int c = read();
+    boolean hex = c == 'x' || c == 'X';
+    int hexMarker = hex ? c : EOF;
+    if (hex) {
+      c = read();
+    }
+    StringBuilder digits = new StringBuilder();
+    while ((hex ? isHexDigit(c) : isDigit(c)) && digits.length() < MAX_ENTITY_NAME_LENGTH) {
+      digits.append((char) c);
+      c = read();
+    }
+    if (digits.length() == 0) {
+      unread(c);
+      if (hexMarker != EOF) {
+        unread(hexMarker);
+      }
+      unread('#');
+      return null;
+    }
+    if (c != ';') {
+      unread(c);
+    }
+    int codePoint;
+    try {
+      codePoint = Integer.parseInt(digits.toString(), hex ? 16 : 10);
+    }
+    catch (NumberFormatException e) {
+      codePoint = -1;
+    }
+    if (codePoint == -1 || (codePoint >= 0xD800 && codePoint <= 0xDFFF) || codePoint > Character.MAX_CODE_POINT) {
+      return "\uFFFD";
+    }
+    return new String(Character.toChars(codePoint));
+  }
+
+  private void skipRawText() throws IOException {
+    String name = new String(tagName, 0, tagNameLength);
+    int c = read();
+    while (c != EOF) {
+      if (c == '<' && consume("/")) {
+        c = read();
+        int i = 0;
+        while (i < name.length() && Character.toLowerCase(c) == name.charAt(i)) {
+          i++;
+          c = read();
+        }
+        if (i == name.length() && (c == '>' || c == '/' || isWhitespace(c))) {
+          unread(c);
+          skipUntil('>');
+          return;
+        }
+      }
+      else {
+        c = read();
+      }
+    }
+  }
+
+  private void appendText(char c) {
+    if (isWhitespace(c)) {
+      pendingSpace = headerText.length() > 0;
+    }
+    else {
+      if (pendingSpace) {
+        headerText.append(' ');
+        pendingSpace = false;
+      }
+      headerText.append(c);
+    }
+  }
+
+  private void endHeader() {
+    if (isInHeader()) {
+      String id = headerId != null ? headerId : anchorId;
+      headers.add(new PageHeader(headerLevel, id, headerText.toString()));
+    }
+    headerLevel = 0;
+    headerId = null;
+    anchorId = null;
+    headerText.setLength(0);
+    pendingSpace = false;
+    openTagsInHeader.clear();
+  }
+
+  private boolean isInHeader() {
+    return headerLevel > 0;
+  }
+
+  /**
+   * @return the level if the current tag name is a header tag (h1, h2, h3, h4, h5 or h6), 0 otherwise
+   */
+  private int headerLevel() {
+    if (tagNameLength == 2 && tagName[0] == 'h' && tagName[1] >= '1' && tagName[1] <= '6') {
+      return tagName[1] - '0';
+    }
+    return 0;
+  }
+
+  private void readTagName() throws IOException {
+    tagNameLength = readName(tagName);
+  }
+
+  private void readAttributeName() throws IOException {
+    attributeNameLength = readName(attributeName);
+  }
+
+  /**
+   * Read a tag or attribute name in lower case. Names longer than the buffer are truncated (they do not match any of
+   * the names this scanner is interested in).
+   */
+  private int readName(char[] buffer) throws IOException {
+    int length = 0;
+    int c = read();
+    while (c != EOF && c != '>' && c != '/' && c != '=' && !isWhitespace(c)) {
+      if (length < buffer.length) {
+        buffer[length] = Character.toLowerCase((char) c);
+      }
+      length++;
+      c = read();
+    }
+    unread(c);
+    return length;
+  }
+
+  private boolean tagNameIs(String name) {
+    return nameIs(tagName, tagNameLength, name);
+  }
+
+  private boolean attributeNameIs(String name) {
+    return nameIs(attributeName, attributeNameLength, name);
+  }
+
+  private boolean isOneOf(String[] names) {
+    for (String name : names) {
+      if (tagNameIs(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean nameIs(char[] buffer, int length, String name) {
+    if (length != name.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (buffer[i] != name.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int skipWhitespace() throws IOException {
+    int c = read();
+    while (isWhitespace(c)) {
+      c = read();
+    }
+    return c;
+  }
+
+  private void skipUntil(char end) throws IOException {
+    int c = read();
+    while (c != EOF && c != end) {
+      c = read();
+    }
+  }
+
+  private void skipUntil(String end) throws IOException {
+    int c = read();
+    while (c != EOF) {
+      if (c == end.charAt(0) && consume(end.substring(1))) {
+        return;
+      }
+      c = read();
+    }
+  }
+
+  /**
+   * Consume the expected characters if they are next in the stream, otherwise the stream is not modified.
+   */
+  private boolean consume(String expected) throws IOException {
+    for (int i = 0; i < expected.length(); i++) {
+      int c = read();
+      if (c != expected.charAt(i)) {
+        unread(c);
+        unread(expected.substring(0, i));
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int read() throws IOException {
+    if (pushbackLength > 0) {
+      pushbackLength--;
+      return pushback[pushbackLength];
+    }
+    return reader.read();
+  }
+
+  private void unread(int c) {
+    if (c != EOF) {
+      pushback[pushbackLength] = (char) c;
+      pushbackLength++;
+    }
+  }
+
+  private void unread(String s) {
+    for (int i = s.length() - 1; i >= 0; i--) {
+      unread(s.charAt(i));
+    }
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+  }
+
+  private static boolean isLetter(int c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isHexDigit(int c) {
+    return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+}
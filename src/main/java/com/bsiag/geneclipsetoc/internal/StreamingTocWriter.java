@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.mylyn.wikitext.core.util.DefaultXmlStreamWriter;
+import org.eclipse.mylyn.wikitext.core.util.FormattingXMLStreamWriter;
+import org.eclipse.mylyn.wikitext.core.util.XmlStreamWriter;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Writes the toc file while the headers are added, page after page, without keeping the outline: only the topics that
+ * are still open (at most one per level) are kept in memory. A topic is closed as soon as a header of the same or of a
+ * higher level is added. The output is the same as {@link EclipseTocWriter} for the outline built with
+ * {@link GenerateEclipseTocUtility#computeOutlineNodes(CompactOutline, List, String)}.
+ * <p>
+ * In the outline, the last known node of a level is never forgotten: a header can be attached to a topic that was
+ * already closed (for example a h4 following h3, h2 in this order). Such a toc can not be streamed, the generation
+ * fails in this case.
+ * <p>
+ * The toc is written in a temporary file that replaces the target file when the toc is complete ({@link #commit()}).
+ */
+public class StreamingTocWriter implements Closeable {
+
+  private static final int MAX_LEVEL = 6;
+  private static final String ROOT_ID = "id";
+
+  private final File outTocFile;
+  private final File tmpFile;
+  private final String helpPrefix;
+  private final Writer out;
+  private final XmlStreamWriter writer;
+  private final Node[] levelStack = new Node[MAX_LEVEL + 1];
+  private final List<Node> openNodes = new ArrayList<Node>();
+  private Node root;
+  private boolean closed = false;
+
+  /**
+   * @param outTocFile
+   *          the toc file
+   * @param helpPrefix
+   *          prefix of the href (can be null)
+   */
+  public StreamingTocWriter(File outTocFile, String helpPrefix) throws IOException {
+    this.outTocFile = outTocFile;
+    this.tmpFile = new File(outTocFile.getAbsoluteFile().getParentFile(), outTocFile.getName() + ".tmp");
+    this.helpPrefix = helpPrefix;
+    Files.createParentDirs(outTocFile);
+    this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), Charsets.UTF_8));
+    this.writer = new FormattingXMLStreamWriter(new DefaultXmlStreamWriter(out));
+  }
+
+  /**
+   * Add the headers of the next page of the toc.
+   *
+   * @param headers
+   *          the headers of the page, in the order of the document
+   * @param filePath
+   *          path of the page relative to the root folder
+   */
+  public void add(List<PageHeader> headers, String filePath) {
+    if (closed) {
+      throw new IllegalStateException("The toc file '" + outTocFile.getAbsolutePath() + "' is closed");
+    }
+    for (PageHeader header : headers) {
+      add(header, filePath);
+    }
+  }
+
+  private void add(PageHeader header, String filePath) {
+    int level = header.getLevel();
+    String title = GenerateEclipseTocUtility.sanitize(header.getText());
+    Node parent = findParent(level);
+    String id = header.getId();
+    Node node;
+    if (parent == null) {
+      node = new Node(null, 0, id == null ? ROOT_ID : id, filePath);
+      root = node;
+      writer.writeStartDocument("utf-8", "1.0");
+      writer.writeStartElement("toc");
+      writer.writeAttribute("topic", adjustForPrefix(filePath));
+      writer.writeAttribute("label", title);
+    }
+    else {
+      if (id == null) {
+        throw new IllegalStateException("id is not found for node h" + header.getLevel() + " '" + header.getText() + "'");
+      }
+      closeChildren(parent, header, filePath);
+      node = new Node(parent, level, id, filePath);
+      // the previous item is the previous sibling, or the parent for the first child (see OutlineItem#getPrevious()).
+      Node previous = parent.lastChild != null ? parent.lastChild : parent;
+      String file = filePath;
+      if (previous.parent != null && previous.filePath.equals(filePath)) {
+        file = file + "#" + id;
+      }
+      writer.writeStartElement("topic");
+      writer.writeAttribute("href", adjustForPrefix(file));
+      writer.writeAttribute("label", title);
+      parent.lastChild = node;
+    }
+    node.open = true;
+    openNodes.add(node);
+    levelStack[node.level] = node;
+  }
+
+  /**
+   * Find the parent node given a specific level (same as {@link CompactOutline#findParent(int)}).
+   */
+  private Node findParent(int level) {
+    int i = Math.min(level, MAX_LEVEL + 1) - 1;
+    while (i > 0 && levelStack[i] == null) {
+      i = i - 1;
+    }
+    return i < 0 ? null : levelStack[i];
+  }
+
+  /**
+   * Close the topics opened after the parent (they can not get any child).
+   */
+  private void closeChildren(Node parent, PageHeader header, String filePath) {
+    if (!parent.open) {
+      throw new IllegalStateException("The header h" + header.getLevel() + " '" + header.getText() + "' of the page '" + filePath + "' belongs to the topic '" + parent.id + "' of the page '" + parent.filePath + "' that is already written: this toc can not be generated with a bounded memory");
+    }
+    Node last = openNodes.get(openNodes.size() - 1);
+    while (last != parent) {
+      writer.writeEndElement(); // topic
+      last.open = false;
+      last.lastChild = null;
+      openNodes.remove(openNodes.size() - 1);
+      last = openNodes.get(openNodes.size() - 1);
+    }
+  }
+
+  /**
+   * @return true if no header was added yet
+   */
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  /**
+   * Close the open topics and move the toc to its target file.
+   */
+  public void commit() throws IOException {
+    if (closed) {
+      throw new IllegalStateException("The toc file '" + outTocFile.getAbsolutePath() + "' is closed");
+    }
+    if (root == null) {
+      throw new IllegalStateException("No header found in the html files");
+    }
+    closed = true;
+    try {
+      for (int i = openNodes.size() - 1; i > 0; i--) {
+        writer.writeEndElement(); // topic
+      }
+      writer.writeEndElement(); // toc
+      writer.writeEndDocument();
+      writer.flush();
+      out.flush();
+    }
+    finally {
+      out.close();
+    }
+    Files.move(tmpFile, outTocFile);
+    //the toc is not split in this mode
+    EclipseTocWriter.deleteSubTocFiles(outTocFile);
+  }
+
+  /**
+   * Close the toc without replacing the target file (if {@link #commit()} was not called).
+   */
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      try {
+        out.close();
+      }
+      finally {
+        tmpFile.delete();
+      }
+    }
+  }
+
+  private String adjustForPrefix(String file) {
+    if (helpPrefix != null) {
+      if (helpPrefix.endsWith("/")) {
+        return helpPrefix + file;
+      }
+      return helpPrefix + "/" + file;
+    }
+    return file;
+  }
+
+  /**
+   * A topic that can still receive children (or the last known topic of a level).
+   */
+  private static class Node {
+    private final Node parent;
+    private final int level;
+    private final String id;
+    private final String filePath;
+    private Node lastChild;
+    private boolean open;
+
+    Node(Node parent, int level, String id, String filePath) {
+      this.parent = parent;
+      this.level = level;
+      this.id = id;
+      this.filePath = filePath;
+    }
+  }
+}
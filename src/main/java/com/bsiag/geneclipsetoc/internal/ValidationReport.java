@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Problems found in the pages (see {@link LinkValidator} and {@link GenerateOptions#isCollectAllErrors()}), grouped by
+ * page. An error (a missing file or a missing header id) always fails the generation, the other problems only with
+ * {@link GenerateOptions#isFailOnValidationError()}. The problems can be added by several threads.
+ */
+public class ValidationReport {
+
+  private final Map<String, List<String>> problemsByFile = new TreeMap<String, List<String>>();
+  private final Map<String, Boolean> checkedFiles = new TreeMap<String, Boolean>();
+  private int size = 0;
+  private int errorCount = 0;
+
+  /**
+   * @param filePath
+   *          path of the page relative to the root folder
+   * @param problem
+   *          description of the problem
+   */
+  public synchronized void add(String filePath, String problem) {
+    addProblem(filePath, problem);
+  }
+
+  /**
+   * Add a problem that prevents the generation of the toc file.
+   *
+   * @param filePath
+   *          path of the page relative to the root folder
+   * @param problem
+   *          description of the problem
+   */
+  public synchronized void addError(String filePath, String problem) {
+    if (addProblem(filePath, problem)) {
+      errorCount++;
+    }
+  }
+
+  /**
+   * @return false if the same problem is already reported for this page
+   */
+  private boolean addProblem(String filePath, String problem) {
+    List<String> problems = problemsByFile.get(filePath);
+    if (problems == null) {
+      problems = new ArrayList<String>();
+      problemsByFile.put(filePath, problems);
+    }
+    else if (problems.contains(problem)) {
+      return false;
+    }
+    problems.add(problem);
+    size++;
+    return true;
+  }
+
+  public synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return number of problems
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * @return true if a problem was added with {@link #addError(String, String)}
+   */
+  public synchronized boolean hasErrors() {
+    return errorCount > 0;
+  }
+
+  /**
+   * @return the problems of each page, sorted by page
+   */
+  public synchronized Map<String, List<String>> getProblems() {
+    Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+    for (Map.Entry<String, List<String>> e : problemsByFile.entrySet()) {
+      result.put(e.getKey(), Collections.unmodifiableList(new ArrayList<String>(e.getValue())));
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  /**
+   * Record a file that is not a page of the generation and whose existence was checked (the target of a link, see
+   * {@link LinkValidator}): the report is only valid as long as the file is not created or deleted.
+   *
+   * @param filePath
+   *          path of the file relative to the root folder
+   * @param exists
+   *          true if the file exists
+   */
+  public synchronized void addCheckedFile(String filePath, boolean exists) {
+    checkedFiles.put(filePath, exists);
+  }
+
+  /**
+   * @return the files checked with {@link #addCheckedFile(String, boolean)}, sorted by path
+   */
+  public synchronized Map<String, Boolean> getCheckedFiles() {
+    return Collections.unmodifiableMap(new LinkedHashMap<String, Boolean>(checkedFiles));
+  }
+
+  /**
+   * @return the problems as lines of text: the path of each page followed by its problems
+   */
+  public synchronized List<String> toLines() {
+    List<String> lines = new ArrayList<String>();
+    for (Map.Entry<String, List<String>> e : problemsByFile.entrySet()) {
+      lines.add(e.getKey() + ":");
+      for (String problem : e.getValue()) {
+        lines.add("  - " + problem);
+      }
+    }
+    return lines;
+  }
+}
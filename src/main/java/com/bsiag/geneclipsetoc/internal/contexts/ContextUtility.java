@@ -10,9 +10,13 @@
  ******************************************************************************/
 package com.bsiag.geneclipsetoc.internal.contexts;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.List;
 
 import com.google.common.base.Splitter;
+import com.google.common.escape.Escaper;
 import com.google.common.xml.XmlEscapers;
 
 /**
@@ -24,69 +28,89 @@ public class ContextUtility {
    */
   private static final String INDENTATION = "    ";
   private static final String NEW_LINE = "\n";
+  private static final Splitter LINE_SPLITTER = Splitter.onPattern("\r?\n");
+  private static final Escaper ESCAPER = XmlEscapers.xmlAttributeEscaper();
 
   private ContextUtility() {
   }
 
   public static String toXml(List<Context> contexts) {
-    StringBuilder sb = new StringBuilder();
-    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-    sb.append(NEW_LINE);
-    sb.append("<?NLS TYPE=\"org.eclipse.help.contexts\"?>");
-    sb.append(NEW_LINE);
-    sb.append("<contexts>");
+    StringWriter out = new StringWriter();
+    try {
+      write(contexts, out);
+    }
+    catch (IOException e) {
+      //not expected with a StringWriter
+      throw new IllegalStateException(e);
+    }
+    return out.toString();
+  }
+
+  /**
+   * Write the contexts file content, context after context.
+   *
+   * @param contexts
+   *          the contexts (can be null)
+   * @param out
+   *          the target (not closed)
+   */
+  public static void write(Iterable<Context> contexts, Writer out) throws IOException {
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    out.write(NEW_LINE);
+    out.write("<?NLS TYPE=\"org.eclipse.help.contexts\"?>");
+    out.write(NEW_LINE);
+    out.write("<contexts>");
     if (contexts != null) {
       for (Context context : contexts) {
-        sb.append(NEW_LINE);
-        sb.append(INDENTATION);
-        sb.append("<context");
-        appendAttr(sb, "id", context.getId());
-        appendAttr(sb, "title", context.getTitle());
-        sb.append(">");
+        out.write(NEW_LINE);
+        out.write(INDENTATION);
+        out.write("<context");
+        appendAttr(out, "id", context.getId());
+        appendAttr(out, "title", context.getTitle());
+        out.write(">");
         if (context.getDescription() != null && context.getDescription().length() > 0) {
-          sb.append(NEW_LINE);
-          sb.append(INDENTATION);
-          sb.append(INDENTATION);
-          sb.append("<description>");
-          Splitter splitter = Splitter.onPattern("\r?\n");
+          out.write(NEW_LINE);
+          out.write(INDENTATION);
+          out.write(INDENTATION);
+          out.write("<description>");
           boolean needNewLine = false;
-          for (String line : splitter.split(context.getDescription())) {
+          for (String line : LINE_SPLITTER.split(context.getDescription())) {
             if (needNewLine) {
-              sb.append(NEW_LINE);
+              out.write(NEW_LINE);
             }
-            sb.append(XmlEscapers.xmlAttributeEscaper().escape(line));
+            out.write(ESCAPER.escape(line));
             needNewLine = true;
           }
-          sb.append("</description>");
+          out.write("</description>");
         }
         if (context.getTopics() != null) {
           for (Topic topic : context.getTopics()) {
-            sb.append(NEW_LINE);
-            sb.append(INDENTATION);
-            sb.append(INDENTATION);
-            sb.append("<topic");
-            appendAttr(sb, "label", topic.getLabel());
-            appendAttr(sb, "href", topic.getHref());
-            sb.append("/>");
+            out.write(NEW_LINE);
+            out.write(INDENTATION);
+            out.write(INDENTATION);
+            out.write("<topic");
+            appendAttr(out, "label", topic.getLabel());
+            appendAttr(out, "href", topic.getHref());
+            out.write("/>");
           }
         }
-        sb.append(NEW_LINE);
-        sb.append(INDENTATION);
-        sb.append("</context>");
+        out.write(NEW_LINE);
+        out.write(INDENTATION);
+        out.write("</context>");
       }
     }
-    sb.append(NEW_LINE);
-    sb.append("</contexts>");
-    return sb.toString();
+    out.write(NEW_LINE);
+    out.write("</contexts>");
+    out.flush();
   }
 
-  private static void appendAttr(StringBuilder sb, String attribute, String value) {
+  private static void appendAttr(Writer out, String attribute, String value) throws IOException {
     if (value != null && value.length() > 0) {
-      sb.append(" ");
-      sb.append(attribute);
-      sb.append("=\"");
-      sb.append(XmlEscapers.xmlAttributeEscaper().escape(value));
-      sb.append("\"");
+      out.write(" ");
+      out.write(attribute);
+      out.write("=\"");
+      out.write(ESCAPER.escape(value));
+      out.write("\"");
     }
   }
 }
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.maven;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * A book generated by {@link GenerateEclipseTocMojo}: the pages and the output files. The parameters have the same
+ * meaning as the parameters of the mojo with the same name.
+ */
+public class Book {
+  static final String SOURCE_FOLDER = "sourceFolder";
+  static final String PAGES = "pages";
+  static final String PAGES_LIST_FILE = "pagesListFile";
+  static final String INCLUDES = "includes";
+  static final String EXCLUDES = "excludes";
+  static final String HELP_CONTEXTS = "helpContexts";
+  static final String HELP_PREFIX = "helpPrefix";
+  static final String OUTPUT_TOC_FILE = "outputTocFile";
+  static final String OUTPUT_CONTEXTS_FILE = "outputContextsFile";
+  static final String DOC_ZIP_FILE = "docZipFile";
+
+  /**
+   * Source folder (if not set, the <code>sourceFolder</code> of the mojo is used).
+   */
+  @Parameter(property = SOURCE_FOLDER)
+  private File sourceFolder;
+
+  @Parameter(property = PAGES)
+  private List<String> pages;
+
+  @Parameter(property = PAGES_LIST_FILE)
+  private File pagesListFile;
+
+  @Parameter(property = INCLUDES)
+  private List<String> includes;
+
+  @Parameter(property = EXCLUDES)
+  private List<String> excludes;
+
+  @Parameter(property = HELP_CONTEXTS)
+  private List<HelpContext> helpContexts;
+
+  @Parameter(property = HELP_PREFIX)
+  private String helpPrefix;
+
+  @Parameter(property = OUTPUT_TOC_FILE, required = true)
+  private File outputTocFile;
+
+  /**
+   * Output contexts file (required if the book has help contexts).
+   */
+  @Parameter(property = OUTPUT_CONTEXTS_FILE)
+  private File outputContextsFile;
+
+  /**
+   * Archive of the pages (required if <code>writeDocZip</code> is set).
+   */
+  @Parameter(property = DOC_ZIP_FILE)
+  private File docZipFile;
+
+  public Book() {
+  }
+
+  Book(File sourceFolder, List<String> pages, File pagesListFile, List<String> includes, List<String> excludes, List<HelpContext> helpContexts, String helpPrefix, File outputTocFile, File outputContextsFile, File docZipFile) {
+    this.sourceFolder = sourceFolder;
+    this.pages = pages;
+    this.pagesListFile = pagesListFile;
+    this.includes = includes;
+    this.excludes = excludes;
+    this.helpContexts = helpContexts;
+    this.helpPrefix = helpPrefix;
+    this.outputTocFile = outputTocFile;
+    this.outputContextsFile = outputContextsFile;
+    this.docZipFile = docZipFile;
+  }
+
+  public File getSourceFolder() {
+    return sourceFolder;
+  }
+
+  void setSourceFolder(File sourceFolder) {
+    this.sourceFolder = sourceFolder;
+  }
+
+  public List<String> getPages() {
+    return pages;
+  }
+
+  public File getPagesListFile() {
+    return pagesListFile;
+  }
+
+  public List<String> getIncludes() {
+    return includes;
+  }
+
+  public List<String> getExcludes() {
+    return excludes;
+  }
+
+  public List<HelpContext> getHelpContexts() {
+    return helpContexts;
+  }
+
+  public String getHelpPrefix() {
+    return helpPrefix;
+  }
+
+  public File getOutputTocFile() {
+    return outputTocFile;
+  }
+
+  public File getOutputContextsFile() {
+    return outputContextsFile;
+  }
+
+  public File getDocZipFile() {
+    return docZipFile;
+  }
+}
@@ -12,7 +12,15 @@ package com.bsiag.geneclipsetoc.maven;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -20,7 +28,20 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
+import com.bsiag.geneclipsetoc.internal.DiscoveredPage;
+import com.bsiag.geneclipsetoc.internal.EclipseTocWriter;
 import com.bsiag.geneclipsetoc.internal.GenerateEclipseTocUtility;
+import com.bsiag.geneclipsetoc.internal.GenerateOptions;
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics;
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Measure;
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Stage;
+import com.bsiag.geneclipsetoc.internal.HeaderExtractor;
+import com.bsiag.geneclipsetoc.internal.InputFingerprint;
+import com.bsiag.geneclipsetoc.internal.OutlineCache;
+import com.bsiag.geneclipsetoc.internal.PageDiscovery;
+import com.bsiag.geneclipsetoc.internal.SharedHeaderCache;
+import com.bsiag.geneclipsetoc.internal.SourceFolder;
+import com.bsiag.geneclipsetoc.internal.ValidationReport;
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
 
@@ -30,13 +51,38 @@ public class GenerateEclipseTocMojo extends AbstractMojo {
   private static final String SOURCE_FOLDER = "sourceFolder";
   private static final String PAGES = "pages";
   private static final String PAGES_LIST_FILE = "pagesListFile";
+  private static final String INCLUDES = "includes";
+  private static final String EXCLUDES = "excludes";
   private static final String HELP_CONTEXTS = "helpContexts";
   private static final String HELP_PREFIX = "helpPrefix";
   private static final String OUTPUT_TOC_FILE = "outputTocFile";
   private static final String OUTPUT_CONTEXTS_FILE = "outputContextsFile";
+  private static final String TOC_SPLIT_LEVEL = "tocSplitLevel";
+  private static final String WRITE_DOC_ZIP = "writeDocZip";
+  private static final String DOC_ZIP_FILE = "docZipFile";
+  private static final String VALIDATE_LINKS = "validateLinks";
+  private static final String FAIL_ON_VALIDATION_ERROR = "failOnValidationError";
+  private static final String COLLECT_ALL_ERRORS = "collectAllErrors";
+  private static final String HARVEST_HELP_CONTEXTS = "harvestHelpContexts";
+  private static final String THREADS = "threads";
+  private static final String IO_THREADS = "ioThreads";
+  private static final String PAGE_WINDOW = "pageWindow";
+  private static final String HEADER_EXTRACTOR = "headerExtractor";
+  private static final String USE_CACHE = "useCache";
+  private static final String CACHE_FILE = "cacheFile";
+  private static final String USE_SHARED_CACHE = "useSharedCache";
+  private static final String SHARED_CACHE_SIZE = "sharedCacheSize";
+  private static final String UP_TO_DATE_CHECK = "upToDateCheck";
+  static final String FINGERPRINT_SUFFIX = ".fingerprint";
+  private static final String LOG_METRICS = "logMetrics";
+  private static final String SLOWEST_PAGES_COUNT = "slowestPagesCount";
+  private static final String WRITE_METRICS_REPORT = "writeMetricsReport";
+  private static final String METRICS_REPORT_FILE = "metricsReportFile";
+  private static final String BOOKS = "books";
 
   /**
-   * Source folder.
+   * Source folder. It can also be a zip (or jar) archive: the pages are read from the archive without extracting it
+   * (the root of the archive is the source folder).
    *
    * @parameter expression="${basedir}/src/main/docs"
    * @required
@@ -58,6 +104,21 @@ public class GenerateEclipseTocMojo extends AbstractMojo {
   @Parameter(property = PAGES_LIST_FILE)
   protected File pagesListFile;
 
+  /**
+   * Glob patterns (relative to {@link #sourceFolder}, for example <code>**&#47;*.html</code>) of the pages that are
+   * discovered in the source folder. The discovered pages are sorted by path (the pages of a folder before the pages of
+   * its sub-folders) and added after the pages defined with {@link #pages} or {@link #pagesListFile}.
+   */
+  @Parameter(property = INCLUDES)
+  protected List<String> includes;
+
+  /**
+   * Glob patterns of the pages or folders (for example <code>internal&#47;**</code>) excluded from the discovery (see
+   * {@link #includes}).
+   */
+  @Parameter(property = EXCLUDES)
+  protected List<String> excludes;
+
   /**
    * List of the contexts that needs to be generated.
    */
@@ -86,36 +147,456 @@ public class GenerateEclipseTocMojo extends AbstractMojo {
    * @required
    */
   @Parameter(property = OUTPUT_CONTEXTS_FILE, required = true, defaultValue = "${project.build.directory}/generated-contexts-file/contexts.xml")
-  private File outputContextsFile;
+  protected File outputContextsFile;
+
+  /**
+   * If greater than 0, the children of the topics of this depth (1 for the topics directly under the book) are written
+   * in sub toc files (<code>toc-1.xml</code>, <code>toc-2.xml</code> ... next to {@link #outputTocFile}), linked from
+   * the toc file with <code>&lt;link toc="..."/&gt;</code>. Eclipse Help loads the sub toc files when needed.
+   */
+  @Parameter(property = TOC_SPLIT_LEVEL, defaultValue = "0")
+  protected int tocSplitLevel;
+
+  /**
+   * If true, the pages are packaged in {@link #docZipFile} while they are read (each page is read only once). The
+   * entries have the same path as the href in the toc file. Only the pages are packaged, not the other resources
+   * (images, style sheets).
+   */
+  @Parameter(property = WRITE_DOC_ZIP, defaultValue = "false")
+  protected boolean writeDocZip;
+
+  /**
+   * Archive of the pages (used when {@link #writeDocZip} is set). Eclipse Help reads the pages from a
+   * <code>doc.zip</code> file located at the root of the plug-in.
+   */
+  @Parameter(property = DOC_ZIP_FILE, defaultValue = "${project.build.directory}/doc.zip")
+  protected File docZipFile;
+
+  /**
+   * If true, the anchors and the links of the pages are collected while the pages are parsed and the links between
+   * the pages are validated: missing files, missing anchors and ids used several times in a page are reported as
+   * warnings. External links are not checked.
+   */
+  @Parameter(property = VALIDATE_LINKS, defaultValue = "false")
+  protected boolean validateLinks;
+
+  /**
+   * If true, the build fails when the validation (see {@link #validateLinks}) finds a problem. The toc file is not
+   * written in this case.
+   */
+  @Parameter(property = FAIL_ON_VALIDATION_ERROR, defaultValue = "false")
+  protected boolean failOnValidationError;
+
+  /**
+   * If true, all the pages are parsed before the build fails: the missing files, the headers without id and the empty
+   * headers of all the pages are logged together, grouped by page. If false, the build fails on the first error.
+   */
+  @Parameter(property = COLLECT_ALL_ERRORS, defaultValue = "false")
+  protected boolean collectAllErrors;
+
+  /**
+   * If true, the help contexts declared in the pages are collected while the pages are parsed and written to the
+   * contexts file, merged with the {@link #helpContexts}. A page declares that it is a topic of a context with a
+   * <code>data-help-context="my_context_id"</code> attribute (optionally with <code>data-help-context-title</code> and
+   * <code>data-help-context-description</code> on the same element) or with a
+   * <code>&lt;meta name="help-context" content="my_context_id"&gt;</code> element.
+   */
+  @Parameter(property = HARVEST_HELP_CONTEXTS, defaultValue = "false")
+  protected boolean harvestHelpContexts;
+
+  /**
+   * Number of threads used to read and parse the HTML pages. With 1 the pages are parsed sequentially.
+   * The generated files do not depend on this value.
+   */
+  @Parameter(property = THREADS, defaultValue = "1")
+  protected int threads;
+
+  /**
+   * If greater than 0, the HTML pages are checked and read concurrently, ahead of the parsing (for file systems with a
+   * high latency, for example NFS). Virtual threads are used if the JVM supports them, otherwise a pool of
+   * <code>ioThreads</code> threads. At most <code>ioThreads</code> pages are read ahead of the parsing.
+   */
+  @Parameter(property = IO_THREADS, defaultValue = "0")
+  protected int ioThreads;
+
+  /**
+   * If greater than 0, the toc file is generated with a bounded memory, for very large pages lists: at most
+   * <code>pageWindow</code> pages are read and parsed ahead of the toc, the toc file is written while the pages are
+   * parsed and the headers of the pages are not kept. {@link #useCache} is ignored in this mode; {@link #tocSplitLevel},
+   * {@link #ioThreads}, {@link #validateLinks}, {@link #collectAllErrors} and
+   * {@link #harvestHelpContexts} can not be used. The generation fails if a header belongs to a
+   * topic that is already written (for example a h4 following h3, h2 in this order).
+   */
+  @Parameter(property = PAGE_WINDOW, defaultValue = "0")
+  protected int pageWindow;
+
+  /**
+   * Engine used to extract the headers of the HTML pages:
+   * <ul>
+   * <li><code>JSOUP</code>: each page is parsed in a complete DOM.</li>
+   * <li><code>STREAMING</code>: each page is scanned as a stream, only the headers are kept in memory.</li>
+   * </ul>
+   */
+  @Parameter(property = HEADER_EXTRACTOR, defaultValue = "JSOUP")
+  protected HeaderExtractor headerExtractor;
+
+  /**
+   * If true, the headers extracted from each page are kept in {@link #cacheFile}. Pages that are not modified between
+   * two builds (same size and same modification time) are not read again. The cache is ignored after an upgrade of the
+   * plugin; a page modified during the two seconds before the cache was saved is always read again.
+   */
+  @Parameter(property = USE_CACHE, defaultValue = "false")
+  protected boolean useCache;
+
+  /**
+   * File containing the headers of each page (used when {@link #useCache} is set).
+   */
+  @Parameter(property = CACHE_FILE, defaultValue = "${project.build.directory}/geneclipsetoc/outline-cache.bin")
+  protected File cacheFile;
+
+  /**
+   * If true, the headers of the pages are also kept in a cache shared by all the executions of the plugin in the same
+   * JVM (for example the modules of a parallel build using the same documentation folder). The pages are identified by
+   * their path and their content: a page used by several modules is parsed only once.
+   */
+  @Parameter(property = USE_SHARED_CACHE, defaultValue = "false")
+  protected boolean useSharedCache;
+
+  /**
+   * Approximate maximum size in MB of the shared cache (used when {@link #useSharedCache} is set). The least recently
+   * used pages are removed first. The size is defined by the first execution using the shared cache.
+   */
+  @Parameter(property = SHARED_CACHE_SIZE, defaultValue = "64")
+  protected int sharedCacheSize;
+
+  /**
+   * If true, the generation is skipped when the plugin version, the configuration and the pages are unchanged since the
+   * last generation.
+   * The fingerprint of the inputs is stored next to {@link #outputTocFile}.
+   */
+  @Parameter(property = UP_TO_DATE_CHECK, defaultValue = "true")
+  protected boolean upToDateCheck;
+
+  /**
+   * If true, a summary of the generation metrics (wall and thread time per stage, pages, bytes read, slowest pages) is
+   * logged.
+   */
+  @Parameter(property = LOG_METRICS, defaultValue = "false")
+  protected boolean logMetrics;
+
+  /**
+   * Number of slowest pages reported in the metrics.
+   */
+  @Parameter(property = SLOWEST_PAGES_COUNT, defaultValue = "10")
+  protected int slowestPagesCount;
+
+  /**
+   * If true, the generation metrics are written in {@link #metricsReportFile} (JSON).
+   */
+  @Parameter(property = WRITE_METRICS_REPORT, defaultValue = "false")
+  protected boolean writeMetricsReport;
+
+  /**
+   * JSON report containing the generation metrics (used when {@link #writeMetricsReport} is set).
+   */
+  @Parameter(property = METRICS_REPORT_FILE, defaultValue = "${project.build.directory}/geneclipsetoc/metrics.json")
+  protected File metricsReportFile;
+
+  /**
+   * Books generated in this execution. If set, the pages and the output files are defined for each book (and not with
+   * the parameters of the mojo, except {@link #sourceFolder} that is used as default). The books share the threads
+   * and the cache: a page used by several books is read and parsed only once.
+   */
+  @Parameter(property = BOOKS)
+  protected List<Book> books;
 
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
+    //the metrics are only measured when they are logged or written
+    GenerationMetrics metrics = logMetrics || writeMetricsReport ? new GenerationMetrics(slowestPagesCount) : GenerationMetrics.DISABLED;
+    long startNanos = System.nanoTime();
+    List<BookGeneration> generations = new ArrayList<BookGeneration>();
+    Map<File, SourceFolder> sourceFolders = new HashMap<File, SourceFolder>();
+    try {
+      for (Book book : getBooks()) {
+        GenerateOptions options = createOptions(book);
+        options.setMetrics(metrics);
+        Path root = openSourceFolder(book.getSourceFolder(), sourceFolders).getRoot();
+        BookGeneration generation = new BookGeneration(book, root, readPagesList(book, root, options), options);
+        if (upToDateCheck) {
+          generation.fingerprintComputedAt = System.currentTimeMillis();
+          generation.fingerprint = InputFingerprint.compute(root, generation.pages, book.getHelpPrefix(), book.getOutputTocFile(), book.getOutputContextsFile(), book.getHelpContexts(), options);
+          if (InputFingerprint.isUpToDate(generation.fingerprintFile, generation.fingerprint, root, generation.pages, book.getOutputTocFile(), book.getOutputContextsFile(), book.getHelpContexts(), options)) {
+            getLog().info("Skipped toc file generation, the pages and the configuration are unchanged since the last generation (see " + generation.fingerprintFile + "): " + book.getOutputTocFile());
+            continue;
+          }
+        }
+        generations.add(generation);
+      }
+      if (generations.isEmpty()) {
+        return;
+      }
+
+      //the books share the threads and the headers of the pages
+      Measure loadCache = metrics.start(Stage.READ);
+      OutlineCache cache = useCache ? OutlineCache.load(cacheFile, headerExtractor) : OutlineCache.createInMemory(headerExtractor);
+      metrics.end(loadCache);
+      SharedHeaderCache sharedCache = getSharedHeaderCache();
+      ExecutorService executor = GenerateEclipseTocUtility.createExecutor(threads);
+      try {
+        for (BookGeneration generation : generations) {
+          generation.options.setExecutor(executor);
+          if (pageWindow == 0) {
+            generation.options.setOutlineCache(cache);
+          }
+          generation.options.setSharedHeaderCache(sharedCache);
+          generateBook(generation);
+        }
+      }
+      finally {
+        executor.shutdownNow();
+      }
+      Measure saveCache = metrics.start(Stage.WRITE);
+      cache.save();
+      metrics.end(saveCache);
+      metrics.setTotalNanos(System.nanoTime() - startNanos);
+      if (writeMetricsReport) {
+        metrics.writeJson(metricsReportFile);
+      }
+    }
+    catch (IOException e) {
+      throw new MojoExecutionException("Error while generating the toc file", e);
+    }
+    finally {
+      for (SourceFolder sourceFolder : sourceFolders.values()) {
+        close(sourceFolder);
+      }
+    }
+    if (logMetrics) {
+      for (String line : metrics.toSummary()) {
+        getLog().info(line);
+      }
+      if (useSharedCache) {
+        getLog().info(getSharedHeaderCache().toSummary());
+      }
+    }
+  }
+
+  /**
+   * @return the cache of the JVM, or null if {@link #useSharedCache} is not set
+   */
+  protected SharedHeaderCache getSharedHeaderCache() {
+    if (!useSharedCache) {
+      return null;
+    }
+    return SharedHeaderCache.getInstance(sharedCacheSize * 1024L * 1024L);
+  }
+
+  /**
+   * Open a source folder (a folder or an archive), once per execution.
+   */
+  private static SourceFolder openSourceFolder(File folder, Map<File, SourceFolder> sourceFolders) throws MojoFailureException {
+    SourceFolder result = sourceFolders.get(folder);
+    if (result == null) {
+      result = openSourceFolder(folder);
+      sourceFolders.put(folder, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return the source folder, to be closed with {@link #close(SourceFolder)}
+   */
+  protected static SourceFolder openSourceFolder(File folder) throws MojoFailureException {
+    try {
+      return SourceFolder.open(folder);
+    }
+    catch (IOException e) {
+      throw new MojoFailureException("Error while opening the archive defined in <" + SOURCE_FOLDER + ">: " + folder, e);
+    }
+  }
+
+  protected void close(SourceFolder sourceFolder) {
+    try {
+      sourceFolder.close();
+    }
+    catch (IOException e) {
+      getLog().debug("Error while closing the source archive", e);
+    }
+  }
+
+  private void generateBook(BookGeneration generation) throws IOException, MojoFailureException {
+    Book book = generation.book;
+    if (generation.fingerprintFile.exists()) {
+      generation.fingerprintFile.delete();
+    }
+    try {
+      GenerateEclipseTocUtility.generate(generation.root, generation.pages, book.getHelpPrefix(), book.getOutputTocFile(), book.getOutputContextsFile(), book.getHelpContexts(), generation.options);
+    }
+    catch (IllegalStateException e) {
+      ValidationReport report = generation.options.getValidationReport();
+      if (report != null && (report.hasErrors() || (failOnValidationError && !report.isEmpty()))) {
+        for (String line : report.toLines()) {
+          getLog().error(line);
+        }
+        throw new MojoFailureException(report.size() + " problem(s) found in the pages of the toc file " + book.getOutputTocFile() + " (see the errors above)");
+      }
+      throw e;
+    }
+    logValidationReport(book, generation.options);
+    if (generation.fingerprint != null) {
+      int subTocFiles = generation.options.getTocSplitLevel() > 0 ? EclipseTocWriter.listSubTocFiles(book.getOutputTocFile()).size() : 0;
+      ValidationReport report = generation.options.getValidationReport();
+      InputFingerprint.write(generation.fingerprintFile, generation.fingerprint, generation.fingerprintComputedAt, subTocFiles, report != null ? report.getCheckedFiles() : null);
+    }
+    getLog().info("Generated toc file: " + book.getOutputTocFile());
+  }
+
+  /**
+   * Log the problems found by the validation (see {@link #validateLinks}) as warnings.
+   */
+  protected void logValidationReport(Book book, GenerateOptions options) {
+    ValidationReport report = options.getValidationReport();
+    if (report != null && !report.isEmpty()) {
+      getLog().warn(report.size() + " problem(s) found in the pages of the toc file " + book.getOutputTocFile() + ":");
+      for (String line : report.toLines()) {
+        getLog().warn(line);
+      }
+    }
+  }
+
+  /**
+   * @return the books defined with {@link #books}, or a single book defined by the parameters of the mojo.
+   */
+  protected List<Book> getBooks() throws MojoFailureException {
+    if (books == null || books.isEmpty()) {
+      return Collections.singletonList(new Book(sourceFolder, pages, pagesListFile, includes, excludes, helpContexts, helpPrefix, outputTocFile, outputContextsFile, docZipFile));
+    }
+    if ((pages != null && !pages.isEmpty()) || pagesListFile != null || (includes != null && !includes.isEmpty())) {
+      throw new MojoFailureException("The pages are defined for each book (<" + BOOKS + "> is set), <" + PAGES + ">, <" + PAGES_LIST_FILE + "> and <" + INCLUDES + "> configuration can not be used");
+    }
+    for (Book book : books) {
+      if (book.getSourceFolder() == null) {
+        book.setSourceFolder(sourceFolder);
+      }
+      if (book.getOutputTocFile() == null) {
+        throw new MojoFailureException("<" + Book.OUTPUT_TOC_FILE + "> is not set for a book in <" + BOOKS + ">");
+      }
+    }
+    return books;
+  }
+
+  /**
+   * @param book
+   *          the book
+   * @param root
+   *          the root of the source folder of the book (see {@link SourceFolder})
+   * @param options
+   *          receives the pages found by the discovery (see {@link #includes})
+   * @return the pages defined with {@link #pages} or {@link #pagesListFile}, followed by the discovered pages
+   */
+  protected List<String> readPagesList(Book book, Path root, GenerateOptions options) throws MojoFailureException {
+    List<String> bookPages = book.getPages() == null ? Collections.<String> emptyList() : book.getPages();
+    List<String> bookIncludes = book.getIncludes();
+    boolean discovery = bookIncludes != null && !bookIncludes.isEmpty();
     List<String> pList;
-    if (pages.isEmpty() && pagesListFile == null) {
-      throw new MojoFailureException("No pages list defined, add <" + PAGES + "> or <" + PAGES_LIST_FILE + "> in your configuration");
+    if (bookPages.isEmpty() && book.getPagesListFile() == null && !discovery) {
+      throw new MojoFailureException("No pages list defined, add <" + PAGES + ">, <" + PAGES_LIST_FILE + "> or <" + INCLUDES + "> in your configuration");
     }
-    else if (pagesListFile != null) {
-      if (!pages.isEmpty()) {
+    else if (book.getPagesListFile() != null) {
+      if (!bookPages.isEmpty()) {
         throw new MojoFailureException("The pages list is defined using a file (<" + PAGES_LIST_FILE + "> is set),  <" + PAGES + "> configuration can not be used");
       }
       try {
-        pList = Files.readLines(pagesListFile, Charsets.UTF_8);
+        pList = Files.readLines(book.getPagesListFile(), Charsets.UTF_8);
       }
       catch (IOException e) {
         throw new MojoFailureException("Error while reading the file defined in <" + PAGES_LIST_FILE + ">", e);
       }
     }
     else {
-      pList = pages;
+      pList = bookPages;
+    }
+    if (discovery) {
+      List<DiscoveredPage> discoveredPages;
+      List<String> skippedEntries = new ArrayList<String>();
+      try {
+        discoveredPages = PageDiscovery.discover(root, bookIncludes, book.getExcludes(), threads, skippedEntries);
+      }
+      catch (IOException e) {
+        throw new MojoFailureException("Error while discovering the pages defined with <" + INCLUDES + ">", e);
+      }
+      for (String skipped : skippedEntries) {
+        getLog().warn("Entry skipped while discovering the pages: " + skipped);
+      }
+      options.setDiscoveredPages(discoveredPages);
+      Set<String> names = new HashSet<String>(pList);
+      List<String> result = new ArrayList<String>(pList);
+      for (DiscoveredPage p : discoveredPages) {
+        if (names.add(p.getName())) {
+          result.add(p.getName());
+        }
+      }
+      pList = result;
     }
+    return pList;
+  }
 
-    try {
-      GenerateEclipseTocUtility.generate(sourceFolder, pList, helpPrefix, outputTocFile, outputContextsFile, helpContexts);
+  /**
+   * @return the generation options of a book defined by the parameters (without metrics, executor and cache)
+   */
+  protected GenerateOptions createOptions(Book book) throws MojoFailureException {
+    GenerateOptions options = new GenerateOptions();
+    options.setThreads(threads);
+    options.setIoThreads(ioThreads);
+    options.setPageWindow(pageWindow);
+    options.setHeaderExtractor(headerExtractor);
+    options.setTocSplitLevel(tocSplitLevel);
+    if (writeDocZip) {
+      if (book.getDocZipFile() == null) {
+        throw new MojoFailureException("<" + Book.DOC_ZIP_FILE + "> is not set for a book in <" + BOOKS + "> (<" + WRITE_DOC_ZIP + "> is set)");
+      }
+      options.setDocZipFile(book.getDocZipFile());
     }
-    catch (IOException e) {
-      throw new MojoExecutionException("Error while generating the toc file", e);
+    if (validateLinks) {
+      options.setValidateLinks(true);
+      options.setFailOnValidationError(failOnValidationError);
     }
-    getLog().info("Generated toc file: " + outputTocFile);
+    options.setCollectAllErrors(collectAllErrors);
+    options.setHarvestHelpContexts(harvestHelpContexts);
+    if (validateLinks || collectAllErrors) {
+      options.setValidationReport(new ValidationReport());
+    }
+    if (pageWindow > 0) {
+      try {
+        GenerateEclipseTocUtility.checkBoundedMemoryOptions(options);
+      }
+      catch (IllegalArgumentException e) {
+        throw new MojoFailureException(e.getMessage(), e);
+      }
+    }
+    return options;
   }
 
+  /**
+   * State of the generation of a book.
+   */
+  private static class BookGeneration {
+    private final Book book;
+    private final Path root;
+    private final List<String> pages;
+    private final GenerateOptions options;
+    private final File fingerprintFile;
+    private String fingerprint;
+    private long fingerprintComputedAt;
+
+    BookGeneration(Book book, Path root, List<String> pages, GenerateOptions options) {
+      this.book = book;
+      this.root = root;
+      this.pages = pages;
+      this.options = options;
+      File outTocFile = book.getOutputTocFile();
+      this.fingerprintFile = new File(outTocFile.getParentFile(), outTocFile.getName() + FINGERPRINT_SUFFIX);
+    }
+  }
 }
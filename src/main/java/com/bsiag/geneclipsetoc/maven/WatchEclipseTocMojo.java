@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.bsiag.geneclipsetoc.internal.DirectoryWatcher;
+import com.bsiag.geneclipsetoc.internal.EclipseTocWriter;
+import com.bsiag.geneclipsetoc.internal.GenerateEclipseTocUtility;
+import com.bsiag.geneclipsetoc.internal.GenerateOptions;
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics;
+import com.bsiag.geneclipsetoc.internal.OutlineCache;
+import com.bsiag.geneclipsetoc.internal.SourceFolder;
+
+/**
+ * Long running goal: generates the toc file (and the contexts file) and regenerates them each time a file of the
+ * {@link #sourceFolder} or the {@link #pagesListFile} (of each book) is modified. The headers of the pages are kept
+ * in memory, only the modified pages are parsed again. The goal runs until Maven is stopped (Ctrl+C).
+ */
+@Mojo(name = "watch")
+public class WatchEclipseTocMojo extends GenerateEclipseTocMojo {
+
+  private static final String WATCH_QUIET_PERIOD = "watchQuietPeriod";
+  private static final String TMP_SUFFIX = ".tmp";
+
+  /**
+   * Delay in milliseconds without any file change before the files are regenerated (editors often write a file in
+   * several steps).
+   */
+  @Parameter(property = WATCH_QUIET_PERIOD, defaultValue = "100")
+  protected long watchQuietPeriod;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    //fail fast on configuration errors:
+    List<Book> bookList = getBooks();
+    for (Book book : bookList) {
+      SourceFolder sourceFolder = openSourceFolder(book.getSourceFolder());
+      try {
+        readPagesList(book, sourceFolder.getRoot(), createOptions(book));
+      }
+      finally {
+        close(sourceFolder);
+      }
+    }
+
+    OutlineCache cache = OutlineCache.createInMemory(headerExtractor);
+    ExecutorService executor = GenerateEclipseTocUtility.createExecutor(threads);
+    DirectoryWatcher watcher = null;
+    try {
+      watcher = new DirectoryWatcher();
+      Set<File> sourceFolders = new LinkedHashSet<File>();
+      for (Book book : bookList) {
+        if (sourceFolders.add(book.getSourceFolder())) {
+          if (book.getSourceFolder().isFile()) {
+            //archive
+            watcher.registerFile(book.getSourceFolder());
+          }
+          else {
+            watcher.registerFolder(book.getSourceFolder());
+          }
+        }
+        if (book.getPagesListFile() != null) {
+          watcher.registerFile(book.getPagesListFile());
+        }
+      }
+      regenerate(bookList, cache, executor);
+      getLog().info("Watching " + sourceFolders + " for changes (press Ctrl+C to stop)");
+      while (true) {
+        Set<File> changes = watcher.awaitChanges(watchQuietPeriod);
+        boolean relevant = false;
+        for (File file : changes) {
+          if (!isOutput(bookList, file)) {
+            cache.invalidate(file);
+            relevant = true;
+          }
+        }
+        if (relevant) {
+          regenerate(bookList, cache, executor);
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      getLog().info("Watch stopped");
+    }
+    catch (IOException e) {
+      throw new MojoExecutionException("Error while watching the source folder", e);
+    }
+    finally {
+      executor.shutdownNow();
+      if (watcher != null) {
+        try {
+          watcher.close();
+        }
+        catch (IOException e) {
+          getLog().debug("Error while closing the watch service", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Generate the files of the books. Errors are logged (the writer can fix the page and save it again).
+   */
+  private void regenerate(List<Book> bookList, OutlineCache cache, ExecutorService executor) {
+    for (Book book : bookList) {
+      regenerate(book, cache, executor);
+    }
+  }
+
+  private void regenerate(Book book, OutlineCache cache, ExecutorService executor) {
+    GenerationMetrics metrics = new GenerationMetrics(0);
+    SourceFolder sourceFolder = null;
+    try {
+      //an archive is opened again for each generation (it could have been replaced)
+      sourceFolder = openSourceFolder(book.getSourceFolder());
+      GenerateOptions options = createOptions(book);
+      if (pageWindow == 0) {
+        options.setOutlineCache(cache);
+      }
+      options.setExecutor(executor);
+      options.setMetrics(metrics);
+      List<String> pList = readPagesList(book, sourceFolder.getRoot(), options);
+      GenerateEclipseTocUtility.generate(sourceFolder.getRoot(), pList, book.getHelpPrefix(), book.getOutputTocFile(), book.getOutputContextsFile(), book.getHelpContexts(), options);
+      logValidationReport(book, options);
+      getLog().info(String.format(Locale.ENGLISH, "Generated toc file in %d ms (pages parsed: %d, pages from cache: %d): %s",
+          TimeUnit.NANOSECONDS.toMillis(metrics.getTotalNanos()), metrics.getPagesParsed(), metrics.getPagesFromCache(), book.getOutputTocFile()));
+    }
+    catch (MojoFailureException e) {
+      getLog().error(e.getMessage(), e.getCause());
+    }
+    catch (IOException e) {
+      getLog().error("Error while generating the toc file", e);
+    }
+    catch (RuntimeException e) {
+      getLog().error("Error while generating the toc file: " + e.getMessage(), e);
+    }
+    finally {
+      if (sourceFolder != null) {
+        close(sourceFolder);
+      }
+    }
+  }
+
+  /**
+   * @return true if the file is written by the plugin (the output files could be in the source folder)
+   */
+  private boolean isOutput(List<Book> bookList, File file) {
+    Path path = file.toPath().toAbsolutePath().normalize();
+    for (File output : new File[]{cacheFile, metricsReportFile}) {
+      if (isOutputFile(output, path)) {
+        return true;
+      }
+    }
+    for (Book book : bookList) {
+      for (File output : new File[]{book.getOutputTocFile(), book.getOutputContextsFile(), book.getDocZipFile()}) {
+        if (isOutputFile(output, path)) {
+          return true;
+        }
+      }
+      if (EclipseTocWriter.isSubTocFile(book.getOutputTocFile(), file)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the path is the output file, or the temporary or fingerprint file written next to it.
+   */
+  private static boolean isOutputFile(File output, Path path) {
+    if (output == null) {
+      return false;
+    }
+    Path outputPath = output.toPath().toAbsolutePath().normalize();
+    String name = outputPath.getFileName().toString();
+    for (String suffix : new String[]{"", TMP_SUFFIX, FINGERPRINT_SUFFIX}) {
+      if (path.equals(outputPath.resolveSibling(name + suffix))) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
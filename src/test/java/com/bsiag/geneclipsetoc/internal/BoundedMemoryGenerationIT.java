@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+/**
+ * Generates a toc for a synthetic book of 100'000 pages with {@link GenerateOptions#getPageWindow()}, in a JVM with a
+ * small heap. Integration test (it writes the 100'000 pages), executed with the <code>integration-test</code>
+ * profile.
+ */
+public class BoundedMemoryGenerationIT {
+
+  private static final int PAGES = 100000;
+  private static final String MAX_HEAP = "-Xmx24m";
+
+  @Test
+  public void testGenerateLargeBook() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    try {
+      for (int i = 0; i < PAGES; i++) {
+        Files.write("<html><body><h1 id=\"p" + i + "\">Page " + i + "</h1><h2 id=\"p" + i + "s1\">Section " + i + ".1</h2></body></html>", new File(rootInFolder, "page" + i + ".html"), Charsets.UTF_8);
+      }
+      File outTocFile = new File(rootInFolder, "out/toc.xml");
+
+      String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+      ProcessBuilder builder = new ProcessBuilder(java, MAX_HEAP, "-cp", System.getProperty("java.class.path"), BoundedMemoryGenerationIT.class.getName(), rootInFolder.getAbsolutePath(), outTocFile.getAbsolutePath());
+      builder.redirectErrorStream(true);
+      Process process = builder.start();
+      String output = new String(ByteStreams.toByteArray(process.getInputStream()), Charsets.UTF_8);
+      assertEquals(output, 0, process.waitFor());
+
+      String toc = Files.toString(outTocFile, Charsets.UTF_8);
+      int topics = 0;
+      int lastTopic = -1;
+      for (int index = toc.indexOf("<topic"); index >= 0; index = toc.indexOf("<topic", index + 1)) {
+        topics++;
+        lastTopic = index;
+      }
+      //the first h1 is the book
+      assertEquals(2 * PAGES - 1, topics);
+      assertTrue(toc.substring(lastTopic), toc.startsWith("<topic href=\"doc/page" + (PAGES - 1) + ".html#p" + (PAGES - 1) + "s1\"", lastTopic));
+    }
+    finally {
+      deleteRecursively(rootInFolder);
+    }
+  }
+
+  /**
+   * Generation executed in the JVM with the small heap.
+   *
+   * @param args
+   *          the root folder and the toc file
+   */
+  public static void main(String[] args) throws IOException {
+    List<String> pages = new ArrayList<String>(PAGES);
+    for (int i = 0; i < PAGES; i++) {
+      pages.add("page" + i + ".html");
+    }
+    GenerateOptions options = new GenerateOptions();
+    options.setThreads(2);
+    options.setPageWindow(64);
+    options.setHeaderExtractor(HeaderExtractor.STREAMING);
+    GenerateEclipseTocUtility.generate(new File(args[0]), pages, "doc", new File(args[1]), null, null, options);
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CompactOutline}
+ */
+public class CompactOutlineTest {
+
+  @Test
+  public void testAdd() throws Exception {
+    CompactOutline outline = new CompactOutline(1);
+    int root = outline.add(CompactOutline.NO_NODE, 0, "#x0-1000", "ROOT", "index.html");
+    assertEquals(root, outline.getRoot());
+    assertEquals(root, outline.findParent(2));
+
+    //the last added node of a level is the parent of the next deeper levels
+    int n1a = outline.add(root, 1, "#x1-1000", "H1 - A", "index.html");
+    assertEquals(n1a, outline.findParent(2));
+    int n1b = outline.add(root, 1, "#x2-1000", "H1 - B", "index.html");
+    assertEquals(n1b, outline.findParent(2));
+    assertEquals(n1b, outline.findParent(3));
+    int n3 = outline.add(n1b, 3, "#x4-1000", "H3", "index.html");
+    assertEquals(n1b, outline.findParent(2));
+    assertEquals(n1b, outline.findParent(3));
+    assertEquals(n3, outline.findParent(4));
+
+    assertEquals(1, outline.getLevel(n1a));
+    assertEquals(root, outline.getParent(n1a));
+    assertEquals(n1b, outline.getParent(n3));
+    assertEquals("H3", outline.getLabel(n3));
+    assertEquals("#x4-1000", outline.getId(n3));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddSecondRoot() throws Exception {
+    CompactOutline outline = new CompactOutline();
+    outline.add(CompactOutline.NO_NODE, 0, "root", "Root", "index.html");
+    outline.add(CompactOutline.NO_NODE, 0, "other", "Other", "index.html");
+  }
+
+  @Test
+  public void testFindParent() throws Exception {
+    CompactOutline outline = new CompactOutline(1);
+    assertEquals(CompactOutline.NO_NODE, outline.findParent(1));
+    assertEquals(CompactOutline.NO_NODE, outline.findParent(3));
+
+    int root = outline.add(CompactOutline.NO_NODE, 0, "id", "Root", "index.html");
+    assertEquals(root, outline.findParent(1));
+    assertEquals(root, outline.findParent(3));
+
+    int n1 = outline.add(root, 1, "n1", "N1", "index.html");
+    int n11 = outline.add(n1, 2, "n11", "N11", "index.html");
+    assertEquals(n1, outline.findParent(2));
+    assertEquals(n11, outline.findParent(3));
+
+    //the entries of the deeper levels are not removed:
+    int n2 = outline.add(root, 1, "n2", "N2", "page.html");
+    assertEquals(n2, outline.findParent(2));
+    assertEquals(n11, outline.findParent(3));
+
+    assertEquals(4, outline.size());
+    assertEquals(n1, outline.getFirstChild(root));
+    assertEquals(n2, outline.getNextSibling(n1));
+    assertEquals(CompactOutline.NO_NODE, outline.getNextSibling(n2));
+    assertEquals("page.html", outline.getFilePath(n2));
+  }
+
+  @Test
+  public void testSameTocAsOutlineItem() throws Exception {
+    List<PageHeader> index = Arrays.asList(
+        new PageHeader(1, null, "Book “title”"),
+        new PageHeader(2, "i1", "Intro"),
+        new PageHeader(3, "i11", "Intro 1"),
+        new PageHeader(2, "i2", "Usage"));
+    List<PageHeader> page1 = Arrays.asList(
+        new PageHeader(1, "p1", "Page 1"),
+        new PageHeader(4, "p1s1", "Deep <section>"),
+        new PageHeader(2, "p1s2", "Section 2"),
+        new PageHeader(4, "p1s3", "Section with stale parent"));
+    List<PageHeader> page2 = Arrays.asList(
+        new PageHeader(2, "p2", "Page 2 & co"),
+        new PageHeader(2, "p2s1", "Section"));
+
+    CompactOutline outline = new CompactOutline(2);
+    for (List<PageHeader> headers : Arrays.asList(index, page1, page2, page1)) {
+      String filePath = headers == index ? "index.html" : (headers == page1 ? "page1.html" : "sub/page2.html");
+      GenerateEclipseTocUtility.computeOutlineNodes(outline, headers, filePath);
+    }
+    //the h4 following a h2 has the last h3 (of the previous page) as parent
+    int p1s3 = CompactOutline.NO_NODE;
+    for (int node = outline.size() - 1; node >= 0; node--) {
+      if ("p1s3".equals(outline.getId(node))) {
+        p1s3 = node;
+      }
+    }
+    assertEquals("i11", outline.getId(outline.getParent(p1s3)));
+
+    for (String helpPrefix : Arrays.asList(null, "doc", "doc/")) {
+      String expected = GenerateEclipseTocUtility.createToc(outline.toOutlineItem(), helpPrefix);
+      StringWriter out = new StringWriter();
+      EclipseTocWriter.write(outline, helpPrefix, out);
+      assertEquals(expected, out.toString());
+    }
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    CompactOutline outline = new CompactOutline();
+    assertEquals(CompactOutline.NO_NODE, outline.getRoot());
+    assertNull(outline.toOutlineItem());
+  }
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link DirectoryWatcher}
+ */
+public class DirectoryWatcherTest {
+
+  @Test(timeout = 60000)
+  public void testChanges() throws Exception {
+    File folder = Files.createTempDir();
+    File sub = new File(folder, "sub");
+    sub.mkdirs();
+    File otherFolder = Files.createTempDir();
+    File listFile = new File(otherFolder, "pages.txt");
+    Files.write("page.html", listFile, Charsets.UTF_8);
+    File otherFile = new File(otherFolder, "other.txt");
+
+    DirectoryWatcher watcher = new DirectoryWatcher();
+    try {
+      watcher.registerFolder(folder);
+      watcher.registerFile(listFile);
+
+      File page = new File(sub, "page.html");
+      Files.write("<h1>Title</h1>", page, Charsets.UTF_8);
+      Set<File> changes = awaitChange(watcher, page.getAbsoluteFile());
+      assertTrue(changes.contains(page.getAbsoluteFile()));
+
+      Files.write("ignored", otherFile, Charsets.UTF_8);
+      Files.write("page.html\nother.html", listFile, Charsets.UTF_8);
+      changes = awaitChange(watcher, listFile.getAbsoluteFile());
+      assertFalse(changes.contains(otherFile.getAbsoluteFile()));
+    }
+    finally {
+      watcher.close();
+    }
+  }
+
+  private static Set<File> awaitChange(DirectoryWatcher watcher, File expected) throws Exception {
+    Set<File> changes = watcher.awaitChanges(50);
+    while (!changes.contains(expected)) {
+      changes.addAll(watcher.awaitChanges(50));
+    }
+    return changes;
+  }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link EclipseTocWriter}
+ */
+public class EclipseTocWriterTest {
+
+  @Test
+  public void testSameAsMarkupToEclipseToc() throws Exception {
+    OutlineItemEx root = createNode(null, 0, "id", "Book & \"title\"", "index.html");
+    OutlineItemEx n1 = createNode(root, 1, "n1", "Chapter 1", "index.html");
+    createNode(n1, 2, "n11", "Section 1.1", "index.html");
+    OutlineItemEx n12 = createNode(n1, 2, "n12", "Section <1.2>", "page1.html");
+    createNode(n12, 3, "n121", "Section 1.2.1", "page1.html");
+    createNode(n12, 3, "n122", "Section 1.2.2", "page1.html");
+    OutlineItemEx n2 = createNode(root, 1, "n2", "Chapter 2", "page2.html");
+    createNode(n2, 2, "n21", "Section 2.1", "page2.html");
+    createNode(root, 1, "n3", "Chapter 3", "page2.html");
+
+    assertSameToc(root, null);
+    assertSameToc(root, "doc");
+    assertSameToc(root, "doc/");
+  }
+
+  @Test
+  public void testRootOnly() throws Exception {
+    OutlineItemEx root = createNode(null, 0, "id", "Book", "index.html");
+    assertSameToc(root, null);
+  }
+
+  @Test
+  public void testWriteSplit() throws Exception {
+    CompactOutline outline = new CompactOutline();
+    GenerateEclipseTocUtility.computeOutlineNodes(outline, Arrays.asList(
+        new PageHeader(1, null, "Book"),
+        new PageHeader(2, "intro", "Intro")), "index.html");
+    GenerateEclipseTocUtility.computeOutlineNodes(outline, Arrays.asList(
+        new PageHeader(1, "c1", "Chapter 1"),
+        new PageHeader(2, "c1s1", "Section 1.1"),
+        new PageHeader(3, "c1s11", "Section 1.1.1"),
+        new PageHeader(2, "c1s2", "Section 1.2")), "chapter1.html");
+    GenerateEclipseTocUtility.computeOutlineNodes(outline, Arrays.asList(
+        new PageHeader(1, "c2", "Chapter 2")), "chapter2.html");
+    GenerateEclipseTocUtility.computeOutlineNodes(outline, Arrays.asList(
+        new PageHeader(1, "c3", "Chapter 3"),
+        new PageHeader(2, "c3s1", "Section 3.1")), "sub/chapter3.html");
+
+    File folder = Files.createTempDir();
+    File singleFile = new File(folder, "single/toc.xml");
+    EclipseTocWriter.write(outline, "doc", singleFile);
+    String expected = toTree(folder, Files.toString(singleFile, Charsets.UTF_8));
+
+    File tocFile = new File(folder, "split/toc.xml");
+    File staleFile = new File(folder, "split/toc-9.xml");
+    Files.createParentDirs(staleFile);
+    Files.write("stale", staleFile, Charsets.UTF_8);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      for (int splitLevel : Arrays.asList(1, 2, 3)) {
+        List<File> subTocFiles = EclipseTocWriter.writeSplit(outline, "doc", tocFile, splitLevel, executor);
+        assertEquals("split level " + splitLevel, expected, toTree(tocFile.getParentFile(), Files.toString(tocFile, Charsets.UTF_8)));
+        assertEquals("sub toc files for split level " + splitLevel, splitLevel == 1 ? 2 : (splitLevel == 2 ? 1 : 0), subTocFiles.size());
+        assertFalse("stale sub toc file", staleFile.exists());
+        assertTrue("sub toc files present", EclipseTocWriter.hasSubTocFiles(tocFile, subTocFiles.size()));
+      }
+      EclipseTocWriter.writeSplit(outline, "doc", tocFile, 1, executor);
+    }
+    finally {
+      executor.shutdown();
+    }
+    assertFalse("missing sub toc file", EclipseTocWriter.hasSubTocFiles(tocFile, 3));
+    assertTrue(new File(tocFile.getParentFile(), "toc-2.xml").delete());
+    assertFalse("deleted sub toc file", EclipseTocWriter.hasSubTocFiles(tocFile, 2));
+
+    //the single toc file replaces the split toc
+    EclipseTocWriter.write(outline, "doc", tocFile);
+    assertEquals(expected, toTree(tocFile.getParentFile(), Files.toString(tocFile, Charsets.UTF_8)));
+    assertTrue("sub toc files deleted", EclipseTocWriter.listSubTocFiles(tocFile).isEmpty());
+    assertTrue(EclipseTocWriter.hasSubTocFiles(tocFile, 0));
+    assertTrue(EclipseTocWriter.isSubTocFile(tocFile, new File(tocFile.getParentFile(), "toc-12.xml")));
+    assertFalse(EclipseTocWriter.isSubTocFile(tocFile, new File(tocFile.getParentFile(), "toc-.xml")));
+    assertFalse(EclipseTocWriter.isSubTocFile(tocFile, new File(tocFile.getParentFile(), "toc-a.xml")));
+    assertFalse(EclipseTocWriter.isSubTocFile(tocFile, new File(folder, "toc-1.xml")));
+  }
+
+  /**
+   * @return the topics as indented text, the linked toc files are included.
+   */
+  private static String toTree(File folder, String toc) throws Exception {
+    Document doc = Jsoup.parse(toc, "", Parser.xmlParser());
+    Element root = doc.getElementsByTag("toc").first();
+    StringBuilder sb = new StringBuilder();
+    sb.append(root.attr("label")).append(" ").append(root.attr("topic")).append("\n");
+    appendTopics(folder, root, "  ", sb);
+    return sb.toString();
+  }
+
+  private static void appendTopics(File folder, Element parent, String indent, StringBuilder sb) throws Exception {
+    for (Element child : parent.children()) {
+      if ("topic".equals(child.tagName())) {
+        sb.append(indent).append(child.attr("label")).append(" ").append(child.attr("href")).append("\n");
+        appendTopics(folder, child, indent + "  ", sb);
+      }
+      else if ("link".equals(child.tagName())) {
+        String subToc = Files.toString(new File(folder, child.attr("toc")), Charsets.UTF_8);
+        Document doc = Jsoup.parse(subToc, "", Parser.xmlParser());
+        appendTopics(folder, doc.getElementsByTag("toc").first(), indent, sb);
+      }
+    }
+  }
+
+  private static OutlineItemEx createNode(OutlineItemEx parent, int level, String id, String label, String filePath) {
+    OutlineItemEx node = new OutlineItemEx(parent, level, id, 0, 0, label);
+    node.setFilePath(filePath);
+    return node;
+  }
+
+  private static void assertSameToc(OutlineItemEx root, String helpPrefix) throws Exception {
+    StringWriter out = new StringWriter();
+    EclipseTocWriter.write(root, helpPrefix, out);
+    assertEquals(GenerateEclipseTocUtility.createToc(root, helpPrefix), out.toString());
+  }
+}
@@ -10,15 +10,26 @@
  ******************************************************************************/
 package com.bsiag.geneclipsetoc.internal;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.eclipse.mylyn.wikitext.core.parser.outline.OutlineItem;
 import org.jsoup.Jsoup;
@@ -30,81 +41,18 @@ import org.junit.Test;
 import com.bsiag.geneclipsetoc.internal.contexts.Context;
 import com.bsiag.geneclipsetoc.maven.HelpContext;
 import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 
 public class GenerateEclipseTocUtilityTest {
 
-  OutlineItemEx ROOT = new OutlineItemEx(null, 0, "#x0-1000", 0, 0, "ROOT");
-  OutlineItemEx NODE_1A = new OutlineItemEx(ROOT, 1, "#x1-1000", 0, 0, "H1 - A");
-  OutlineItemEx NODE_1B = new OutlineItemEx(ROOT, 1, "#x2-1000", 0, 0, "H1 - B");
-  OutlineItemEx NODE_2 = new OutlineItemEx(NODE_1A, 2, "#x3-1000", 0, 0, "H2");
-  OutlineItemEx NODE_3 = new OutlineItemEx(NODE_2, 3, "#x4-1000", 0, 0, "H3");
-
-  /**
-   * Test method for {@link buildhelp.GenerateEclipseTocUtility.putNode(java.util.Map, buildhelp.OutlineItemEx)}.
-   */
-  @Test
-  public void testPutNode() {
-    Map<Integer, OutlineItemEx> map = new HashMap<Integer, OutlineItemEx>();
-    assertNull(map.get(0));
-    assertNull(map.get(1));
-    assertNull(map.get(2));
-    assertNull(map.get(3));
-    assertNull(map.get(4));
-
-    GenerateEclipseTocUtility.putNode(map, NODE_1A, 1);
-    assertNull(map.get(0));
-    assertEquals(NODE_1A, map.get(1));
-    assertNull(map.get(2));
-    assertNull(map.get(3));
-    assertNull(map.get(4));
-
-    GenerateEclipseTocUtility.putNode(map, NODE_1B, 1);
-    assertNull(map.get(0));
-    assertEquals(NODE_1B, map.get(1));
-    assertNull(map.get(2));
-    assertNull(map.get(3));
-    assertNull(map.get(4));
-
-    GenerateEclipseTocUtility.putNode(map, NODE_3, 3);
-    assertNull(map.get(0));
-    assertEquals(NODE_1B, map.get(1));
-    assertNull(map.get(2));
-    assertEquals(NODE_3, map.get(3));
-    assertNull(map.get(4));
-  }
-
-  /**
-   * Test method for {@link buildhelp.GenerateEclipseTocUtility.findParent(java.util.Map, int)}.
-   */
-  @Test
-  public void testFindParent() {
-    Map<Integer, OutlineItemEx> map = new HashMap<Integer, OutlineItemEx>();
-    assertNull(GenerateEclipseTocUtility.findParent(map, 3));
-    assertNull(GenerateEclipseTocUtility.findParent(map, 2));
-    GenerateEclipseTocUtility.putNode(map, ROOT, 0);
-    assertEquals(ROOT, GenerateEclipseTocUtility.findParent(map, 1));
-    assertEquals(ROOT, GenerateEclipseTocUtility.findParent(map, 2));
-    assertEquals(ROOT, GenerateEclipseTocUtility.findParent(map, 3));
-    GenerateEclipseTocUtility.putNode(map, NODE_3, 3);
-    assertEquals(ROOT, GenerateEclipseTocUtility.findParent(map, 1));
-    assertEquals(ROOT, GenerateEclipseTocUtility.findParent(map, 2));
-    assertEquals(ROOT, GenerateEclipseTocUtility.findParent(map, 3));
-    GenerateEclipseTocUtility.putNode(map, NODE_1A, 1);
-    assertEquals(ROOT, GenerateEclipseTocUtility.findParent(map, 1));
-    assertEquals(NODE_1A, GenerateEclipseTocUtility.findParent(map, 2));
-    assertEquals(NODE_1A, GenerateEclipseTocUtility.findParent(map, 3));
-  }
-
   /**
-   * Test method for {@link buildhelp.GenerateEclipseTocUtility.computeOutlineNodes(java.util.Map, String, String)}.
+   * Test method for {@link GenerateEclipseTocUtility#computeOutlineNodes(CompactOutline, List, String)}.
    */
   @Test
   public void testComputeOutlineNodes() throws Exception {
-    OutlineItemEx root = new OutlineItemEx(null, 0, "z9999", 0, 0, "root node");
-
-    Map<Integer, OutlineItemEx> map = new HashMap<Integer, OutlineItemEx>();
-    GenerateEclipseTocUtility.putNode(map, root, 0);
+    CompactOutline outline = new CompactOutline();
+    outline.add(CompactOutline.NO_NODE, 0, "z9999", "root node", "index.html");
 
     StringBuilder sb = new StringBuilder();
     sb.append("<html>");
@@ -121,7 +69,8 @@ public class GenerateEclipseTocUtilityTest {
     sb.append("</body>");
     sb.append("</html>");
     Document doc = Jsoup.parse(sb.toString());
-    GenerateEclipseTocUtility.computeOutlineNodes(map, doc, "page1.html");
+    GenerateEclipseTocUtility.computeOutlineNodes(outline, GenerateEclipseTocUtility.computeHeaders(doc), "page1.html");
+    OutlineItem root = outline.toOutlineItem();
 
     assertEquals("root children size", 2, root.getChildren().size());
 
@@ -204,6 +153,27 @@ public class GenerateEclipseTocUtilityTest {
     assertEquals("test-id", GenerateEclipseTocUtility.findId(e));
   }
 
+  @Test
+  public void testHeaderLevel() {
+    assertEquals(1, GenerateEclipseTocUtility.headerLevel(new Element(Tag.valueOf("h1"), "")));
+    assertEquals(6, GenerateEclipseTocUtility.headerLevel(new Element(Tag.valueOf("H6"), "")));
+    assertEquals(0, GenerateEclipseTocUtility.headerLevel(new Element(Tag.valueOf("h7"), "")));
+    assertEquals(0, GenerateEclipseTocUtility.headerLevel(new Element(Tag.valueOf("h0"), "")));
+    assertEquals(0, GenerateEclipseTocUtility.headerLevel(new Element(Tag.valueOf("hr"), "")));
+    assertEquals(0, GenerateEclipseTocUtility.headerLevel(new Element(Tag.valueOf("h12"), "")));
+    assertEquals(0, GenerateEclipseTocUtility.headerLevel(new Element(Tag.valueOf("header"), "")));
+    assertEquals(0, GenerateEclipseTocUtility.headerLevel(new Element(Tag.valueOf("p"), "")));
+  }
+
+  @Test
+  public void testSanitize() {
+    String text = "Lorem ipsum";
+    assertSame(text, GenerateEclipseTocUtility.sanitize(text));
+    assertEquals("", GenerateEclipseTocUtility.sanitize(""));
+    assertEquals("The \"quoted\" \"text\"", GenerateEclipseTocUtility.sanitize("The \u201Cquoted\u201D \u201Etext\u201D"));
+    assertEquals("\"", GenerateEclipseTocUtility.sanitize("\u201C"));
+  }
+
   @Test
   public void testComputeContexts() throws Exception {
     File rootInFolder = Files.createTempDir();
@@ -241,11 +211,11 @@ public class GenerateEclipseTocUtilityTest {
       }
     };
     List<HelpContext> inContexts = Arrays.asList(helpContext1, helpContext2);
-    Map<File, String> topicFileMap = new HashMap<>();
-    topicFileMap.put(file1, "My first chapter");
-    topicFileMap.put(file2, "My second chapter");
+    PageModel pageModel = new PageModel(rootInFolder);
+    pageModel.resolve("page1.html").setHeaders(Collections.singletonList(new PageHeader(1, null, "My first chapter")));
+    pageModel.resolve("page2.html").setHeaders(Collections.singletonList(new PageHeader(1, null, "My second chapter")));
 
-    List<Context> outContexts = GenerateEclipseTocUtility.computeContexts(rootInFolder, helpPrefix, inContexts, topicFileMap);
+    List<Context> outContexts = GenerateEclipseTocUtility.computeContexts(pageModel, helpPrefix, inContexts);
     assertEquals("outContexts size", 2, outContexts.size());
     assertEquals("first outContext id", "first_page_context", outContexts.get(0).getId());
     assertEquals("first outContext title", "Page Context 1", outContexts.get(0).getTitle());
@@ -260,4 +230,514 @@ public class GenerateEclipseTocUtilityTest {
     assertEquals("second outContext second topic href", "xxx/page2.html", outContexts.get(1).getTopics().get(1).getHref());
     assertEquals("second outContext second topic label", "My second chapter", outContexts.get(1).getTopics().get(1).getLabel());
   }
+
+  @Test
+  public void testGenerateParallel() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 20);
+
+    File sequentialToc = new File(rootInFolder, "out/sequential.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", sequentialToc, null, null, new GenerateOptions());
+    GenerateOptions options = new GenerateOptions();
+    options.setThreads(4);
+    File parallelToc = new File(rootInFolder, "out/parallel.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", parallelToc, null, null, options);
+
+    assertEquals(Files.toString(sequentialToc, Charsets.UTF_8), Files.toString(parallelToc, Charsets.UTF_8));
+  }
+
+  @Test
+  public void testGenerateIoThreads() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 20);
+
+    File sequentialToc = new File(rootInFolder, "out/sequential.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", sequentialToc, null, null, new GenerateOptions());
+    for (int threads : new int[]{1, 3}) {
+      GenerateOptions options = new GenerateOptions();
+      options.setThreads(threads);
+      options.setIoThreads(2);
+      File ioToc = new File(rootInFolder, "out/io" + threads + ".xml");
+      GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", ioToc, null, null, options);
+
+      assertEquals(Files.toString(sequentialToc, Charsets.UTF_8), Files.toString(ioToc, Charsets.UTF_8));
+    }
+
+    GenerateOptions options = new GenerateOptions();
+    options.setIoThreads(2);
+    pages.add("missing.html");
+    try {
+      GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", new File(rootInFolder, "out/missing.xml"), null, null, options);
+      fail("IllegalStateException expected");
+    }
+    catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("missing.html"));
+    }
+  }
+
+  @Test
+  public void testGenerateValidateLinks() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 3);
+    Files.write("<html><body><h2 id=\"links\">Links</h2><a href=\"page1.html#p1s2\">ok</a><a href=\"page2.html#p1\">wrong anchor</a><a href=\"page9.html\">missing</a><a href=\"http://www.eclipse.org\">external</a></body></html>", new File(rootInFolder, "links.html"), Charsets.UTF_8);
+    pages.add("links.html");
+
+    for (HeaderExtractor extractor : HeaderExtractor.values()) {
+      GenerateOptions options = new GenerateOptions();
+      options.setHeaderExtractor(extractor);
+      options.setValidateLinks(true);
+      ValidationReport report = new ValidationReport();
+      options.setValidationReport(report);
+      File outTocFile = new File(rootInFolder, "out/" + extractor + ".xml");
+      GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", outTocFile, null, null, options);
+
+      assertTrue(outTocFile.exists());
+      List<String> expected = Arrays.asList(
+          "links.html:",
+          "  - broken link 'page2.html#p1': anchor 'p1' not found in 'page2.html'",
+          "  - broken link 'page9.html': file 'page9.html' not found");
+      assertEquals(extractor.toString(), expected, report.toLines());
+
+      options.setFailOnValidationError(true);
+      options.setValidationReport(new ValidationReport());
+      File failedTocFile = new File(rootInFolder, "out/failed" + extractor + ".xml");
+      try {
+        GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", failedTocFile, null, null, options);
+        fail("IllegalStateException expected");
+      }
+      catch (IllegalStateException e) {
+        assertTrue(e.getMessage(), e.getMessage().startsWith("2 problem(s) found in the pages"));
+        assertTrue(e.getMessage(), e.getMessage().contains("page9.html"));
+      }
+      assertFalse(failedTocFile.exists());
+    }
+  }
+
+  @Test
+  public void testGenerateCollectAllErrors() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 3);
+    Files.write("<html><body><h2>No id</h2><h3 id=\"e\"> </h3><h2>Other</h2><h4>No id</h4></body></html>", new File(rootInFolder, "errors.html"), Charsets.UTF_8);
+    pages.add(1, "errors.html");
+    pages.add("missing.html");
+    HelpContext helpContext = new HelpContext() {
+      @Override
+      public String getId() {
+        return "my_context";
+      }
+
+      @Override
+      public String getTitle() {
+        return null;
+      }
+
+      @Override
+      public String getDescription() {
+        return "Description";
+      }
+
+      @Override
+      public List<String> getTopicPages() {
+        return Arrays.asList("page0.html", "missing_context.html");
+      }
+    };
+
+    for (int threads : new int[]{1, 3}) {
+      GenerateOptions options = new GenerateOptions();
+      options.setThreads(threads);
+      options.setCollectAllErrors(true);
+      ValidationReport report = new ValidationReport();
+      options.setValidationReport(report);
+      File outTocFile = new File(rootInFolder, "out/toc" + threads + ".xml");
+      try {
+        GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", outTocFile, new File(rootInFolder, "out/contexts.xml"), Collections.<HelpContext> singletonList(helpContext), options);
+        fail("IllegalStateException expected");
+      }
+      catch (IllegalStateException e) {
+        assertTrue(e.getMessage(), e.getMessage().startsWith("6 problem(s) found in the pages"));
+      }
+      assertFalse(outTocFile.exists());
+      List<String> expected = Arrays.asList(
+          "errors.html:",
+          "  - id is not found for node h2 'No id'",
+          "  - empty header h3 (id 'e')",
+          "  - id is not found for node h2 'Other'",
+          "  - id is not found for node h4 'No id'",
+          "missing.html:",
+          "  - file '" + new File(rootInFolder, "missing.html").getAbsolutePath() + "' not found (page of the toc)",
+          "missing_context.html:",
+          "  - file '" + new File(rootInFolder, "missing_context.html").getAbsolutePath() + "' not found (topic page of the context 'my_context')");
+      assertEquals(expected, report.toLines());
+      assertTrue(report.hasErrors());
+    }
+
+    //without the option, the generation fails on the first error
+    try {
+      GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", new File(rootInFolder, "out/toc.xml"), null, null, new GenerateOptions());
+      fail("IllegalStateException expected");
+    }
+    catch (IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("missing.html"));
+    }
+  }
+
+  @Test
+  public void testGenerateHarvestHelpContexts() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 3);
+    StringBuilder html = new StringBuilder();
+    html.append("<html><head><meta name=\"help-context\" content=\"meta_context\"></head><body>");
+    html.append("<h1 id=\"c\">Contexts</h1>");
+    html.append("<h2 id=\"s1\" data-help-context=\"my_context\" data-help-context-title=\"Harvested title\" data-help-context-description=\"Harvested description\">Section 1</h2>");
+    html.append("<div data-help-context=\"new_context\" data-help-context-title=\"New &amp; context\"></div>");
+    html.append("<p data-help-context=\"new_context\">Declared twice</p>");
+    html.append("</body></html>");
+    Files.write(html.toString(), new File(rootInFolder, "ctx.html"), Charsets.UTF_8);
+    pages.add("ctx.html");
+    backdatePages(rootInFolder, pages);
+    HelpContext helpContext = new HelpContext() {
+      @Override
+      public String getId() {
+        return "my_context";
+      }
+
+      @Override
+      public String getDescription() {
+        return "Description";
+      }
+
+      @Override
+      public List<String> getTopicPages() {
+        return Arrays.asList("page1.html");
+      }
+    };
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    sb.append("<?NLS TYPE=\"org.eclipse.help.contexts\"?>\n");
+    sb.append("<contexts>\n");
+    sb.append("    <context id=\"my_context\" title=\"Harvested title\">\n");
+    sb.append("        <description>Description</description>\n");
+    sb.append("        <topic label=\"Page 1\" href=\"doc/page1.html\"/>\n");
+    sb.append("        <topic label=\"Section 1\" href=\"doc/ctx.html#s1\"/>\n");
+    sb.append("    </context>\n");
+    sb.append("    <context id=\"meta_context\" title=\"Contexts\">\n");
+    sb.append("        <topic label=\"Contexts\" href=\"doc/ctx.html\"/>\n");
+    sb.append("    </context>\n");
+    sb.append("    <context id=\"new_context\" title=\"New &amp; context\">\n");
+    sb.append("        <topic label=\"Contexts\" href=\"doc/ctx.html\"/>\n");
+    sb.append("    </context>\n");
+    sb.append("</contexts>");
+
+    for (HeaderExtractor extractor : HeaderExtractor.values()) {
+      File cacheFile = new File(rootInFolder, "cache/" + extractor + ".bin");
+      //the second generation takes the contexts from the cache
+      for (int i = 0; i < 2; i++) {
+        GenerateOptions options = new GenerateOptions();
+        options.setHeaderExtractor(extractor);
+        options.setHarvestHelpContexts(true);
+        options.setCacheFile(cacheFile);
+        GenerationMetrics metrics = new GenerationMetrics(0);
+        options.setMetrics(metrics);
+        File outContextsFile = new File(rootInFolder, "out/contexts" + extractor + i + ".xml");
+        GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", new File(rootInFolder, "out/toc.xml"), outContextsFile, Collections.singletonList(helpContext), options);
+
+        assertEquals(extractor + " " + i, sb.toString(), Files.toString(outContextsFile, Charsets.UTF_8));
+        assertEquals(extractor + " pages from cache " + i, i == 0 ? 0 : pages.size(), metrics.getPagesFromCache());
+      }
+    }
+
+    //without declaration and without HelpContext, an empty contexts file is written
+    GenerateOptions options = new GenerateOptions();
+    options.setHarvestHelpContexts(true);
+    File outContextsFile = new File(rootInFolder, "out/empty.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages.subList(0, 3), "doc", new File(rootInFolder, "out/toc.xml"), outContextsFile, null, options);
+    assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<?NLS TYPE=\"org.eclipse.help.contexts\"?>\n<contexts>\n</contexts>", Files.toString(outContextsFile, Charsets.UTF_8));
+  }
+
+  @Test
+  public void testGenerateBoundedMemory() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 20);
+    pages.add("page3.html");
+    Files.write("<html><body><h1>Other page</h1></body></html>", new File(rootInFolder, "other.html"), Charsets.UTF_8);
+    HelpContext helpContext = new HelpContext() {
+      @Override
+      public String getId() {
+        return "my_context";
+      }
+
+      @Override
+      public List<String> getTopicPages() {
+        return Arrays.asList("page1.html", "other.html");
+      }
+    };
+    List<HelpContext> contexts = Collections.singletonList(helpContext);
+
+    File expectedToc = new File(rootInFolder, "out/expected.xml");
+    File expectedContexts = new File(rootInFolder, "out/expected-contexts.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", expectedToc, expectedContexts, contexts, new GenerateOptions());
+    for (int threads : new int[]{1, 3}) {
+      GenerateOptions options = new GenerateOptions();
+      options.setThreads(threads);
+      options.setPageWindow(4);
+      File docZipFile = new File(rootInFolder, "out/doc" + threads + ".zip");
+      options.setDocZipFile(docZipFile);
+      File outTocFile = new File(rootInFolder, "out/toc" + threads + ".xml");
+      File outContextsFile = new File(rootInFolder, "out/contexts" + threads + ".xml");
+      GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", outTocFile, outContextsFile, contexts, options);
+
+      assertEquals(Files.toString(expectedToc, Charsets.UTF_8), Files.toString(outTocFile, Charsets.UTF_8));
+      assertEquals(Files.toString(expectedContexts, Charsets.UTF_8), Files.toString(outContextsFile, Charsets.UTF_8));
+      ZipFile zip = new ZipFile(docZipFile);
+      try {
+        assertEquals("entries", 21, zip.size());
+        assertNotNull("entry other.html", zip.getEntry("doc/other.html"));
+      }
+      finally {
+        zip.close();
+      }
+    }
+
+    GenerateOptions options = new GenerateOptions();
+    options.setPageWindow(4);
+    options.setTocSplitLevel(1);
+    try {
+      GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", new File(rootInFolder, "out/split.xml"), null, null, options);
+      fail("IllegalArgumentException expected");
+    }
+    catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("tocSplitLevel"));
+    }
+  }
+
+  @Test
+  public void testGenerateStreaming() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 5);
+
+    File jsoupToc = new File(rootInFolder, "out/jsoup.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", jsoupToc, null, null, new GenerateOptions());
+    GenerateOptions options = new GenerateOptions();
+    options.setHeaderExtractor(HeaderExtractor.STREAMING);
+    File streamingToc = new File(rootInFolder, "out/streaming.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", streamingToc, null, null, options);
+
+    assertEquals(Files.toString(jsoupToc, Charsets.UTF_8), Files.toString(streamingToc, Charsets.UTF_8));
+  }
+
+  @Test
+  public void testGenerateWithCache() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 5);
+    backdatePages(rootInFolder, pages);
+
+    File expectedToc = new File(rootInFolder, "out/expected.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", expectedToc, null, null, new GenerateOptions());
+    GenerateOptions options = new GenerateOptions();
+    options.setCacheFile(new File(rootInFolder, "out/outline-cache.bin"));
+    File firstToc = new File(rootInFolder, "out/first.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", firstToc, null, null, options);
+    GenerationMetrics metrics = new GenerationMetrics(0);
+    options.setMetrics(metrics);
+    File secondToc = new File(rootInFolder, "out/second.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", secondToc, null, null, options);
+
+    assertEquals(Files.toString(expectedToc, Charsets.UTF_8), Files.toString(firstToc, Charsets.UTF_8));
+    assertEquals(Files.toString(expectedToc, Charsets.UTF_8), Files.toString(secondToc, Charsets.UTF_8));
+    assertEquals("pages from cache", pages.size(), metrics.getPagesFromCache());
+    assertEquals("pages parsed", 0, metrics.getPagesParsed());
+  }
+
+  @Test
+  public void testGenerateWithContexts() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 2);
+    Files.write("<html><body><h1>Other page</h1></body></html>", new File(rootInFolder, "other.html"), Charsets.UTF_8);
+    HelpContext helpContext = new HelpContext() {
+      @Override
+      public String getId() {
+        return "my_context";
+      }
+
+      @Override
+      public List<String> getTopicPages() {
+        return Arrays.asList("page1.html", "other.html", "page1.html");
+      }
+    };
+
+    File outTocFile = new File(rootInFolder, "out/toc.xml");
+    File outContextsFile = new File(rootInFolder, "out/contexts.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", outTocFile, outContextsFile, Collections.singletonList(helpContext), new GenerateOptions());
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    sb.append("<?NLS TYPE=\"org.eclipse.help.contexts\"?>\n");
+    sb.append("<contexts>\n");
+    sb.append("    <context id=\"my_context\" title=\"Page 1\">\n");
+    sb.append("        <topic label=\"Page 1\" href=\"doc/page1.html\"/>\n");
+    sb.append("        <topic label=\"Other page\" href=\"doc/other.html\"/>\n");
+    sb.append("        <topic label=\"Page 1\" href=\"doc/page1.html\"/>\n");
+    sb.append("    </context>\n");
+    sb.append("</contexts>");
+    assertEquals(sb.toString(), Files.toString(outContextsFile, Charsets.UTF_8));
+  }
+
+  @Test
+  public void testGenerateMetrics() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 5);
+
+    GenerateOptions options = new GenerateOptions();
+    GenerationMetrics metrics = new GenerationMetrics(3);
+    options.setMetrics(metrics);
+    options.setThreads(2);
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", new File(rootInFolder, "out/toc.xml"), null, null, options);
+
+    assertEquals("pages parsed", 5, metrics.getPagesParsed());
+    assertEquals("pages from cache", 0, metrics.getPagesFromCache());
+    assertEquals("headers found", 20, metrics.getHeadersFound());
+    long expectedBytes = 0;
+    for (String page : pages) {
+      expectedBytes += new File(rootInFolder, page).length();
+    }
+    assertEquals("bytes read", expectedBytes, metrics.getBytesRead());
+    assertEquals("slowest pages", 3, metrics.getSlowestPages().size());
+  }
+
+  @Test
+  public void testGenerateSharedCacheAndExecutor() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 5);
+
+    OutlineCache cache = OutlineCache.createInMemory(HeaderExtractor.JSOUP);
+    ExecutorService executor = GenerateEclipseTocUtility.createExecutor(2);
+    GenerationMetrics metrics = new GenerationMetrics(0);
+    try {
+      GenerateOptions options = new GenerateOptions();
+      options.setOutlineCache(cache);
+      options.setExecutor(executor);
+      options.setMetrics(metrics);
+      GenerateEclipseTocUtility.generate(rootInFolder, pages.subList(0, 3), "doc", new File(rootInFolder, "out/book1.xml"), null, null, options);
+      GenerateEclipseTocUtility.generate(rootInFolder, pages.subList(1, 5), "doc", new File(rootInFolder, "out/book2.xml"), null, null, options);
+      assertFalse("executor is still usable", executor.isShutdown());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals("pages parsed", 5, metrics.getPagesParsed());
+    assertEquals("pages from cache", 2, metrics.getPagesFromCache());
+  }
+
+  @Test
+  public void testGenerateDocZip() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 5);
+    backdatePages(rootInFolder, pages);
+
+    File expectedToc = new File(rootInFolder, "out/expected.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", expectedToc, null, null, new GenerateOptions());
+    GenerateOptions options = new GenerateOptions();
+    options.setThreads(2);
+    options.setCacheFile(new File(rootInFolder, "out/outline-cache.bin"));
+    File docZipFile = new File(rootInFolder, "out/doc.zip");
+    options.setDocZipFile(docZipFile);
+    for (int i = 0; i < 2; i++) {
+      //the second generation takes the headers from the cache, but still reads the bytes of the pages for the zip
+      GenerationMetrics metrics = new GenerationMetrics(0);
+      options.setMetrics(metrics);
+      File outTocFile = new File(rootInFolder, "out/toc.xml");
+      GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", outTocFile, null, null, options);
+      assertEquals(Files.toString(expectedToc, Charsets.UTF_8), Files.toString(outTocFile, Charsets.UTF_8));
+      assertEquals("pages from cache " + i, i == 0 ? 0 : pages.size(), metrics.getPagesFromCache());
+
+      ZipFile zip = new ZipFile(docZipFile);
+      try {
+        assertEquals("entries", pages.size(), zip.size());
+        for (String page : pages) {
+          ZipEntry entry = zip.getEntry("doc/" + page);
+          assertNotNull("entry " + page, entry);
+          assertArrayEquals("content " + page, Files.toByteArray(new File(rootInFolder, page)), ByteStreams.toByteArray(zip.getInputStream(entry)));
+        }
+      }
+      finally {
+        zip.close();
+      }
+    }
+    assertFalse("temporary file", new File(rootInFolder, "out/doc.zip.tmp").exists());
+  }
+
+  @Test
+  public void testGenerateFromArchive() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    List<String> pages = createPages(rootInFolder, 5);
+    File expectedToc = new File(rootInFolder, "out/expected.xml");
+    GenerateEclipseTocUtility.generate(rootInFolder, pages, "doc", expectedToc, null, null, new GenerateOptions());
+
+    File archive = new File(rootInFolder, "out/pages.zip");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+    try {
+      for (String page : pages) {
+        ZipEntry entry = new ZipEntry(page);
+        //pages modified just before the cache is saved are not kept in the cache
+        entry.setTime(System.currentTimeMillis() - 60000L);
+        out.putNextEntry(entry);
+        out.write(Files.toByteArray(new File(rootInFolder, page)));
+        out.closeEntry();
+      }
+    }
+    finally {
+      out.close();
+    }
+
+    SourceFolder sourceFolder = SourceFolder.open(archive);
+    try {
+      assertTrue("archive", sourceFolder.isArchive());
+      GenerateOptions options = new GenerateOptions();
+      options.setThreads(2);
+      options.setCacheFile(new File(rootInFolder, "out/outline-cache.bin"));
+      options.setDiscoveredPages(PageDiscovery.discover(sourceFolder.getRoot(), Arrays.asList("*.html"), null, 1, null));
+      File outTocFile = new File(rootInFolder, "out/toc.xml");
+      GenerateEclipseTocUtility.generate(sourceFolder.getRoot(), pages, "doc", outTocFile, null, null, options);
+      assertEquals(Files.toString(expectedToc, Charsets.UTF_8), Files.toString(outTocFile, Charsets.UTF_8));
+
+      //the second generation takes the headers from the cache
+      GenerationMetrics metrics = new GenerationMetrics(0);
+      options.setMetrics(metrics);
+      GenerateEclipseTocUtility.generate(sourceFolder.getRoot(), pages, "doc", outTocFile, null, null, options);
+      assertEquals(Files.toString(expectedToc, Charsets.UTF_8), Files.toString(outTocFile, Charsets.UTF_8));
+      assertEquals("pages from cache", pages.size(), metrics.getPagesFromCache());
+    }
+    finally {
+      sourceFolder.close();
+    }
+  }
+
+  private static List<String> createPages(File rootInFolder, int count) throws IOException {
+    List<String> pages = new ArrayList<String>();
+    for (int i = 0; i < count; i++) {
+      String page = "page" + i + ".html";
+      StringBuilder sb = new StringBuilder();
+      sb.append("<html><body>");
+      sb.append("<h1 id=\"p" + i + "\">Page " + i + "</h1>");
+      sb.append("<h2 id=\"p" + i + "s1\">Section " + i + ".1</h2>");
+      sb.append("<h3 id=\"p" + i + "s11\">Section " + i + ".1.1</h3>");
+      sb.append("<h2 id=\"p" + i + "s2\">Section " + i + ".2</h2>");
+      sb.append("</body></html>");
+      Files.write(sb.toString(), new File(rootInFolder, page), Charsets.UTF_8);
+      pages.add(page);
+    }
+    return pages;
+  }
+
+  /**
+   * Pages modified just before the cache is saved are not kept in the cache.
+   */
+  private static void backdatePages(File rootInFolder, List<String> pages) {
+    long lastModified = System.currentTimeMillis() - 60000L;
+    for (String page : pages) {
+      assertTrue("backdate " + page, new File(rootInFolder, page).setLastModified(lastModified));
+    }
+  }
 }
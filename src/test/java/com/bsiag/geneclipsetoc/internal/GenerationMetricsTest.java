@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Measure;
+import com.bsiag.geneclipsetoc.internal.GenerationMetrics.Stage;
+
+/**
+ * Tests for {@link GenerationMetrics}
+ */
+public class GenerationMetricsTest {
+
+  @Test
+  public void testWallAndThreadTime() throws Exception {
+    GenerationMetrics metrics = new GenerationMetrics(0);
+    assertTrue(metrics.isEnabled());
+    //two overlapping measures of the same stage (as two threads parsing pages in parallel)
+    Measure m1 = metrics.start(Stage.PARSE);
+    Measure m2 = metrics.start(Stage.PARSE);
+    Thread.sleep(50);
+    metrics.end(m1);
+    metrics.end(m2);
+
+    long wall = TimeUnit.NANOSECONDS.toMillis(metrics.getStageWallNanos(Stage.PARSE));
+    long thread = TimeUnit.NANOSECONDS.toMillis(metrics.getStageThreadNanos(Stage.PARSE));
+    assertTrue("wall time " + wall, wall >= 50);
+    assertTrue("thread time " + thread, thread >= 2 * wall - 1);
+    assertEquals(0L, metrics.getStageWallNanos(Stage.READ));
+    assertTrue(metrics.toJson().contains("\"wallMillis\""));
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    GenerationMetrics metrics = GenerationMetrics.DISABLED;
+    assertFalse(metrics.isEnabled());
+    Measure measure = metrics.start(Stage.PARSE);
+    assertSame("no allocation", measure, metrics.start(Stage.READ));
+    assertEquals(0L, metrics.end(measure));
+    metrics.addPageParsed(3);
+    metrics.addBytesRead(100L);
+    metrics.setTotalNanos(10L);
+    assertEquals(0L, metrics.getStageThreadNanos(Stage.PARSE));
+    assertEquals(0L, metrics.getPagesParsed());
+    assertEquals(0L, metrics.getBytesRead());
+    assertEquals(0L, metrics.getTotalNanos());
+  }
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.bsiag.geneclipsetoc.maven.HelpContext;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link InputFingerprint}
+ */
+public class InputFingerprintTest {
+
+  private static final List<String> PAGES = Arrays.asList("index.html", "chapter.html");
+
+  @Test
+  public void testUnchangedInputs() throws Exception {
+    File folder = createPages();
+    File tocFile = new File(folder, "out/toc.xml");
+    List<HelpContext> contexts = Collections.singletonList(createHelpContext("context", "topic.html"));
+    String fingerprint = InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, contexts, new GenerateOptions());
+    assertEquals(fingerprint, InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, contexts, new GenerateOptions()));
+
+    //the attributes of discovered pages are used instead of the files:
+    GenerateOptions options = new GenerateOptions();
+    options.setDiscoveredPages(PageDiscovery.discover(folder, Arrays.asList("*.html"), null, 1));
+    assertEquals("discovered pages", fingerprint, InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, contexts, options));
+  }
+
+  @Test
+  public void testChangedInputs() throws Exception {
+    File folder = createPages();
+    File tocFile = new File(folder, "out/toc.xml");
+    File topicPage = new File(folder, "topic.html");
+    List<HelpContext> contexts = Collections.singletonList(createHelpContext("context", "topic.html"));
+    String fingerprint = InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, contexts, new GenerateOptions());
+
+    assertFalse("help prefix", fingerprint.equals(InputFingerprint.compute(folder, PAGES, "other", tocFile, null, contexts, new GenerateOptions())));
+    assertFalse("pages", fingerprint.equals(InputFingerprint.compute(folder, PAGES.subList(0, 1), "doc", tocFile, null, contexts, new GenerateOptions())));
+    assertFalse("help context id", fingerprint.equals(InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, Collections.singletonList(createHelpContext("other", "topic.html")), new GenerateOptions())));
+    assertFalse("help context topic", fingerprint.equals(InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, Collections.singletonList(createHelpContext("context", "index.html")), new GenerateOptions())));
+
+    GenerateOptions options = new GenerateOptions();
+    options.setTocSplitLevel(1);
+    assertFalse("toc split level", fingerprint.equals(InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, contexts, options)));
+    options = new GenerateOptions();
+    options.setHeaderExtractor(HeaderExtractor.STREAMING);
+    assertFalse("header extractor", fingerprint.equals(InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, contexts, options)));
+    options = new GenerateOptions();
+    options.setValidateLinks(true);
+    assertFalse("validate links", fingerprint.equals(InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, contexts, options)));
+
+    //the modification time of a topic page of a help context
+    assertTrue(topicPage.setLastModified(topicPage.lastModified() - 10000L));
+    String changed = InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, contexts, new GenerateOptions());
+    assertFalse("topic page modified", fingerprint.equals(changed));
+    fingerprint = changed;
+
+    //the size of a page
+    File page = new File(folder, "chapter.html");
+    long lastModified = page.lastModified();
+    Files.write("<h1 id=\"c\">Chapter, modified</h1>", page, Charsets.UTF_8);
+    assertTrue(page.setLastModified(lastModified));
+    changed = InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, contexts, new GenerateOptions());
+    assertFalse("page size", fingerprint.equals(changed));
+    fingerprint = changed;
+
+    //the modification time of a page (same size)
+    assertTrue(page.setLastModified(lastModified - 10000L));
+    assertFalse("page modification time", fingerprint.equals(InputFingerprint.compute(folder, PAGES, "doc", tocFile, null, contexts, new GenerateOptions())));
+  }
+
+  @Test
+  public void testIsUpToDate() throws Exception {
+    File folder = createPages();
+    File tocFile = new File(folder, "out/toc.xml");
+    File contextsFile = new File(folder, "out/contexts.xml");
+    File fingerprintFile = new File(folder, "out/toc.xml.fingerprint");
+    GenerateOptions options = new GenerateOptions();
+    String fingerprint = InputFingerprint.compute(folder, PAGES, "doc", tocFile, contextsFile, null, options);
+    assertFalse("no previous generation", InputFingerprint.isUpToDate(fingerprintFile, fingerprint, folder.toPath(), PAGES, tocFile, contextsFile, null, options));
+
+    GenerateEclipseTocUtility.generate(folder, PAGES, "doc", tocFile, contextsFile, null, options);
+    InputFingerprint.write(fingerprintFile, fingerprint, System.currentTimeMillis(), 0, null);
+    assertTrue("unchanged", InputFingerprint.isUpToDate(fingerprintFile, fingerprint, folder.toPath(), PAGES, tocFile, contextsFile, null, options));
+    assertFalse("other fingerprint", InputFingerprint.isUpToDate(fingerprintFile, fingerprint + "0", folder.toPath(), PAGES, tocFile, contextsFile, null, options));
+
+    //the contexts file is only expected with help contexts
+    List<HelpContext> contexts = Collections.singletonList(createHelpContext("context", "topic.html"));
+    assertFalse("missing contexts file", InputFingerprint.isUpToDate(fingerprintFile, fingerprint, folder.toPath(), PAGES, tocFile, contextsFile, contexts, options));
+
+    //the sub toc files written by the previous generation
+    InputFingerprint.write(fingerprintFile, fingerprint, System.currentTimeMillis(), 2, null);
+    assertFalse("missing sub toc files", InputFingerprint.isUpToDate(fingerprintFile, fingerprint, folder.toPath(), PAGES, tocFile, contextsFile, null, options));
+    InputFingerprint.write(fingerprintFile, fingerprint, System.currentTimeMillis(), 0, null);
+    Files.write("<toc/>", new File(folder, "out/toc-1.xml"), Charsets.UTF_8);
+    assertFalse("stale sub toc file", InputFingerprint.isUpToDate(fingerprintFile, fingerprint, folder.toPath(), PAGES, tocFile, contextsFile, null, options));
+    assertTrue(new File(folder, "out/toc-1.xml").delete());
+
+    //the other output files
+    File docZipFile = new File(folder, "out/doc.zip");
+    options.setDocZipFile(docZipFile);
+    assertFalse("missing archive", InputFingerprint.isUpToDate(fingerprintFile, fingerprint, folder.toPath(), PAGES, tocFile, contextsFile, null, options));
+    Files.write("zip", docZipFile, Charsets.UTF_8);
+    assertTrue("archive present", InputFingerprint.isUpToDate(fingerprintFile, fingerprint, folder.toPath(), PAGES, tocFile, contextsFile, null, options));
+    options.setDocZipFile(null);
+
+    //a page modified just before the fingerprint was computed could have been modified again after it was read
+    File chapter = new File(folder, "chapter.html");
+    assertTrue(chapter.setLastModified(System.currentTimeMillis()));
+    String racyFingerprint = InputFingerprint.compute(folder, PAGES, "doc", tocFile, contextsFile, null, options);
+    InputFingerprint.write(fingerprintFile, racyFingerprint, System.currentTimeMillis(), 0, null);
+    assertFalse("recently modified page", InputFingerprint.isUpToDate(fingerprintFile, racyFingerprint, folder.toPath(), PAGES, tocFile, contextsFile, null, options));
+    InputFingerprint.write(fingerprintFile, racyFingerprint, System.currentTimeMillis() + 60000L, 0, null);
+    assertTrue("page modified long before", InputFingerprint.isUpToDate(fingerprintFile, racyFingerprint, folder.toPath(), PAGES, tocFile, contextsFile, null, options));
+
+    assertTrue(tocFile.delete());
+    assertFalse("missing toc file", InputFingerprint.isUpToDate(fingerprintFile, fingerprint, folder.toPath(), PAGES, tocFile, contextsFile, null, options));
+  }
+
+  @Test
+  public void testLinkTargets() throws Exception {
+    File folder = Files.createTempDir();
+    File image = new File(folder, "images/image.png");
+    Files.createParentDirs(image);
+    Files.write("image", image, Charsets.UTF_8);
+    File fingerprintFile = new File(folder, "out/toc.xml.fingerprint");
+
+    Map<String, Boolean> linkTargets = new LinkedHashMap<String, Boolean>();
+    linkTargets.put("images/image.png", true);
+    linkTargets.put("missing.html", false);
+    InputFingerprint.write(fingerprintFile, "abc", System.currentTimeMillis(), 2, linkTargets);
+    assertEquals("abc", InputFingerprint.read(fingerprintFile));
+    assertEquals(2, InputFingerprint.readSubTocFiles(fingerprintFile));
+    assertTrue(InputFingerprint.isLinkTargetsUnchanged(fingerprintFile, folder.toPath()));
+
+    Files.write("<h1>Created</h1>", new File(folder, "missing.html"), Charsets.UTF_8);
+    assertFalse("created target", InputFingerprint.isLinkTargetsUnchanged(fingerprintFile, folder.toPath()));
+    assertTrue(new File(folder, "missing.html").delete());
+    assertTrue(image.delete());
+    assertFalse("deleted target", InputFingerprint.isLinkTargetsUnchanged(fingerprintFile, folder.toPath()));
+
+    InputFingerprint.write(fingerprintFile, "abc", System.currentTimeMillis(), 0, null);
+    assertTrue("no link target", InputFingerprint.isLinkTargetsUnchanged(fingerprintFile, folder.toPath()));
+  }
+
+  private static File createPages() throws Exception {
+    File folder = Files.createTempDir();
+    Files.write("<h1>Book</h1>", new File(folder, "index.html"), Charsets.UTF_8);
+    Files.write("<h1 id=\"c\">Chapter</h1>", new File(folder, "chapter.html"), Charsets.UTF_8);
+    Files.write("<h1>Topic</h1>", new File(folder, "topic.html"), Charsets.UTF_8);
+    //pages modified just before the fingerprint is computed are not trusted
+    for (File page : folder.listFiles()) {
+      assertTrue(page.setLastModified(System.currentTimeMillis() - 60000L));
+    }
+    return folder;
+  }
+
+  private static HelpContext createHelpContext(final String id, final String topicPage) {
+    return new HelpContext() {
+      @Override
+      public String getId() {
+        return id;
+      }
+
+      @Override
+      public List<String> getTopicPages() {
+        return Collections.singletonList(topicPage);
+      }
+    };
+  }
+}
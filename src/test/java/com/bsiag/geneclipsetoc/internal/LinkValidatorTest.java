@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link LinkValidator}
+ */
+public class LinkValidatorTest {
+
+  @Test
+  public void testIsExternal() throws Exception {
+    assertTrue(LinkValidator.isExternal("http://www.eclipse.org"));
+    assertTrue(LinkValidator.isExternal("mailto:info@example.com"));
+    assertTrue(LinkValidator.isExternal("/absolute/page.html"));
+    assertFalse(LinkValidator.isExternal("page.html"));
+    assertFalse(LinkValidator.isExternal("../folder/page.html#a:b"));
+    assertFalse(LinkValidator.isExternal("#anchor"));
+    assertFalse(LinkValidator.isExternal(":page.html"));
+  }
+
+  @Test
+  public void testResolve() throws Exception {
+    assertEquals("other.html", LinkValidator.resolve("page.html", "other.html"));
+    assertEquals("folder/other.html", LinkValidator.resolve("folder/page.html", "other.html"));
+    assertEquals("other.html", LinkValidator.resolve("folder/page.html", "../other.html"));
+    assertEquals("folder/sub/other.html", LinkValidator.resolve("folder/page.html", "./sub//other.html"));
+    assertNull(LinkValidator.resolve("folder/page.html", "../../other.html"));
+  }
+
+  @Test
+  public void testValidate() throws Exception {
+    File rootInFolder = Files.createTempDir();
+    Files.write("image", new File(rootInFolder, "image.png"), Charsets.UTF_8);
+
+    List<Page> pages = Arrays.asList(
+        createPage("page1.html", new String[]{"a", "b"}, new String[]{"a"},
+            "#a", "#missing", "page2.html#c", "page2.html#d", "image.png", "image.png#x", "missing.html", "http://www.eclipse.org", "../outside.html"),
+        createPage("folder/page2.html", new String[]{"c"}, new String[0],
+            "../page1.html?q=1#b", "../page1.html#c", "page%201.html", ""));
+    ValidationReport report = new ValidationReport();
+    LinkValidator.validate(rootInFolder.toPath(), pages, report);
+
+    List<String> expected = Arrays.asList(
+        "folder/page2.html:",
+        "  - broken link '../page1.html#c': anchor 'c' not found in 'page1.html'",
+        "  - broken link 'page%201.html': file 'folder/page 1.html' not found",
+        "page1.html:",
+        "  - duplicate id 'a'",
+        "  - broken link '#missing': anchor 'missing' not found in 'page1.html'",
+        "  - broken link 'page2.html#c': file 'page2.html' not found",
+        "  - broken link 'page2.html#d': file 'page2.html' not found",
+        "  - broken link 'missing.html': file 'missing.html' not found");
+    assertEquals(expected, report.toLines());
+    assertEquals(7, report.size());
+
+    Map<String, Boolean> checkedFiles = new LinkedHashMap<String, Boolean>();
+    checkedFiles.put("folder/page 1.html", false);
+    checkedFiles.put("image.png", true);
+    checkedFiles.put("missing.html", false);
+    checkedFiles.put("page2.html", false);
+    assertEquals("checked files", checkedFiles, report.getCheckedFiles());
+  }
+
+  private static Page createPage(String filePath, String[] ids, String[] duplicateIds, String... hrefs) {
+    Page page = new Page(null, filePath);
+    page.setLinks(new PageLinks.Links(ids, duplicateIds, hrefs));
+    return page;
+  }
+}
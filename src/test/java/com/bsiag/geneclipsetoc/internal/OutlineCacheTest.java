@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link OutlineCache}
+ */
+public class OutlineCacheTest {
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    File folder = Files.createTempDir();
+    File page = new File(folder, "page.html");
+    Files.write("<h1>Title</h1><h2 id=\"s1\">Section</h2>", page, Charsets.UTF_8);
+    page.setLastModified(System.currentTimeMillis() - 60000L);
+    File cacheFile = new File(folder, "cache/outline-cache.bin");
+
+    OutlineCache cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    assertNull(cache.get(page, page.length(), page.lastModified()));
+    cache.put(page, page.length(), page.lastModified(), Arrays.asList(new PageHeader(1, null, "Title"), new PageHeader(2, "s1", "Section")));
+    cache.save();
+
+    cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    List<PageHeader> headers = cache.get(page, page.length(), page.lastModified());
+    assertEquals("headers size", 2, headers.size());
+    assertEquals("first header level", 1, headers.get(0).getLevel());
+    assertNull("first header id", headers.get(0).getId());
+    assertEquals("first header text", "Title", headers.get(0).getText());
+    assertEquals("second header level", 2, headers.get(1).getLevel());
+    assertEquals("second header id", "s1", headers.get(1).getId());
+    assertEquals("second header text", "Section", headers.get(1).getText());
+
+    assertNull("modified page", cache.get(page, page.length() + 1, page.lastModified()));
+    assertNull("other extractor", OutlineCache.load(cacheFile, HeaderExtractor.STREAMING).get(page, page.length(), page.lastModified()));
+  }
+
+  @Test
+  public void testSaveAndLoadLinks() throws Exception {
+    File folder = Files.createTempDir();
+    File page = new File(folder, "page.html");
+    Files.write("<h1 id=\"t\">Title</h1><a href=\"other.html#x\">other</a>", page, Charsets.UTF_8);
+    page.setLastModified(System.currentTimeMillis() - 60000L);
+    File cacheFile = new File(folder, "cache/outline-cache.bin");
+
+    OutlineCache cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    cache.put(page.toPath(), page.length(), page.lastModified(), Arrays.asList(new PageHeader(1, "t", "Title")), new PageLinks.Links(new String[]{"t"}, new String[0], new String[]{"other.html#x"}), null);
+    cache.save();
+
+    cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    PageLinks.Links links = cache.getLinks(page.toPath(), page.length(), page.lastModified());
+    assertArrayEquals("ids", new String[]{"t"}, links.getIds());
+    assertArrayEquals("duplicate ids", new String[0], links.getDuplicateIds());
+    assertArrayEquals("hrefs", new String[]{"other.html#x"}, links.getHrefs());
+  }
+
+  @Test
+  public void testCorruptedCache() throws Exception {
+    File folder = Files.createTempDir();
+    File page = new File(folder, "page.html");
+    Files.write("<h1>Title</h1>", page, Charsets.UTF_8);
+    File cacheFile = new File(folder, "outline-cache.bin");
+    Files.write("not a cache", cacheFile, Charsets.UTF_8);
+
+    OutlineCache cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    assertNull(cache.get(page, page.length(), page.lastModified()));
+  }
+
+  @Test
+  public void testSaveKeepsUnmodifiedPages() throws Exception {
+    File folder = Files.createTempDir();
+    File page1 = new File(folder, "page1.html");
+    File page2 = new File(folder, "page2.html");
+    File page3 = new File(folder, "page3.html");
+    for (File page : Arrays.asList(page1, page2, page3)) {
+      Files.write("<h1>" + page.getName() + "</h1>", page, Charsets.UTF_8);
+      page.setLastModified(System.currentTimeMillis() - 60000L);
+    }
+    File cacheFile = new File(folder, "outline-cache.bin");
+    List<PageHeader> headers = Arrays.asList(new PageHeader(1, null, "Title"));
+
+    OutlineCache cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    cache.put(page1, page1.length(), page1.lastModified(), headers);
+    cache.put(page2, page2.length(), page2.lastModified(), headers);
+    cache.put(page3, page3.length(), page3.lastModified(), headers);
+    cache.save();
+
+    //only page1 is used (the other pages belong to a book that is up to date), page3 is deleted:
+    long page3Length = page3.length();
+    long page3LastModified = page3.lastModified();
+    assertTrue(page3.delete());
+    cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    assertEquals(headers.size(), cache.get(page1, page1.length(), page1.lastModified()).size());
+    cache.save();
+
+    cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    assertEquals("used page", headers.size(), cache.get(page1, page1.length(), page1.lastModified()).size());
+    assertEquals("unmodified page", headers.size(), cache.get(page2, page2.length(), page2.lastModified()).size());
+    assertNull("deleted page", cache.get(page3, page3Length, page3LastModified));
+    cache.save();
+
+    //a modified page is dropped:
+    page2.setLastModified(page2.lastModified() - 10000L);
+    cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    cache.save();
+    cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    assertNull("modified page", cache.get(page2, page2.length(), page2.lastModified() + 10000L));
+  }
+
+  @Test
+  public void testInvalidSizeInCache() throws Exception {
+    File folder = Files.createTempDir();
+    File page = new File(folder, "page.html");
+    Files.write("<h1>Title</h1>", page, Charsets.UTF_8);
+    page.setLastModified(System.currentTimeMillis() - 60000L);
+    File cacheFile = new File(folder, "outline-cache.bin");
+
+    OutlineCache cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    cache.put(page, page.length(), page.lastModified(), Arrays.asList(new PageHeader(1, null, "Title")));
+    cache.save();
+
+    //the last value is the size of the contexts (-1), replace it with a huge size:
+    byte[] content = Files.toByteArray(cacheFile);
+    for (int i = content.length - 4; i < content.length; i++) {
+      content[i] = (byte) (i == content.length - 4 ? 0x7f : 0xff);
+    }
+    Files.write(content, cacheFile);
+    cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    assertNull(cache.get(page, page.length(), page.lastModified()));
+
+    //negative size:
+    content[content.length - 4] = (byte) 0x80;
+    Files.write(content, cacheFile);
+    cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    assertNull(cache.get(page, page.length(), page.lastModified()));
+  }
+
+  @Test
+  public void testRecentlyModifiedPageNotTrusted() throws Exception {
+    File folder = Files.createTempDir();
+    File page = new File(folder, "page.html");
+    Files.write("<h1>Title</h1>", page, Charsets.UTF_8);
+    File cacheFile = new File(folder, "outline-cache.bin");
+
+    //the page could be modified again with the same size and the same modification time
+    long oldModification = System.currentTimeMillis() - 60000L;
+    OutlineCache cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    cache.put(page, page.length(), page.lastModified(), Arrays.asList(new PageHeader(1, null, "Title")));
+    cache.put(new File(folder, "old.html"), 10L, oldModification, Arrays.asList(new PageHeader(1, null, "Old")));
+    cache.save();
+
+    cache = OutlineCache.load(cacheFile, HeaderExtractor.JSOUP);
+    assertNull(cache.get(page, page.length(), page.lastModified()));
+    List<PageHeader> headers = cache.get(new File(folder, "old.html"), 10L, oldModification);
+    assertEquals("old page", "Old", headers.get(0).getText());
+  }
+
+  @Test
+  public void testInMemoryInvalidate() throws Exception {
+    File folder = Files.createTempDir();
+    File page1 = new File(folder, "page1.html");
+    File page2 = new File(folder, "sub/page2.html");
+    List<PageHeader> headers = Arrays.asList(new PageHeader(1, null, "Title"));
+
+    OutlineCache cache = OutlineCache.createInMemory(HeaderExtractor.STREAMING);
+    cache.put(page1, 10L, 20L, headers);
+    cache.put(page2, 10L, 20L, headers);
+    cache.save();
+    assertFalse("nothing is written", new File(folder, "outline-cache.bin").exists());
+    assertEquals(headers, cache.get(page1, 10L, 20L));
+
+    cache.invalidate(page1);
+    assertNull(cache.get(page1, 10L, 20L));
+    assertEquals(headers, cache.get(page2, 10L, 20L));
+
+    cache.invalidate(new File(folder, "sub"));
+    assertNull(cache.get(page2, 10L, 20L));
+  }
+
+  @Test
+  public void testInMemoryInvalidateArchive() throws Exception {
+    File folder = Files.createTempDir();
+    File archive = new File(folder, "pages.zip");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+    try {
+      out.putNextEntry(new ZipEntry("page.html"));
+      out.write("<h1>Title</h1>".getBytes(Charsets.UTF_8));
+      out.closeEntry();
+    }
+    finally {
+      out.close();
+    }
+    List<PageHeader> headers = Arrays.asList(new PageHeader(1, null, "Title"));
+
+    SourceFolder sourceFolder = SourceFolder.open(archive);
+    try {
+      Path page = sourceFolder.getRoot().resolve("page.html");
+      OutlineCache cache = OutlineCache.createInMemory(HeaderExtractor.STREAMING);
+      cache.put(page, 10L, 20L, headers, null, null);
+      assertEquals(headers, cache.get(page, 10L, 20L));
+
+      cache.invalidate(archive);
+      assertNull("all the pages of the archive are removed", cache.get(page, 10L, 20L));
+    }
+    finally {
+      sourceFolder.close();
+    }
+  }
+}
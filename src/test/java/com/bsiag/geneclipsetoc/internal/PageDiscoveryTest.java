@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link PageDiscovery}
+ */
+public class PageDiscoveryTest {
+
+  @Test
+  public void testDiscover() throws Exception {
+    File folder = Files.createTempDir();
+    for (String name : Arrays.asList("index.html", "b.html", "a/z.html", "a/b/c.html", "a/a.html", "a/skip.html", "a/notes.txt", "internal/x.html", "internal/sub/y.html")) {
+      File file = new File(folder, name);
+      Files.createParentDirs(file);
+      Files.write("<h1>" + name + "</h1>", file, Charsets.UTF_8);
+    }
+
+    for (int threads : Arrays.asList(1, 4)) {
+      List<DiscoveredPage> pages = PageDiscovery.discover(folder, Arrays.asList("**/*.html"), Arrays.asList("internal/**", "**/skip.html"), threads);
+      assertEquals(Arrays.asList("b.html", "index.html", "a/a.html", "a/z.html", "a/b/c.html"), toNames(pages));
+
+      DiscoveredPage page = pages.get(3);
+      File file = new File(folder, "a/z.html");
+      assertEquals(file.getAbsoluteFile(), page.getPath().toFile().getAbsoluteFile());
+      assertEquals(file.length(), page.getLength());
+      assertTrue(page.getLastModified() > 0);
+    }
+
+    List<DiscoveredPage> pages = PageDiscovery.discover(folder, Arrays.asList("*.html", "a/*.html"), null, 1);
+    assertEquals(Arrays.asList("b.html", "index.html", "a/a.html", "a/skip.html", "a/z.html"), toNames(pages));
+  }
+
+  @Test
+  public void testSymbolicLinks() throws Exception {
+    File folder = Files.createTempDir();
+    File page = new File(folder, "a/page.html");
+    Files.createParentDirs(page);
+    Files.write("<h1>Page</h1>", page, Charsets.UTF_8);
+    try {
+      java.nio.file.Files.createSymbolicLink(new File(folder, "a/loop").toPath(), folder.toPath());
+      java.nio.file.Files.createSymbolicLink(new File(folder, "a/linked.html").toPath(), page.toPath());
+      java.nio.file.Files.createSymbolicLink(new File(folder, "dangling.html").toPath(), new File(folder, "missing.html").toPath());
+    }
+    catch (UnsupportedOperationException e) {
+      //symbolic links are not supported on this platform
+      return;
+    }
+
+    for (int threads : Arrays.asList(1, 4)) {
+      List<String> skipped = new ArrayList<String>();
+      List<DiscoveredPage> pages = PageDiscovery.discover(folder.toPath(), Arrays.asList("**/*.html"), null, threads, skipped);
+      assertEquals(Arrays.asList("a/linked.html", "a/page.html"), toNames(pages));
+      assertEquals("skipped entries " + skipped, 2, skipped.size());
+      assertTrue(skipped.get(0), skipped.get(0).startsWith("a/loop: "));
+      assertTrue(skipped.get(1), skipped.get(1).startsWith("dangling.html: "));
+    }
+  }
+
+  @Test
+  public void testPageOrder() throws Exception {
+    List<String> names = new ArrayList<String>(Arrays.asList("x/a.html", "b.html", "x/y/a.html", "a.html", "w/z.html", "x/b.html"));
+    Collections.sort(names, PageDiscovery.PAGE_ORDER);
+    assertEquals(Arrays.asList("a.html", "b.html", "w/z.html", "x/a.html", "x/b.html", "x/y/a.html"), names);
+  }
+
+  @Test
+  public void testGenerateWithDiscoveredPages() throws Exception {
+    File folder = Files.createTempDir();
+    Files.write("<h1>Book</h1>", new File(folder, "index.html"), Charsets.UTF_8);
+    File chapter = new File(folder, "chapters/chapter1.html");
+    Files.createParentDirs(chapter);
+    Files.write("<h1 id=\"c1\">Chapter 1</h1>", chapter, Charsets.UTF_8);
+
+    GenerateOptions options = new GenerateOptions();
+    options.setDiscoveredPages(PageDiscovery.discover(folder, Arrays.asList("**/*.html"), null, 2));
+    List<String> pages = Arrays.asList("index.html", "chapters/chapter1.html");
+    File tocFile = new File(folder, "out/toc.xml");
+    GenerateEclipseTocUtility.generate(folder, pages, null, tocFile, null, null, options);
+
+    File expectedFile = new File(folder, "out/expected.xml");
+    GenerateEclipseTocUtility.generate(folder, pages, null, expectedFile, null, null);
+    assertEquals(Files.toString(expectedFile, Charsets.UTF_8), Files.toString(tocFile, Charsets.UTF_8));
+  }
+
+  private static List<String> toNames(List<DiscoveredPage> pages) {
+    List<String> names = new ArrayList<String>();
+    for (DiscoveredPage page : pages) {
+      names.add(page.getName());
+    }
+    return names;
+  }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link PageReader}
+ */
+public class PageReaderTest {
+
+  @Test
+  public void testSmallFile() throws Exception {
+    String content = "<h1>Café “quoted” 😀</h1>";
+    File file = createFile(content);
+    runTest(content, file);
+    //buffers of the thread are reused:
+    runTest("<h1>A</h1>", createFile("<h1>A</h1>"));
+    runTest(content, file);
+  }
+
+  @Test
+  public void testEmptyFile() throws Exception {
+    runTest("", createFile(""));
+  }
+
+  @Test
+  public void testLargeFile() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    int i = 0;
+    while (sb.length() <= PageReader.MAX_RETAINED_BUFFER_SIZE) {
+      sb.append("<p>Paragraph é ").append(i++).append("</p>\n");
+    }
+    String content = sb.toString();
+    File file = createFile(content);
+    runTest(content, file);
+    //the buffers of the large page are not reused:
+    runTest("<h1>A</h1>", createFile("<h1>A</h1>"));
+
+    //the file is not locked (not mapped) once it is read
+    PageReader.read(file, new GenerationMetrics(0));
+    assertTrue(file.delete());
+  }
+
+  @Test
+  public void testReleaseBuffers() throws Exception {
+    String content = "<h1>A</h1>";
+    File file = createFile(content);
+    runTest(content, file);
+    PageReader.releaseBuffers();
+    runTest(content, file);
+  }
+
+  @Test
+  public void testMalformedInput() throws Exception {
+    File file = File.createTempFile("page", ".html");
+    Files.write(new byte[]{'a', (byte) 0xC3, 'b'}, file);
+    String expected = new String(Files.toByteArray(file), Charsets.UTF_8);
+    runTest(expected, file);
+  }
+
+  private static File createFile(String content) throws Exception {
+    File file = File.createTempFile("page", ".html");
+    Files.write(content, file, Charsets.UTF_8);
+    return file;
+  }
+
+  private static void runTest(String expected, File file) throws Exception {
+    GenerationMetrics metrics = new GenerationMetrics(0);
+    assertEquals("read", expected, PageReader.read(file, metrics).toString());
+    assertEquals("bytes read", file.length(), metrics.getBytesRead());
+
+    Reader reader = PageReader.openReader(file, metrics);
+    try {
+      assertEquals("openReader", expected, CharStreams.toString(reader));
+    }
+    finally {
+      reader.close();
+    }
+    assertEquals("bytes read", 2 * file.length(), metrics.getBytesRead());
+  }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link SharedHeaderCache}
+ */
+public class SharedHeaderCacheTest {
+
+  @Test
+  public void testReadHeaders() throws Exception {
+    File folder = Files.createTempDir();
+    File page = new File(folder, "page.html");
+    Files.write("<h1>Title</h1><h2 id=\"s1\">Section</h2>", page, Charsets.UTF_8);
+
+    SharedHeaderCache cache = new SharedHeaderCache(1024 * 1024);
+    GenerationMetrics metrics = new GenerationMetrics(0);
+    SharedHeaderCache.Entry entry = cache.readHeaders(HeaderExtractor.JSOUP, page.toPath(), metrics, PageCollector.Options.NONE);
+    assertEquals("headers size", 2, entry.getHeaders().size());
+    assertNull("links", entry.getLinks());
+    entry = cache.readHeaders(HeaderExtractor.JSOUP, new File(folder, "./page.html").toPath(), metrics, PageCollector.Options.NONE);
+    assertEquals("headers size", 2, entry.getHeaders().size());
+    assertEquals("pages parsed", 1, metrics.getPagesParsed());
+    assertEquals("pages from cache", 1, metrics.getPagesFromCache());
+
+    entry = cache.readHeaders(HeaderExtractor.JSOUP, page.toPath(), metrics, PageCollector.Options.NONE.withLinks());
+    assertNotNull("links", entry.getLinks());
+    assertArrayEquals("anchors", new String[]{"s1"}, entry.getLinks().getIds());
+    assertEquals("pages parsed", 2, metrics.getPagesParsed());
+
+    entry = cache.readHeaders(HeaderExtractor.STREAMING, page.toPath(), metrics, PageCollector.Options.NONE);
+    assertEquals("headers size", 2, entry.getHeaders().size());
+    assertEquals("pages parsed", 3, metrics.getPagesParsed());
+
+    Files.write("<h1>Title</h1>", page, Charsets.UTF_8);
+    entry = cache.readHeaders(HeaderExtractor.JSOUP, page.toPath(), metrics, PageCollector.Options.NONE);
+    assertEquals("headers size", 1, entry.getHeaders().size());
+    assertEquals("pages parsed", 4, metrics.getPagesParsed());
+    assertEquals("hit count", 2, cache.getStats().hitCount());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    File folder = Files.createTempDir();
+    SharedHeaderCache cache = new SharedHeaderCache(1000);
+    GenerationMetrics metrics = new GenerationMetrics(0);
+    for (int i = 0; i < 20; i++) {
+      File page = new File(folder, "page" + i + ".html");
+      Files.write("<h1>Title " + i + "</h1><h2>Section " + i + "</h2>", page, Charsets.UTF_8);
+      cache.readHeaders(HeaderExtractor.JSOUP, page.toPath(), metrics, PageCollector.Options.NONE);
+    }
+    assertTrue("size is bounded", cache.size() < 20);
+    assertTrue("evictions", cache.getStats().evictionCount() > 0);
+  }
+}
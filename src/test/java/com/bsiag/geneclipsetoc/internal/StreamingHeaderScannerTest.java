@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+/**
+ * Tests for {@link StreamingHeaderScanner}
+ */
+public class StreamingHeaderScannerTest {
+
+  @Test
+  public void testSimplePage() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<!DOCTYPE html>");
+    sb.append("<html>");
+    sb.append("<head>");
+    sb.append("<title>Lorem</title>");
+    sb.append("<script>var s = '<h1 id=\"x\">not a header</h1>';</script>");
+    sb.append("</head>");
+    sb.append("<body>");
+    sb.append("<h1 id=\"n100\">Lorem</h1>");
+    sb.append("<p>Some <b>text</b> &amp; <a href=\"page.html\">a link</a>.</p>");
+    sb.append("<h3 id=\"n101\">Utos lorem</h3>");
+    sb.append("<!-- <h2 id=\"comment\">Comment</h2> -->");
+    sb.append("<h2><a id=\"n201\"/>Dolore ipsum</h2>");
+    sb.append("<table><tr><td>cell</td></tr></table>");
+    sb.append("</body>");
+    sb.append("</html>");
+    assertSameHeaders(sb.toString());
+  }
+
+  @Test
+  public void testHeaderText() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<h1 id=\"a\">  Lorem\n   <em>ipsum</em>   dolor  </h1>");
+    sb.append("<h2 id='b'>Caf&eacute; &lt;tag&gt; &#8220;quoted&#x201D; &copy 2015 &nbsp;x</h2>");
+    sb.append("<h3 id=b2>Line<br>break<br/>again</h3>");
+    sb.append("<h4 id=\"c\">A &unknown; &amp B &#; C</h4>");
+    sb.append("<h5 id=\"d\">Script <script>ignored()</script>after</h5>");
+    sb.append("<h6 id=\"e\">3 < 4 and 5 > 4</h6>");
+    assertSameHeaders(sb.toString());
+  }
+
+  @Test
+  public void testHeaderIds() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<h1>No id</h1>");
+    sb.append("<h2 class=\"x\" ID=\"upper\">Upper case attribute</h2>");
+    sb.append("<h2 id=\"\"><a name=\"n\"></a><a id=\"second\">Second anchor</a></h2>");
+    sb.append("<h3><a id=\"first\"></a><a id=\"other\"></a>Two anchors</h3>");
+    sb.append("<h3 title=\"a > b\" id=\"quoted\">Quoted attribute</h3>");
+    sb.append("<h4 id=\"x&amp;y\">Encoded id</h4>");
+    sb.append("<h4 data-id=\"wrong\">Other attribute</h4>");
+    assertSameHeaders(sb.toString());
+  }
+
+  @Test
+  public void testUnclosedHeaders() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<body><div><h1 id=\"a\">First");
+    sb.append("<h2 id=\"b\">Second</div>");
+    sb.append("<p>Paragraph</p>");
+    sb.append("<h3 id=\"c\">Third</h4>");
+    sb.append("<h4 id=\"d\">Last");
+    assertSameHeaders(sb.toString());
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    assertSameHeaders("");
+    assertSameHeaders("<html><body><p>No header</p></body></html>");
+  }
+
+  @Test
+  public void testLinks() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<html><body>");
+    sb.append("<h1 id=\"title\">Title</h1>");
+    sb.append("<p id='intro'>See <a href=\" other.html#sec \">other</a> and <a href=\"#title\">top</a>.</p>");
+    sb.append("<a name=\"old\"></a><a id=\"x\" name=\"x\"></a>");
+    sb.append("<div id=\"intro\"><map><area href=\"img.html\"></map></div>");
+    sb.append("<link href=\"style.css\"><span name=\"ignored\"></span>");
+    sb.append("<a href=\"a&amp;b.html\">amp</a>");
+    sb.append("</body></html>");
+    String html = sb.toString();
+
+    PageLinks expected = new PageLinks();
+    GenerateEclipseTocUtility.computeLinks(Jsoup.parse(html), expected);
+    PageCollector collector = new PageCollector(PageCollector.Options.NONE.withLinks());
+    StreamingHeaderScanner.scan(new StringReader(html), collector);
+    PageLinks.Links actual = collector.buildLinks();
+
+    assertSameLinks(expected.build(), actual);
+    assertEquals(new HashSet<String>(Arrays.asList("title", "intro", "old", "x")), new HashSet<String>(Arrays.asList(actual.getIds())));
+    assertEquals(new HashSet<String>(Arrays.asList("intro")), new HashSet<String>(Arrays.asList(actual.getDuplicateIds())));
+    assertEquals(new HashSet<String>(Arrays.asList("other.html#sec", "#title", "img.html", "a&b.html")), new HashSet<String>(Arrays.asList(actual.getHrefs())));
+  }
+
+  @Test
+  public void testHelpContexts() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<html><head><title>Contexts</title><meta name=\"Help-Context\" content=\" meta_context \"><meta name=\"description\" content=\"other\"></head><body>");
+    sb.append("<h1 id=\"title\" data-help-context=\"header_context\">Title</h1>");
+    sb.append("<div DATA-HELP-CONTEXT='div_context' data-help-context-title=\"A &lt;title&gt;\" data-help-context-description=\"Description\"></div>");
+    sb.append("<p id=\"p\" data-help-context=\"\">Empty</p>");
+    sb.append("<span data-help-context-title=\"No id\"></span>");
+    sb.append("</body></html>");
+    String html = sb.toString();
+
+    PageContexts expected = new PageContexts();
+    GenerateEclipseTocUtility.computeHelpContexts(Jsoup.parse(html), expected);
+    PageCollector collector = new PageCollector(PageCollector.Options.NONE.withContexts());
+    StreamingHeaderScanner.scan(new StringReader(html), collector);
+
+    PageContexts.Declarations expectedDeclarations = expected.build();
+    PageContexts.Declarations actualDeclarations = collector.buildContexts();
+    assertEquals("size", 3, expectedDeclarations.size());
+    assertEquals("size", expectedDeclarations.size(), actualDeclarations.size());
+    for (int i = 0; i < expectedDeclarations.size(); i++) {
+      assertEquals("id " + i, expectedDeclarations.getId(i), actualDeclarations.getId(i));
+      assertEquals("title " + i, expectedDeclarations.getTitle(i), actualDeclarations.getTitle(i));
+      assertEquals("description " + i, expectedDeclarations.getDescription(i), actualDeclarations.getDescription(i));
+      assertEquals("anchor " + i, expectedDeclarations.getAnchor(i), actualDeclarations.getAnchor(i));
+    }
+    assertEquals("meta_context", actualDeclarations.getId(0));
+    assertEquals("title", actualDeclarations.getAnchor(1));
+    assertEquals("A <title>", actualDeclarations.getTitle(2));
+  }
+
+  private static void assertSameLinks(PageLinks.Links expected, PageLinks.Links actual) {
+    assertEquals("ids", new HashSet<String>(Arrays.asList(expected.getIds())), new HashSet<String>(Arrays.asList(actual.getIds())));
+    assertEquals("duplicate ids", new HashSet<String>(Arrays.asList(expected.getDuplicateIds())), new HashSet<String>(Arrays.asList(actual.getDuplicateIds())));
+    assertEquals("hrefs", new HashSet<String>(Arrays.asList(expected.getHrefs())), new HashSet<String>(Arrays.asList(actual.getHrefs())));
+  }
+
+  private static void assertSameHeaders(String html) throws IOException {
+    List<PageHeader> expected = GenerateEclipseTocUtility.computeHeaders(Jsoup.parse(html));
+    List<PageHeader> actual = StreamingHeaderScanner.scan(new StringReader(html), new PageCollector(PageCollector.Options.NONE));
+    assertEquals("headers size", expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals("header " + i + " level", expected.get(i).getLevel(), actual.get(i).getLevel());
+      assertEquals("header " + i + " id", expected.get(i).getId(), actual.get(i).getId());
+      assertEquals("header " + i + " text", expected.get(i).getText(), actual.get(i).getText());
+    }
+  }
+}
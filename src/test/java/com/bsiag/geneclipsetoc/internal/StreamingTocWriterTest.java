@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Jeremie Bresson.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.html
+ *
+ * Contributors:
+ *     Jeremie Bresson - initial API and implementation
+ ******************************************************************************/
+package com.bsiag.geneclipsetoc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link StreamingTocWriter}
+ */
+public class StreamingTocWriterTest {
+
+  @Test
+  public void testSameAsEclipseTocWriter() throws Exception {
+    List<List<PageHeader>> pages = Arrays.asList(
+        Arrays.asList(
+            new PageHeader(1, null, "Book “title”"),
+            new PageHeader(2, "n1", "Chapter 1"),
+            new PageHeader(3, "n11", "Section 1.1")),
+        Arrays.asList(
+            new PageHeader(3, "n12", "Section 1.2"),
+            new PageHeader(4, "n121", "Section 1.2.1"),
+            new PageHeader(6, "n1211", "Section 1.2.1.1"),
+            new PageHeader(4, "n122", "Section 1.2.2")),
+        Arrays.asList(
+            new PageHeader(2, "n2", "Chapter <2>"),
+            new PageHeader(2, "n3", "Chapter 3")),
+        Arrays.<PageHeader> asList(),
+        Arrays.asList(
+            new PageHeader(2, "n4", "Chapter 4"),
+            new PageHeader(3, "n41", "Section 4.1")));
+
+    assertSameToc(pages, null);
+    assertSameToc(pages, "doc");
+    assertSameToc(pages, "doc/");
+  }
+
+  @Test
+  public void testTopicAlreadyWritten() throws Exception {
+    File folder = Files.createTempDir();
+    File outTocFile = new File(folder, "toc.xml");
+    StreamingTocWriter writer = new StreamingTocWriter(outTocFile, null);
+    try {
+      writer.add(Arrays.asList(
+          new PageHeader(1, "n", "Book"),
+          new PageHeader(2, "n1", "Chapter 1"),
+          new PageHeader(3, "n11", "Section 1.1"),
+          new PageHeader(2, "n2", "Chapter 2")), "page1.html");
+      try {
+        //the parent of the h4 is the h3 of the first chapter
+        writer.add(Arrays.asList(new PageHeader(4, "n211", "Section 2.1.1")), "page2.html");
+        fail("IllegalStateException expected");
+      }
+      catch (IllegalStateException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("'n11' of the page 'page1.html'"));
+      }
+    }
+    finally {
+      writer.close();
+    }
+    assertFalse("toc file", outTocFile.exists());
+    assertFalse("temporary file", new File(folder, "toc.xml.tmp").exists());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testEmpty() throws Exception {
+    StreamingTocWriter writer = new StreamingTocWriter(new File(Files.createTempDir(), "toc.xml"), null);
+    try {
+      writer.add(Arrays.<PageHeader> asList(), "page1.html");
+      writer.commit();
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  private static void assertSameToc(List<List<PageHeader>> pages, String helpPrefix) throws Exception {
+    File folder = Files.createTempDir();
+    CompactOutline outline = new CompactOutline();
+    File streamingToc = new File(folder, "streaming.xml");
+    StreamingTocWriter writer = new StreamingTocWriter(streamingToc, helpPrefix);
+    try {
+      for (int i = 0; i < pages.size(); i++) {
+        GenerateEclipseTocUtility.computeOutlineNodes(outline, pages.get(i), "page" + i + ".html");
+        writer.add(pages.get(i), "page" + i + ".html");
+      }
+      writer.commit();
+    }
+    finally {
+      writer.close();
+    }
+    File expectedToc = new File(folder, "expected.xml");
+    EclipseTocWriter.write(outline, helpPrefix, expectedToc);
+
+    assertEquals(Files.toString(expectedToc, Charsets.UTF_8), Files.toString(streamingToc, Charsets.UTF_8));
+    assertFalse("temporary file", new File(folder, "streaming.xml.tmp").exists());
+  }
+}
@@ -12,6 +12,7 @@ package com.bsiag.geneclipsetoc.internal.contexts;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Collections;
 
@@ -200,6 +201,39 @@ public class ContextUtilityTest {
     assertEquals(sb.toString(), ContextUtility.toXml(Arrays.asList(c1, c2)));
   }
 
+  @Test
+  public void testWrite() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    appendStart(sb);
+    appendNewLine(sb);
+    sb.append("    <context id=\"first\">");
+    appendNewLine(sb);
+    sb.append("        <description>First line");
+    appendNewLine(sb);
+    sb.append("Second line</description>");
+    appendNewLine(sb);
+    sb.append("        <topic label=\"My Label\" href=\"mypage.html\"/>");
+    appendEndContext(sb);
+    appendNewLine(sb);
+    sb.append("    <context id=\"second\">");
+    appendEndContext(sb);
+    appendEnd(sb);
+
+    Topic topic = new Topic();
+    topic.setHref("mypage.html");
+    topic.setLabel("My Label");
+    Context c1 = new Context();
+    c1.setId("first");
+    c1.setDescription("First line\r\nSecond line");
+    c1.setTopics(Collections.singletonList(topic));
+    Context c2 = new Context();
+    c2.setId("second");
+
+    StringWriter out = new StringWriter();
+    ContextUtility.write(Arrays.asList(c1, c2), out);
+    assertEquals(sb.toString(), out.toString());
+  }
+
   private static void appendStartContext(StringBuilder sb) {
     appendNewLine(sb);
     sb.append("    <context>");